@@ -1,11 +1,19 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
@@ -14,9 +22,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 class Token {
     String type;
@@ -69,81 +80,85 @@ class Database {
         System.out.println("Inserted into '" + tableName + "'.");
     }
 
-    java.util.List<Map<String, Object>> select(String tableName, String joinTable, String joinColumn1, String joinColumn2, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck, String groupByColumn, String orderByColumn) {
+    // Runs the query and keeps its result engine-side as one array per row, in column order: a
+    // snapshot copied out of the table's row maps here, on the worker, so later statements changing
+    // those maps neither race with the EDT reading it nor change what the grid shows. Only matching
+    // rows are copied, straight into their arrays; GROUP BY keeps one array per group.
+    ResultCursor openCursor(String tableName, String joinTable, String joinColumn1, String joinColumn2, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck, String groupByColumn, String orderByColumn) {
         if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        java.util.List<Map<String, Object>> result = new ArrayList<>();
-        java.util.List<Map<String, Object>> baseRows = tableData.get(tableName);
-
+        if (joinTable != null && !tableSchemas.containsKey(joinTable)) throw new RuntimeException("Join table '" + joinTable + "' not found.");
+        java.util.List<String> columns = new ArrayList<>(tableSchemas.get(tableName).keySet());
+        int baseColumns = columns.size();
         if (joinTable != null) {
-            if (!tableSchemas.containsKey(joinTable)) throw new RuntimeException("Join table '" + joinTable + "' not found.");
-            java.util.List<Map<String, Object>> joinRows = tableData.get(joinTable);
-            for (Map<String, Object> baseRow : baseRows) {
-                for (Map<String, Object> joinRow : joinRows) {
-                    if (baseRow.get(joinColumn1).equals(joinRow.get(joinColumn2))) {
-                        Map<String, Object> combined = new HashMap<>(baseRow);
-                        joinRow.forEach((k, v) -> combined.put(joinTable + "." + k, v));
-                        result.add(combined);
-                    }
-                }
-            }
-        } else {
-            result.addAll(baseRows);
+            for (String column : tableSchemas.get(joinTable).keySet()) columns.add(joinTable + "." + column);
         }
-
-        if (whereColumn != null || likePattern != null || isNullCheck || isNotNullCheck) {
-            result.removeIf(row -> {
-                if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) return true;
-                if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) return true;
-                if (isNullCheck && row.get(whereColumn) != null) return true;
-                if (isNotNullCheck && row.get(whereColumn) == null) return true;
-                return false;
-            });
+        boolean filtered = whereColumn != null || likePattern != null || isNullCheck || isNotNullCheck;
+        int where = columns.indexOf(whereColumn);
+        java.util.List<Object[]> rows = new ArrayList<>();
+        for (Map<String, Object> baseRow : tableData.get(tableName)) {
+            checkCancelled();
+            if (joinTable == null) {
+                Object[] row = new Object[baseColumns];
+                for (int c = 0; c < baseColumns; c++) row[c] = baseRow.get(columns.get(c));
+                if (!filtered || matches(where < 0 ? null : row[where], whereColumn, whereValue, likePattern, isNullCheck, isNotNullCheck)) rows.add(row);
+                continue;
+            }
+            for (Map<String, Object> joinRow : tableData.get(joinTable)) {
+                if (!baseRow.get(joinColumn1).equals(joinRow.get(joinColumn2))) continue;
+                Object[] row = new Object[columns.size()];
+                for (int c = 0; c < baseColumns; c++) row[c] = baseRow.get(columns.get(c));
+                for (int c = baseColumns; c < row.length; c++) row[c] = joinRow.get(columns.get(c).substring(joinTable.length() + 1));
+                if (!filtered || matches(where < 0 ? null : row[where], whereColumn, whereValue, likePattern, isNullCheck, isNotNullCheck)) rows.add(row);
+            }
         }
 
         if (groupByColumn != null) {
-            Map<Object, java.util.List<Map<String, Object>>> grouped = new LinkedHashMap<>();
-            for (Map<String, Object> row : result) {
-                Object key = row.get(groupByColumn);
-                grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
-            }
-            result.clear();
-            grouped.forEach((key, rows) -> {
-                Map<String, Object> aggRow = new HashMap<>();
-                aggRow.put(groupByColumn, key);
-                aggRow.put("COUNT", (double) rows.size());
-                result.add(aggRow);
-            });
+            int key = columns.indexOf(groupByColumn);
+            Map<Object, Integer> counts = new LinkedHashMap<>();
+            for (Object[] row : rows) counts.merge(key < 0 ? null : row[key], 1, Integer::sum);
+            columns = Arrays.asList(groupByColumn, "COUNT");
+            rows = new ArrayList<>(counts.size());
+            for (Map.Entry<Object, Integer> group : counts.entrySet()) rows.add(new Object[] {group.getKey(), (double) group.getValue()});
         }
 
         if (orderByColumn != null) {
-            result.sort((a, b) -> {
-                Object valA = a.get(orderByColumn);
-                Object valB = b.get(orderByColumn);
+            int order = columns.indexOf(orderByColumn);
+            rows.sort((a, b) -> {
+                Object valA = order < 0 ? null : a[order];
+                Object valB = order < 0 ? null : b[order];
+                if (valA == null || valB == null) return valA == null ? (valB == null ? 0 : 1) : -1;
                 if (valA instanceof Double && valB instanceof Double) return Double.compare((Double) valA, (Double) valB);
                 return valA.toString().compareTo(valB.toString());
             });
         }
+        return new ResultCursor(columns, rows, false);
+    }
 
-        return result;
+    // The WHERE clause on the value of its column (null if the row has no such column).
+    private static boolean matches(Object value, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck) {
+        if (whereColumn != null && !value.equals(whereValue)) return false;
+        if (likePattern != null && (value == null || !((String) value).matches(likePattern.replace("%", ".*")))) return false;
+        if (isNullCheck && value != null) return false;
+        if (isNotNullCheck && value == null) return false;
+        return true;
     }
 
     void delete(String tableName, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck) {
         if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
         java.util.List<Map<String, Object>> rows = tableData.get(tableName);
-        int removed = 0;
-        Iterator<Map<String, Object>> iterator = rows.iterator();
-        while (iterator.hasNext()) {
-            Map<String, Object> row = iterator.next();
+        // The scan can be cancelled; the table only changes once it has finished.
+        java.util.List<Map<String, Object>> kept = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            checkCancelled();
             boolean match = true;
             if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) match = false;
             if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) match = false;
             if (isNullCheck && row.get(whereColumn) != null) match = false;
             if (isNotNullCheck && row.get(whereColumn) == null) match = false;
-            if (match) {
-                iterator.remove();
-                removed++;
-            }
+            if (!match) kept.add(row);
         }
+        int removed = rows.size() - kept.size();
+        tableData.put(tableName, kept);
         System.out.println("Deleted " + removed + " row(s) from '" + tableName + "'.");
     }
 
@@ -151,19 +166,25 @@ class Database {
         if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
         if (!tableSchemas.get(tableName).containsKey(setColumn)) throw new RuntimeException("Column '" + setColumn + "' not found.");
         java.util.List<Map<String, Object>> rows = tableData.get(tableName);
-        int updated = 0;
+        // The scan can be cancelled; the rows only change once it has finished.
+        java.util.List<Map<String, Object>> matches = new ArrayList<>();
         for (Map<String, Object> row : rows) {
+            checkCancelled();
             boolean match = true;
             if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) match = false;
             if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) match = false;
             if (isNullCheck && row.get(whereColumn) != null) match = false;
             if (isNotNullCheck && row.get(whereColumn) == null) match = false;
-            if (match) {
-                row.put(setColumn, setValue);
-                updated++;
-            }
+            if (match) matches.add(row);
         }
-        System.out.println("Updated " + updated + " row(s) in '" + tableName + "'.");
+        for (Map<String, Object> row : matches) row.put(setColumn, setValue);
+        System.out.println("Updated " + matches.size() + " row(s) in '" + tableName + "'.");
+    }
+
+    // Long loops poll the interrupt flag so a running statement can be cancelled from the GUI. They
+    // only read: a statement that changes data applies its changes after the loop, never halfway.
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("Statement cancelled.");
     }
 
     void saveToFile(String filename) throws IOException {
@@ -196,7 +217,7 @@ class Database {
                 line = line.trim();
                 if (line.startsWith("TABLE ")) {
                     currentTable = line.substring(6);
-                    tableSchemas.put(currentTable, new HashMap<>());
+                    tableSchemas.put(currentTable, new LinkedHashMap<>());
                     tableData.put(currentTable, new ArrayList<>());
                 } else if (line.startsWith("SCHEMA ") && currentTable != null) {
                     String[] parts = line.substring(7).split(",");
@@ -356,7 +377,7 @@ class Parser {
         consume("KEYWORD", "TABLE");
         Token tableName = consume("IDENTIFIER");
         consume("OPERATOR", "(");
-        Map<String, String> columns = new HashMap<>();
+        Map<String, String> columns = new LinkedHashMap<>();
         while (currentToken() != null && !")".equals(currentToken().value)) {
             Token colName = consume("IDENTIFIER");
             Token colType = consume("IDENTIFIER");
@@ -536,7 +557,21 @@ public class SQLCompilerGUI {
     private Database db = new Database();
     private JTextArea inputArea;
     private JTextArea outputArea;
+    private JButton runButton;
+    private JButton cancelButton;
     private String input;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sql-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> running;
+    private JTabbedPane tabs;
+    private JTable resultTable;
+    // Set on the worker, read on the EDT when a header is clicked.
+    private volatile ASTNode lastSelect;
+    private String sortColumn;
+    private boolean sortDescending;
 
     public SQLCompilerGUI() {
         createAndShowGUI();
@@ -556,18 +591,41 @@ public class SQLCompilerGUI {
         outputArea = new JTextArea(10, 50);
         outputArea.setEditable(false);
         JScrollPane outputScroll = new JScrollPane(outputArea);
-        frame.add(outputScroll, BorderLayout.CENTER);
+
+        // Sorting is pushed to the engine: a header click re-runs the query with ORDER BY.
+        resultTable = new JTable();
+        resultTable.setAutoCreateRowSorter(false);
+        resultTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = resultTable.columnAtPoint(e.getPoint());
+                if (column >= 0 && resultTable.getModel() instanceof ResultTableModel) {
+                    sortResults(((ResultTableModel) resultTable.getModel()).getColumn(resultTable.convertColumnIndexToModel(column)));
+                }
+            }
+        });
+
+        tabs = new JTabbedPane();
+        tabs.addTab("Output", outputScroll);
+        tabs.addTab("Results", new JScrollPane(resultTable));
+        frame.add(tabs, BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel();
-        JButton runButton = new JButton("Run SQL");
+        runButton = new JButton("Run SQL");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
         buttonPanel.add(runButton);
+        buttonPanel.add(cancelButton);
         frame.add(buttonPanel, BorderLayout.SOUTH);
 
-        PrintStream printStream = new PrintStream(new CustomOutputStream(outputArea));
+        PrintStream printStream = new PrintStream(new CustomOutputStream(outputArea), false, StandardCharsets.UTF_8);
         System.setOut(printStream);
         System.setErr(printStream);
 
-        runButton.addActionListener(e -> run());
+        runButton.addActionListener(e -> startRun());
+        cancelButton.addActionListener(e -> {
+            if (running != null) running.cancel(true);
+        });
 
         frame.setVisible(true);
     }
@@ -582,18 +640,73 @@ public class SQLCompilerGUI {
         return result.toString();
     }
 
-    public void run() {
+    // Runs the script on the worker thread so the EDT stays responsive; Cancel interrupts it.
+    private void startRun() {
+        String rawInput = inputArea.getText();
+        setRunning(true);
+        running = executor.submit(() -> {
+            try {
+                run(rawInput);
+            } finally {
+                SwingUtilities.invokeLater(() -> setRunning(false));
+            }
+        });
+    }
+
+    // Re-runs the last SELECT ordered by the clicked column; a second click on the same column reverses it.
+    private void sortResults(String column) {
+        ASTNode query = lastSelect;
+        if (query == null || !runButton.isEnabled()) return;
+        boolean descending = column.equals(sortColumn) && !sortDescending;
+        setRunning(true);
+        running = executor.submit(() -> {
+            try {
+                ResultCursor cursor = db.openCursor(query.tableName, query.joinTable, query.joinColumn1, query.joinColumn2, query.whereColumn, query.whereValue, query.likePattern, query.isNullCheck, query.isNotNullCheck, query.groupByColumn, column);
+                showResults(descending ? cursor.reversed() : cursor, column, descending);
+            } catch (RuntimeException e) {
+                System.err.println("Error: " + e.getMessage());
+            } finally {
+                SwingUtilities.invokeLater(() -> setRunning(false));
+            }
+        });
+    }
+
+    private void showResults(ResultCursor cursor, String orderByColumn, boolean descending) {
+        SwingUtilities.invokeLater(() -> {
+            sortColumn = orderByColumn;
+            sortDescending = descending;
+            resultTable.setModel(new ResultTableModel(cursor, orderByColumn, descending));
+            tabs.setSelectedIndex(1);
+        });
+    }
+
+    private void setRunning(boolean isRunning) {
+        runButton.setEnabled(!isRunning);
+        cancelButton.setEnabled(isRunning);
+    }
+
+    private void run(String rawInput) {
         try {
             db.loadFromFile("database.txt");
         } catch (IOException e) {
             System.out.println("Starting fresh (no existing database found).");
         }
-        String rawInput = inputArea.getText();
         this.input = preprocessInput(rawInput);
-        java.util.List<Token> tokens = new Lexer(input).tokenize();
-        java.util.List<ASTNode> statements = new Parser(tokens).parse();
-        for (ASTNode stmt : statements) {
-            execute(stmt);
+        int executed = 0;
+        try {
+            java.util.List<Token> tokens = new Lexer(input).tokenize();
+            java.util.List<ASTNode> statements = new Parser(tokens).parse();
+            for (ASTNode stmt : statements) {
+                if (Thread.currentThread().isInterrupted()) throw new CancellationException("Cancelled.");
+                execute(stmt);
+                executed++;
+            }
+        } catch (CancellationException e) {
+            // Clear the interrupt so the save below is not affected.
+            Thread.interrupted();
+            System.out.println("Cancelled after " + executed + " statement(s); their changes are kept.");
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
         }
         try {
             db.saveToFile("database.txt");
@@ -612,9 +725,10 @@ public class SQLCompilerGUI {
                 db.insert(node.tableName, node.values);
                 break;
             case "Select":
-                java.util.List<Map<String, Object>> rows = db.select(node.tableName, node.joinTable, node.joinColumn1, node.joinColumn2, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck, node.groupByColumn, node.orderByColumn);
-                System.out.println("Results from '" + node.tableName + "':");
-                for (Map<String, Object> row : rows) System.out.println(row);
+                ResultCursor cursor = db.openCursor(node.tableName, node.joinTable, node.joinColumn1, node.joinColumn2, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck, node.groupByColumn, node.orderByColumn);
+                System.out.println("Results from '" + node.tableName + "': " + cursor.getRowCount() + " row(s), shown in the Results tab.");
+                lastSelect = node;
+                showResults(cursor, node.orderByColumn, false);
                 break;
             case "Delete":
                 db.delete(node.tableName, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck);
@@ -636,16 +750,131 @@ public class SQLCompilerGUI {
     }
 }
 
+// A SELECT result held by the engine as one array per row, in column order; a snapshot taken when
+// the cursor was opened, so it can be read from the EDT while the worker runs later statements.
+// The whole result is in memory; the grid only builds cells for the rows it shows.
+class ResultCursor {
+    private final java.util.List<String> columns;
+    private final java.util.List<Object[]> rows;
+    private final boolean reversed;
+
+    ResultCursor(java.util.List<String> columns, java.util.List<Object[]> rows, boolean reversed) {
+        this.columns = columns;
+        this.rows = rows;
+        this.reversed = reversed;
+    }
+
+    java.util.List<String> getColumns() {
+        return columns;
+    }
+
+    int getRowCount() {
+        return rows.size();
+    }
+
+    // Reading the same rows back to front gives ORDER BY ... DESC without another sort.
+    ResultCursor reversed() {
+        return new ResultCursor(columns, rows, !reversed);
+    }
+
+    Object[] row(int index) {
+        return rows.get(reversed ? rows.size() - 1 - index : index);
+    }
+}
+
+// JTable only asks for the cells it shows, and reads them straight from the cursor's rows.
+class ResultTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private final ResultCursor cursor;
+    private final String sortColumn;
+    private final boolean descending;
+
+    ResultTableModel(ResultCursor cursor, String sortColumn, boolean descending) {
+        this.cursor = cursor;
+        this.sortColumn = sortColumn;
+        this.descending = descending;
+    }
+
+    String getColumn(int column) {
+        return cursor.getColumns().get(column);
+    }
+
+    @Override
+    public int getRowCount() {
+        return cursor.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return cursor.getColumns().size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = getColumn(column);
+        if (!name.equals(sortColumn)) return name;
+        return name + (descending ? " \u25BC" : " \u25B2");
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Object value = cursor.row(row)[column];
+        return value == null ? "NULL" : value;
+    }
+}
+
+// Collects output from any thread and appends it to the text area in one chunk per timer tick,
+// instead of one EDT append and caret move per character.
 class CustomOutputStream extends OutputStream {
+    private static final int FLUSH_INTERVAL_MS = 50;
+
     private JTextArea textArea;
+    private ByteBuffer pending = ByteBuffer.allocate(8192);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
     public CustomOutputStream(JTextArea textArea) {
         this.textArea = textArea;
+        new Timer(FLUSH_INTERVAL_MS, e -> appendPending()).start();
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        reserve(1);
+        pending.put((byte) b);
     }
 
     @Override
-    public void write(int b) {
-        textArea.append(String.valueOf((char)b));
+    public synchronized void write(byte[] b, int off, int len) {
+        reserve(len);
+        pending.put(b, off, len);
+    }
+
+    private void reserve(int len) {
+        if (pending.remaining() >= len) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + len));
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+
+    // Decodes everything buffered so far; an incomplete UTF-8 sequence waits for the next tick.
+    private synchronized String takePending() {
+        if (pending.position() == 0) return "";
+        pending.flip();
+        CharBuffer chars = CharBuffer.allocate(pending.remaining());
+        decoder.decode(pending, chars, false);
+        pending.compact();
+        chars.flip();
+        return chars.toString();
+    }
+
+    private void appendPending() {
+        String text = takePending();
+        if (text.isEmpty()) return;
+        textArea.append(text);
         textArea.setCaretPosition(textArea.getDocument().getLength());
     }
 }
\ No newline at end of file
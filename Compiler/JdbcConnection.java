@@ -0,0 +1,352 @@
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+// Statements take effect as they run; with auto-commit (the default) the database file is saved
+// after each one that changes it, otherwise on commit(). There is no rollback.
+class JdbcConnection implements Connection {
+    final String url;
+    final SharedDatabase shared;
+    private final List<JdbcResultSet> openResults = new ArrayList<>();
+    private final Properties clientInfo = new Properties();
+    private boolean autoCommit = true;
+    private boolean readOnly;
+    private boolean closed;
+
+    JdbcConnection(String url, SharedDatabase shared) {
+        this.url = url;
+        this.shared = shared;
+    }
+
+    void checkOpen() throws SQLException {
+        if (closed) throw new SQLException("Connection is closed.");
+    }
+
+    // Parses the one statement in `sql`.
+    SQLCompiler.Prepared prepare(String sql, boolean parameters) throws SQLException {
+        checkOpen();
+        try {
+            return shared.engine.prepare(sql, parameters);
+        } catch (RuntimeException e) {
+            throw SQLCompilerDriver.error(e);
+        }
+    }
+
+    // Runs a SELECT or EXPLAIN. A SELECT's rows are read as the ResultSet asks for them, under the
+    // read lock; EXPLAIN's plan is small and is returned whole.
+    JdbcResultSet query(SQLCompiler.Prepared query, JdbcStatement statement) throws SQLException {
+        shared.beginRead();
+        QueryCursor cursor;
+        try {
+            cursor = query.query();
+        } catch (RuntimeException e) {
+            shared.endRead();
+            throw SQLCompilerDriver.error(e);
+        }
+        if (!query.isExplain()) return opened(new JdbcResultSet(statement, cursor, shared::endRead));
+        shared.endRead();
+        return opened(new JdbcResultSet(statement, cursor, () -> { }));
+    }
+
+    private synchronized JdbcResultSet opened(JdbcResultSet results) {
+        openResults.add(results);
+        return results;
+    }
+
+    synchronized void resultsClosed(JdbcResultSet results) {
+        openResults.remove(results);
+    }
+
+    // Runs any other statement under the write lock and returns its row count. This connection's
+    // open ResultSets would otherwise wait on it forever, so their remaining rows are read first.
+    long update(SQLCompiler.Prepared statement) throws SQLException {
+        if (readOnly) throw new SQLException("Connection is read-only.");
+        detachResults();
+        shared.beginWrite();
+        try {
+            long count = statement.execute();
+            shared.changed();
+            if (autoCommit) shared.save();
+            return count;
+        } catch (RuntimeException e) {
+            throw SQLCompilerDriver.error(e);
+        } finally {
+            shared.endWrite();
+        }
+    }
+
+    private void detachResults() throws SQLException {
+        List<JdbcResultSet> open;
+        synchronized (this) {
+            open = new ArrayList<>(openResults);
+        }
+        for (JdbcResultSet results : open) results.detach();
+    }
+
+    public Statement createStatement() throws SQLException {
+        checkOpen();
+        return new JdbcStatement(this);
+    }
+
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return createStatement();
+    }
+
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return createStatement();
+    }
+
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new JdbcPreparedStatement(this, sql);
+    }
+
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return prepareStatement(sql);
+    }
+
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return prepareStatement(sql);
+    }
+
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) throw SQLCompilerDriver.unsupported("Generated keys");
+        return prepareStatement(sql);
+    }
+
+    private static void checkResultSetType(int resultSetType, int resultSetConcurrency) throws SQLException {
+        if (resultSetType != ResultSet.TYPE_FORWARD_ONLY) throw SQLCompilerDriver.unsupported("Scrollable ResultSets");
+        if (resultSetConcurrency != ResultSet.CONCUR_READ_ONLY) throw SQLCompilerDriver.unsupported("Updatable ResultSets");
+    }
+
+    public String nativeSQL(String sql) {
+        return sql;
+    }
+
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        checkOpen();
+        if (autoCommit && !this.autoCommit) commit();
+        this.autoCommit = autoCommit;
+    }
+
+    public boolean getAutoCommit() throws SQLException {
+        checkOpen();
+        return autoCommit;
+    }
+
+    // Saves the database file; the changes themselves are already visible to every connection.
+    // Saving compacts tables with deleted rows, which moves rows under open queries, so it takes the
+    // write lock like update().
+    public void commit() throws SQLException {
+        checkOpen();
+        detachResults();
+        shared.beginWrite();
+        try {
+            shared.save();
+        } finally {
+            shared.endWrite();
+        }
+    }
+
+    public void rollback() throws SQLException {
+        throw SQLCompilerDriver.unsupported("rollback (statements take effect as they run)");
+    }
+
+    public void close() throws SQLException {
+        if (closed) return;
+        List<JdbcResultSet> open;
+        synchronized (this) {
+            open = new ArrayList<>(openResults);
+        }
+        for (JdbcResultSet results : open) results.close();
+        closed = true;
+        shared.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        checkOpen();
+        this.readOnly = readOnly;
+    }
+
+    public boolean isReadOnly() throws SQLException {
+        checkOpen();
+        return readOnly;
+    }
+
+    public void setCatalog(String catalog) {
+    }
+
+    public String getCatalog() {
+        return null;
+    }
+
+    public void setTransactionIsolation(int level) throws SQLException {
+        if (level != Connection.TRANSACTION_NONE) throw SQLCompilerDriver.unsupported("Transactions");
+    }
+
+    public int getTransactionIsolation() {
+        return Connection.TRANSACTION_NONE;
+    }
+
+    public SQLWarning getWarnings() {
+        return null;
+    }
+
+    public void clearWarnings() {
+    }
+
+    public void setHoldability(int holdability) throws SQLException {
+        if (holdability != ResultSet.HOLD_CURSORS_OVER_COMMIT) throw SQLCompilerDriver.unsupported("Closing cursors at commit");
+    }
+
+    public int getHoldability() {
+        return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    public boolean isValid(int timeout) {
+        return !closed;
+    }
+
+    public void setClientInfo(String name, String value) {
+        if (value == null) clientInfo.remove(name);
+        else clientInfo.setProperty(name, value);
+    }
+
+    public void setClientInfo(Properties properties) {
+        clientInfo.clear();
+        clientInfo.putAll(properties);
+    }
+
+    public String getClientInfo(String name) {
+        return clientInfo.getProperty(name);
+    }
+
+    public Properties getClientInfo() {
+        return (Properties) clientInfo.clone();
+    }
+
+    public void setSchema(String schema) {
+    }
+
+    public String getSchema() {
+        return null;
+    }
+
+    public void abort(Executor executor) throws SQLException {
+        close();
+    }
+
+    public void setNetworkTimeout(Executor executor, int milliseconds) {
+    }
+
+    public int getNetworkTimeout() {
+        return 0;
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // Not supported.
+
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        throw SQLCompilerDriver.unsupported("prepareCall");
+    }
+
+    public DatabaseMetaData getMetaData() throws SQLException {
+        throw SQLCompilerDriver.unsupported("getMetaData");
+    }
+
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        throw SQLCompilerDriver.unsupported("prepareCall");
+    }
+
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTypeMap");
+    }
+
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setTypeMap");
+    }
+
+    public Savepoint setSavepoint() throws SQLException {
+        throw SQLCompilerDriver.unsupported("setSavepoint");
+    }
+
+    public Savepoint setSavepoint(String name) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setSavepoint");
+    }
+
+    public void rollback(Savepoint savepoint) throws SQLException {
+        throw SQLCompilerDriver.unsupported("rollback");
+    }
+
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        throw SQLCompilerDriver.unsupported("releaseSavepoint");
+    }
+
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        throw SQLCompilerDriver.unsupported("prepareCall");
+    }
+
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        throw SQLCompilerDriver.unsupported("prepareStatement");
+    }
+
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        throw SQLCompilerDriver.unsupported("prepareStatement");
+    }
+
+    public Clob createClob() throws SQLException {
+        throw SQLCompilerDriver.unsupported("createClob");
+    }
+
+    public Blob createBlob() throws SQLException {
+        throw SQLCompilerDriver.unsupported("createBlob");
+    }
+
+    public NClob createNClob() throws SQLException {
+        throw SQLCompilerDriver.unsupported("createNClob");
+    }
+
+    public SQLXML createSQLXML() throws SQLException {
+        throw SQLCompilerDriver.unsupported("createSQLXML");
+    }
+
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        throw SQLCompilerDriver.unsupported("createArrayOf");
+    }
+
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        throw SQLCompilerDriver.unsupported("createStruct");
+    }
+}
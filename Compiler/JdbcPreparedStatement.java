@@ -0,0 +1,363 @@
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.BatchUpdateException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+// ? stands for a value in VALUES, SET and WHERE (see SQLCompiler.Prepared). The statement is
+// parsed once and the values put in the parameters' places before each execution. A batch of
+// INSERTs becomes one insert of all their rows.
+class JdbcPreparedStatement extends JdbcStatement implements PreparedStatement {
+    private final SQLCompiler.Prepared statement;
+    private final int parameterCount;
+    private Object[] values;
+    private boolean[] set;
+    private final List<Object[]> batch = new ArrayList<>();
+
+    JdbcPreparedStatement(JdbcConnection connection, String sql) throws SQLException {
+        super(connection);
+        statement = connection.prepare(sql, true);
+        parameterCount = statement.parameterCount();
+        values = new Object[parameterCount];
+        set = new boolean[parameterCount];
+    }
+
+    // Puts one set of values in the parameters' places.
+    private void bind(Object[] values) throws SQLException {
+        try {
+            statement.bind(values);
+        } catch (RuntimeException e) {
+            throw SQLCompilerDriver.error(e);
+        }
+    }
+
+    private Object[] current() throws SQLException {
+        checkOpen();
+        for (int i = 0; i < parameterCount; i++) {
+            if (!set[i]) throw new SQLException("Parameter " + (i + 1) + " is not set.");
+        }
+        return values.clone();
+    }
+
+    public boolean execute() throws SQLException {
+        bind(current());
+        return run(statement);
+    }
+
+    public ResultSet executeQuery() throws SQLException {
+        if (!statement.isQuery()) throw new SQLException("Not a query.");
+        execute();
+        return getResultSet();
+    }
+
+    public int executeUpdate() throws SQLException {
+        return (int) executeLargeUpdate();
+    }
+
+    public long executeLargeUpdate() throws SQLException {
+        if (statement.isQuery()) throw new SQLException("executeUpdate can't run a query.");
+        execute();
+        return getLargeUpdateCount();
+    }
+
+    public void addBatch() throws SQLException {
+        if (statement.isQuery()) throw new SQLException("Queries can't be batched.");
+        batch.add(current());
+    }
+
+    public void clearBatch() throws SQLException {
+        checkOpen();
+        batch.clear();
+    }
+
+    public int[] executeBatch() throws SQLException {
+        return toInts(executeLargeBatch());
+    }
+
+    public long[] executeLargeBatch() throws SQLException {
+        checkOpen();
+        long[] counts = new long[batch.size()];
+        try {
+            if (counts.length == 0) return counts;
+            if (statement.insertsBatch()) {
+                int rows = statement.bindBatch(batch);
+                try {
+                    run(statement);
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), new long[0], e);
+                }
+                Arrays.fill(counts, rows);
+                setUpdateCount((long) rows * counts.length);
+                return counts;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                try {
+                    bind(batch.get(i));
+                    run(statement);
+                    counts[i] = getLargeUpdateCount();
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(counts, i), e);
+                }
+            }
+            return counts;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void setParameter(int parameterIndex, Object value) throws SQLException {
+        checkOpen();
+        if (parameterIndex < 1 || parameterIndex > parameterCount) throw new SQLException("Parameter index " + parameterIndex + " out of range (1-" + parameterCount + ").");
+        values[parameterIndex - 1] = value;
+        set[parameterIndex - 1] = true;
+    }
+
+    public void clearParameters() throws SQLException {
+        checkOpen();
+        Arrays.fill(values, null);
+        Arrays.fill(set, false);
+    }
+
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        setParameter(parameterIndex, null);
+    }
+
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        setParameter(parameterIndex, null);
+    }
+
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        setParameter(parameterIndex, x ? 1.0 : 0.0);
+    }
+
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        setParameter(parameterIndex, (double) x);
+    }
+
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        setParameter(parameterIndex, (double) x);
+    }
+
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        setParameter(parameterIndex, (double) x);
+    }
+
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        setParameter(parameterIndex, (double) x);
+    }
+
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        setParameter(parameterIndex, (double) x);
+    }
+
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        setParameter(parameterIndex, x == null ? null : x.doubleValue());
+    }
+
+    public void setString(int parameterIndex, String x) throws SQLException {
+        setParameter(parameterIndex, x);
+    }
+
+    // Values are numbers (kept as doubles, like the engine does) or strings.
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        if (x == null || x instanceof String) setParameter(parameterIndex, x);
+        else if (x instanceof Number) setParameter(parameterIndex, ((Number) x).doubleValue());
+        else if (x instanceof Boolean) setBoolean(parameterIndex, (Boolean) x);
+        else throw SQLCompilerDriver.unsupported("Parameters of type " + x.getClass().getName());
+    }
+
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        setObject(parameterIndex, x);
+    }
+
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        setObject(parameterIndex, x);
+    }
+
+    // Not known before the statement runs.
+    public ResultSetMetaData getMetaData() {
+        return null;
+    }
+
+    public boolean execute(String sql) throws SQLException {
+        throw new SQLException("PreparedStatement runs its own statement.");
+    }
+
+    public ResultSet executeQuery(String sql) throws SQLException {
+        throw new SQLException("PreparedStatement runs its own statement.");
+    }
+
+    public long executeLargeUpdate(String sql) throws SQLException {
+        throw new SQLException("PreparedStatement runs its own statement.");
+    }
+
+    public void addBatch(String sql) throws SQLException {
+        throw new SQLException("PreparedStatement runs its own statement.");
+    }
+
+    // Not supported.
+
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBytes");
+    }
+
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setDate");
+    }
+
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setTime");
+    }
+
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setTimestamp");
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setAsciiStream");
+    }
+
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setUnicodeStream");
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBinaryStream");
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setCharacterStream");
+    }
+
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setRef");
+    }
+
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBlob");
+    }
+
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setClob");
+    }
+
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setArray");
+    }
+
+    public void setDate(int parameterIndex, Date x, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setDate");
+    }
+
+    public void setTime(int parameterIndex, Time x, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setTime");
+    }
+
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setTimestamp");
+    }
+
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setURL");
+    }
+
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        throw SQLCompilerDriver.unsupported("getParameterMetaData");
+    }
+
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setRowId");
+    }
+
+    public void setNString(int parameterIndex, String x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNString");
+    }
+
+    public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNCharacterStream");
+    }
+
+    public void setNClob(int parameterIndex, NClob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNClob");
+    }
+
+    public void setClob(int parameterIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setClob");
+    }
+
+    public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBlob");
+    }
+
+    public void setNClob(int parameterIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNClob");
+    }
+
+    public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setSQLXML");
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setAsciiStream");
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBinaryStream");
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setCharacterStream");
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setAsciiStream");
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBinaryStream");
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setCharacterStream");
+    }
+
+    public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNCharacterStream");
+    }
+
+    public void setClob(int parameterIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setClob");
+    }
+
+    public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setBlob");
+    }
+
+    public void setNClob(int parameterIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setNClob");
+    }
+}
@@ -0,0 +1,900 @@
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.Map;
+
+// Reads the query's rows fetch size at a time (the statement's, DEFAULT_FETCH_SIZE if 0) rather
+// than collecting them all first. Forward-only and read-only. Numbers are doubles; the getters for
+// other Java types convert.
+class JdbcResultSet implements ResultSet {
+    private final JdbcStatement statement;
+    private final QueryCursor cursor;
+    // Ends the read lock the query holds, once its last row has been fetched.
+    private Runnable release;
+    private final ArrayDeque<Object[]> fetched = new ArrayDeque<>();
+    private final long maxRows;
+    private int fetchSize;
+    private Object[] row;
+    private long rowNumber;
+    private long read;
+    private boolean wasNull;
+    private boolean closed;
+
+    JdbcResultSet(JdbcStatement statement, QueryCursor cursor, Runnable release) {
+        this.statement = statement;
+        this.cursor = cursor;
+        this.release = release;
+        this.maxRows = statement.maxRows();
+        this.fetchSize = statement.fetchSize();
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) throw new SQLException("ResultSet is closed.");
+    }
+
+    private synchronized void fetch(long rows) throws SQLException {
+        try {
+            while (rows-- > 0 && (maxRows == 0 || read < maxRows) && cursor.hasNext()) {
+                fetched.add(cursor.next());
+                read++;
+            }
+            if ((maxRows > 0 && read >= maxRows) || !cursor.hasNext()) finish();
+        } catch (RuntimeException e) {
+            finish();
+            throw SQLCompilerDriver.error(e);
+        }
+    }
+
+    // The cursor is done with: give back its memory and the read lock. Rows still to be read are
+    // copied first if they are the table's own, since writes may change them once the lock is gone.
+    private void finish() {
+        if (release != null && cursor.sharesRows) {
+            for (int i = fetched.size(); i > 0; i--) fetched.add(fetched.poll().clone());
+            if (row != null) row = row.clone();
+        }
+        cursor.close();
+        if (release != null) release.run();
+        release = null;
+    }
+
+    // Reads all remaining rows so the query no longer holds the read lock (see JdbcConnection.update).
+    synchronized void detach() throws SQLException {
+        if (release != null) fetch(Long.MAX_VALUE);
+    }
+
+    public boolean next() throws SQLException {
+        checkOpen();
+        if (fetched.isEmpty() && release != null) fetch(fetchSize > 0 ? fetchSize : JdbcStatement.DEFAULT_FETCH_SIZE);
+        row = fetched.poll();
+        if (row == null) return false;
+        rowNumber++;
+        return true;
+    }
+
+    public void close() throws SQLException {
+        if (closed) return;
+        closed = true;
+        row = null;
+        fetched.clear();
+        synchronized (this) {
+            finish();
+        }
+        statement.connection.resultsClosed(this);
+        statement.resultsClosed(this);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private Object value(int columnIndex) throws SQLException {
+        checkOpen();
+        if (row == null) throw new SQLException("No current row; call next() first.");
+        if (columnIndex < 1 || columnIndex > row.length) throw new SQLException("Column index " + columnIndex + " out of range (1-" + row.length + ").");
+        Object value = row[columnIndex - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private double number(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) return 0;
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Column " + columnIndex + " is not a number: '" + value + "'.", e);
+        }
+    }
+
+    public boolean wasNull() throws SQLException {
+        checkOpen();
+        return wasNull;
+    }
+
+    public int findColumn(String columnLabel) throws SQLException {
+        checkOpen();
+        for (int i = 0; i < cursor.columns.size(); i++) {
+            if (cursor.columns.get(i).equalsIgnoreCase(columnLabel)) return i + 1;
+        }
+        throw new SQLException("No column '" + columnLabel + "' in " + cursor.columns + ".");
+    }
+
+    public String getString(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value instanceof String) return "true".equalsIgnoreCase(((String) value).trim()) || "1".equals(((String) value).trim());
+        return value != null && number(columnIndex) != 0;
+    }
+
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) number(columnIndex);
+    }
+
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) number(columnIndex);
+    }
+
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) number(columnIndex);
+    }
+
+    public long getLong(int columnIndex) throws SQLException {
+        return (long) number(columnIndex);
+    }
+
+    public float getFloat(int columnIndex) throws SQLException {
+        return (float) number(columnIndex);
+    }
+
+    public double getDouble(int columnIndex) throws SQLException {
+        return number(columnIndex);
+    }
+
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        double number = number(columnIndex);
+        return wasNull ? null : BigDecimal.valueOf(number);
+    }
+
+    public Object getObject(int columnIndex) throws SQLException {
+        return value(columnIndex);
+    }
+
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkOpen();
+        return new JdbcResultSetMetaData(cursor.columns, cursor.types);
+    }
+
+    public Statement getStatement() throws SQLException {
+        checkOpen();
+        return statement;
+    }
+
+    public int getRow() throws SQLException {
+        checkOpen();
+        return row == null ? 0 : (int) Math.min(rowNumber, Integer.MAX_VALUE);
+    }
+
+    public void setFetchSize(int rows) throws SQLException {
+        checkOpen();
+        if (rows < 0) throw new SQLException("Fetch size can't be negative.");
+        fetchSize = rows;
+    }
+
+    public int getFetchSize() throws SQLException {
+        checkOpen();
+        return fetchSize;
+    }
+
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != ResultSet.FETCH_FORWARD) throw SQLCompilerDriver.unsupported("Fetching backwards");
+    }
+
+    public int getFetchDirection() {
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    public int getType() {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    public int getConcurrency() {
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    public int getHoldability() {
+        return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    public SQLWarning getWarnings() {
+        return null;
+    }
+
+    public void clearWarnings() {
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // Not supported.
+
+    @Deprecated
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBigDecimal");
+    }
+
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBytes");
+    }
+
+    public Date getDate(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getDate");
+    }
+
+    public Time getTime(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTime");
+    }
+
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTimestamp");
+    }
+
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getAsciiStream");
+    }
+
+    @Deprecated
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getUnicodeStream");
+    }
+
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBinaryStream");
+    }
+
+    @Deprecated
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBigDecimal");
+    }
+
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBytes");
+    }
+
+    public Date getDate(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getDate");
+    }
+
+    public Time getTime(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTime");
+    }
+
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTimestamp");
+    }
+
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getAsciiStream");
+    }
+
+    @Deprecated
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getUnicodeStream");
+    }
+
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBinaryStream");
+    }
+
+    public String getCursorName() throws SQLException {
+        throw SQLCompilerDriver.unsupported("getCursorName");
+    }
+
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getCharacterStream");
+    }
+
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getCharacterStream");
+    }
+
+    public boolean isBeforeFirst() throws SQLException {
+        throw SQLCompilerDriver.unsupported("isBeforeFirst");
+    }
+
+    public boolean isAfterLast() throws SQLException {
+        throw SQLCompilerDriver.unsupported("isAfterLast");
+    }
+
+    public boolean isFirst() throws SQLException {
+        throw SQLCompilerDriver.unsupported("isFirst");
+    }
+
+    public boolean isLast() throws SQLException {
+        throw SQLCompilerDriver.unsupported("isLast");
+    }
+
+    public void beforeFirst() throws SQLException {
+        throw SQLCompilerDriver.unsupported("beforeFirst");
+    }
+
+    public void afterLast() throws SQLException {
+        throw SQLCompilerDriver.unsupported("afterLast");
+    }
+
+    public boolean first() throws SQLException {
+        throw SQLCompilerDriver.unsupported("first");
+    }
+
+    public boolean last() throws SQLException {
+        throw SQLCompilerDriver.unsupported("last");
+    }
+
+    public boolean absolute(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("absolute");
+    }
+
+    public boolean relative(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("relative");
+    }
+
+    public boolean previous() throws SQLException {
+        throw SQLCompilerDriver.unsupported("previous");
+    }
+
+    public boolean rowUpdated() throws SQLException {
+        throw SQLCompilerDriver.unsupported("rowUpdated");
+    }
+
+    public boolean rowInserted() throws SQLException {
+        throw SQLCompilerDriver.unsupported("rowInserted");
+    }
+
+    public boolean rowDeleted() throws SQLException {
+        throw SQLCompilerDriver.unsupported("rowDeleted");
+    }
+
+    public void updateNull(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNull");
+    }
+
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBoolean");
+    }
+
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateByte");
+    }
+
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateShort");
+    }
+
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateInt");
+    }
+
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateLong");
+    }
+
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateFloat");
+    }
+
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateDouble");
+    }
+
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBigDecimal");
+    }
+
+    public void updateString(int columnIndex, String x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateString");
+    }
+
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBytes");
+    }
+
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateDate");
+    }
+
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateTime");
+    }
+
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateTimestamp");
+    }
+
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateObject");
+    }
+
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateObject");
+    }
+
+    public void updateNull(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNull");
+    }
+
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBoolean");
+    }
+
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateByte");
+    }
+
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateShort");
+    }
+
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateInt");
+    }
+
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateLong");
+    }
+
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateFloat");
+    }
+
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateDouble");
+    }
+
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBigDecimal");
+    }
+
+    public void updateString(String columnLabel, String x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateString");
+    }
+
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBytes");
+    }
+
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateDate");
+    }
+
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateTime");
+    }
+
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateTimestamp");
+    }
+
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateObject");
+    }
+
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateObject");
+    }
+
+    public void insertRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("insertRow");
+    }
+
+    public void updateRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateRow");
+    }
+
+    public void deleteRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("deleteRow");
+    }
+
+    public void refreshRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("refreshRow");
+    }
+
+    public void cancelRowUpdates() throws SQLException {
+        throw SQLCompilerDriver.unsupported("cancelRowUpdates");
+    }
+
+    public void moveToInsertRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("moveToInsertRow");
+    }
+
+    public void moveToCurrentRow() throws SQLException {
+        throw SQLCompilerDriver.unsupported("moveToCurrentRow");
+    }
+
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getObject");
+    }
+
+    public Ref getRef(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getRef");
+    }
+
+    public Blob getBlob(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBlob");
+    }
+
+    public Clob getClob(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getClob");
+    }
+
+    public Array getArray(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getArray");
+    }
+
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getObject");
+    }
+
+    public Ref getRef(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getRef");
+    }
+
+    public Blob getBlob(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getBlob");
+    }
+
+    public Clob getClob(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getClob");
+    }
+
+    public Array getArray(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getArray");
+    }
+
+    public Date getDate(int columnIndex, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getDate");
+    }
+
+    public Date getDate(String columnLabel, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getDate");
+    }
+
+    public Time getTime(int columnIndex, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTime");
+    }
+
+    public Time getTime(String columnLabel, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTime");
+    }
+
+    public Timestamp getTimestamp(int columnIndex, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTimestamp");
+    }
+
+    public Timestamp getTimestamp(String columnLabel, Calendar calendar) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getTimestamp");
+    }
+
+    public URL getURL(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getURL");
+    }
+
+    public URL getURL(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getURL");
+    }
+
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateRef");
+    }
+
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateRef");
+    }
+
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateArray");
+    }
+
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateArray");
+    }
+
+    public RowId getRowId(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getRowId");
+    }
+
+    public RowId getRowId(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getRowId");
+    }
+
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateRowId");
+    }
+
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateRowId");
+    }
+
+    public void updateNString(int columnIndex, String x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNString");
+    }
+
+    public void updateNString(String columnLabel, String x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNString");
+    }
+
+    public void updateNClob(int columnIndex, NClob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public void updateNClob(String columnLabel, NClob x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public NClob getNClob(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNClob");
+    }
+
+    public NClob getNClob(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNClob");
+    }
+
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getSQLXML");
+    }
+
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getSQLXML");
+    }
+
+    public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateSQLXML");
+    }
+
+    public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateSQLXML");
+    }
+
+    public String getNString(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNString");
+    }
+
+    public String getNString(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNString");
+    }
+
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNCharacterStream");
+    }
+
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getNCharacterStream");
+    }
+
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNCharacterStream");
+    }
+
+    public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNCharacterStream");
+    }
+
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateNClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public void updateNClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNCharacterStream");
+    }
+
+    public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNCharacterStream");
+    }
+
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateAsciiStream");
+    }
+
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBinaryStream");
+    }
+
+    public void updateCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateCharacterStream");
+    }
+
+    public void updateBlob(int columnIndex, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateBlob(String columnLabel, InputStream x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateBlob");
+    }
+
+    public void updateClob(int columnIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateClob(String columnLabel, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateClob");
+    }
+
+    public void updateNClob(int columnIndex, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public void updateNClob(String columnLabel, Reader x) throws SQLException {
+        throw SQLCompilerDriver.unsupported("updateNClob");
+    }
+
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getObject");
+    }
+
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        throw SQLCompilerDriver.unsupported("getObject");
+    }
+}
@@ -0,0 +1,129 @@
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+// Columns are numbers (DOUBLE) or text (VARCHAR) going by their declared type.
+class JdbcResultSetMetaData implements ResultSetMetaData {
+    private final List<String> columns;
+    private final List<String> types;
+
+    JdbcResultSetMetaData(List<String> columns, List<String> types) {
+        this.columns = columns;
+        this.types = types;
+    }
+
+    private int index(int column) throws SQLException {
+        if (column < 1 || column > columns.size()) throw new SQLException("Column index " + column + " out of range (1-" + columns.size() + ").");
+        return column - 1;
+    }
+
+    private boolean isText(int column) throws SQLException {
+        String type = types.get(index(column)).toUpperCase();
+        return type.contains("CHAR") || type.contains("TEXT") || type.contains("STRING");
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public String getColumnLabel(int column) throws SQLException {
+        return columns.get(index(column));
+    }
+
+    public String getColumnName(int column) throws SQLException {
+        return columns.get(index(column));
+    }
+
+    public int getColumnType(int column) throws SQLException {
+        return isText(column) ? Types.VARCHAR : Types.DOUBLE;
+    }
+
+    public String getColumnTypeName(int column) throws SQLException {
+        return types.get(index(column));
+    }
+
+    public String getColumnClassName(int column) throws SQLException {
+        return isText(column) ? String.class.getName() : Double.class.getName();
+    }
+
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return isText(column) ? Integer.MAX_VALUE : 24;
+    }
+
+    public int isNullable(int column) throws SQLException {
+        index(column);
+        return ResultSetMetaData.columnNullable;
+    }
+
+    public boolean isSigned(int column) throws SQLException {
+        return !isText(column);
+    }
+
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return isText(column);
+    }
+
+    public boolean isAutoIncrement(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    public boolean isSearchable(int column) throws SQLException {
+        index(column);
+        return true;
+    }
+
+    public boolean isCurrency(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    public int getPrecision(int column) throws SQLException {
+        return isText(column) ? 0 : 17;
+    }
+
+    public int getScale(int column) throws SQLException {
+        index(column);
+        return 0;
+    }
+
+    public String getSchemaName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    public String getTableName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    public String getCatalogName(int column) throws SQLException {
+        index(column);
+        return "";
+    }
+
+    public boolean isReadOnly(int column) throws SQLException {
+        index(column);
+        return true;
+    }
+
+    public boolean isWritable(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        index(column);
+        return false;
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
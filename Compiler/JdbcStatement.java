@@ -0,0 +1,306 @@
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class JdbcStatement implements Statement {
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    final JdbcConnection connection;
+    private final List<String> batch = new ArrayList<>();
+    private JdbcResultSet results;
+    private long updateCount = -1;
+    private int fetchSize;
+    private long maxRows;
+    private boolean closeOnCompletion;
+    private boolean poolable;
+    private boolean closed;
+
+    JdbcStatement(JdbcConnection connection) {
+        this.connection = connection;
+    }
+
+    void checkOpen() throws SQLException {
+        if (closed) throw new SQLException("Statement is closed.");
+        connection.checkOpen();
+    }
+
+    // Runs a parsed statement, closing the previous ResultSet; true if it returned one.
+    boolean run(SQLCompiler.Prepared statement) throws SQLException {
+        closeResults();
+        if (statement.isQuery()) {
+            results = connection.query(statement, this);
+            return true;
+        }
+        updateCount = connection.update(statement);
+        return false;
+    }
+
+    private void closeResults() throws SQLException {
+        updateCount = -1;
+        if (results == null) return;
+        JdbcResultSet previous = results;
+        results = null;
+        previous.close();
+    }
+
+    void resultsClosed(JdbcResultSet closedResults) throws SQLException {
+        if (closedResults == results && closeOnCompletion) close();
+    }
+
+    long maxRows() {
+        return maxRows;
+    }
+
+    int fetchSize() {
+        return fetchSize;
+    }
+
+    public boolean execute(String sql) throws SQLException {
+        checkOpen();
+        return run(connection.prepare(sql, false));
+    }
+
+    public ResultSet executeQuery(String sql) throws SQLException {
+        if (!execute(sql)) throw new SQLException("Not a query: " + sql);
+        return results;
+    }
+
+    public int executeUpdate(String sql) throws SQLException {
+        return (int) executeLargeUpdate(sql);
+    }
+
+    public long executeLargeUpdate(String sql) throws SQLException {
+        checkOpen();
+        SQLCompiler.Prepared statement = connection.prepare(sql, false);
+        if (statement.isQuery()) throw new SQLException("executeUpdate can't run a query: " + sql);
+        run(statement);
+        return updateCount;
+    }
+
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) throw SQLCompilerDriver.unsupported("Generated keys");
+        return executeUpdate(sql);
+    }
+
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) throw SQLCompilerDriver.unsupported("Generated keys");
+        return execute(sql);
+    }
+
+    public void addBatch(String sql) throws SQLException {
+        checkOpen();
+        batch.add(sql);
+    }
+
+    public void clearBatch() throws SQLException {
+        checkOpen();
+        batch.clear();
+    }
+
+    public int[] executeBatch() throws SQLException {
+        return toInts(executeLargeBatch());
+    }
+
+    public long[] executeLargeBatch() throws SQLException {
+        checkOpen();
+        long[] counts = new long[batch.size()];
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                try {
+                    counts[i] = executeLargeUpdate(batch.get(i));
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(counts, i), e);
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+        return counts;
+    }
+
+    static int[] toInts(long[] counts) {
+        int[] ints = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) ints[i] = (int) Math.min(counts[i], Integer.MAX_VALUE);
+        return ints;
+    }
+
+    void setUpdateCount(long updateCount) {
+        this.updateCount = updateCount;
+    }
+
+    public ResultSet getResultSet() throws SQLException {
+        checkOpen();
+        return results;
+    }
+
+    public int getUpdateCount() throws SQLException {
+        return (int) Math.min(getLargeUpdateCount(), Integer.MAX_VALUE);
+    }
+
+    public long getLargeUpdateCount() throws SQLException {
+        checkOpen();
+        return updateCount;
+    }
+
+    public boolean getMoreResults() throws SQLException {
+        checkOpen();
+        closeResults();
+        return false;
+    }
+
+    public boolean getMoreResults(int current) throws SQLException {
+        return getMoreResults();
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public void setFetchSize(int rows) throws SQLException {
+        checkOpen();
+        if (rows < 0) throw new SQLException("Fetch size can't be negative.");
+        fetchSize = rows;
+    }
+
+    public int getFetchSize() throws SQLException {
+        checkOpen();
+        return fetchSize;
+    }
+
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != ResultSet.FETCH_FORWARD) throw SQLCompilerDriver.unsupported("Fetching backwards");
+    }
+
+    public int getFetchDirection() {
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    public void setMaxRows(int max) throws SQLException {
+        setLargeMaxRows(max);
+    }
+
+    public void setLargeMaxRows(long max) throws SQLException {
+        checkOpen();
+        if (max < 0) throw new SQLException("Max rows can't be negative.");
+        maxRows = max;
+    }
+
+    public int getMaxRows() throws SQLException {
+        return (int) Math.min(getLargeMaxRows(), Integer.MAX_VALUE);
+    }
+
+    public long getLargeMaxRows() throws SQLException {
+        checkOpen();
+        return maxRows;
+    }
+
+    public int getMaxFieldSize() {
+        return 0;
+    }
+
+    public void setMaxFieldSize(int max) {
+    }
+
+    public void setEscapeProcessing(boolean enable) {
+    }
+
+    public int getQueryTimeout() {
+        return 0;
+    }
+
+    public void setQueryTimeout(int seconds) throws SQLException {
+        if (seconds != 0) throw SQLCompilerDriver.unsupported("Query timeouts");
+    }
+
+    public int getResultSetConcurrency() {
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    public int getResultSetType() {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    public int getResultSetHoldability() {
+        return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    public SQLWarning getWarnings() {
+        return null;
+    }
+
+    public void clearWarnings() {
+    }
+
+    public void close() throws SQLException {
+        if (closed) return;
+        closed = true;
+        closeResults();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void closeOnCompletion() throws SQLException {
+        checkOpen();
+        closeOnCompletion = true;
+    }
+
+    public boolean isCloseOnCompletion() throws SQLException {
+        checkOpen();
+        return closeOnCompletion;
+    }
+
+    public void setPoolable(boolean poolable) {
+        this.poolable = poolable;
+    }
+
+    public boolean isPoolable() {
+        return poolable;
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // Not supported.
+
+    public void cancel() throws SQLException {
+        throw SQLCompilerDriver.unsupported("cancel");
+    }
+
+    public void setCursorName(String name) throws SQLException {
+        throw SQLCompilerDriver.unsupported("setCursorName");
+    }
+
+    public ResultSet getGeneratedKeys() throws SQLException {
+        throw SQLCompilerDriver.unsupported("getGeneratedKeys");
+    }
+
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        throw SQLCompilerDriver.unsupported("executeUpdate");
+    }
+
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        throw SQLCompilerDriver.unsupported("executeUpdate");
+    }
+
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        throw SQLCompilerDriver.unsupported("execute");
+    }
+
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        throw SQLCompilerDriver.unsupported("execute");
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// A query's result rows, read as they are wanted by the JDBC driver's ResultSet. Closing it, or
+// reading past the last row, runs `release`, which gives the query's memory back to the pool.
+// In a file of its own because the driver's files use it.
+class QueryCursor implements Iterator<Object[]>, AutoCloseable {
+    final List<String> columns;
+    // Declared column types, as in CREATE TABLE.
+    final List<String> types;
+    // The rows are the table's own arrays (heap scans), which UPDATE changes in place.
+    final boolean sharesRows;
+    private final Iterator<Object[]> rows;
+    private Runnable release;
+
+    QueryCursor(List<String> columns, List<String> types, boolean sharesRows, Iterator<Object[]> rows, Runnable release) {
+        this.columns = columns;
+        this.types = types;
+        this.sharesRows = sharesRows;
+        this.rows = rows;
+        this.release = release;
+    }
+
+    public boolean hasNext() {
+        if (release == null) return false;
+        if (rows.hasNext()) return true;
+        close();
+        return false;
+    }
+
+    public Object[] next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return rows.next();
+    }
+
+    public void close() {
+        if (release == null) return;
+        release.run();
+        release = null;
+    }
+}
@@ -0,0 +1,20 @@
+// JMX requires MXBean interfaces to be public, so this one lives in its own file.
+public interface QueryMemoryPoolMXBean {
+    long getPoolBytes();
+
+    long getQueryLimitBytes();
+
+    long getUsedBytes();
+
+    long getPeakUsedBytes();
+
+    int getRunningQueries();
+
+    int getQueuedQueries();
+
+    long getAdmittedCount();
+
+    long getRejectedCount();
+
+    long getAbortedCount();
+}
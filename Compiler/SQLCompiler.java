@@ -1,6 +1,39 @@
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 import java.util.regex.*;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 class Token {
     String type;
@@ -15,240 +48,5076 @@ class Token {
     }
 }
 
+class Column {
+    final String name;
+    final String type;
+    final int ordinal;
+    // Set by CREATE BITMAP INDEX; the name is saved with the schema and the bitmaps rebuilt on load.
+    BitmapIndex index;
+
+    Column(String name, String type, int ordinal) {
+        this.name = name;
+        this.type = type;
+        this.ordinal = ordinal;
+    }
+}
+
+// Ordered column descriptors of a table. A column's ordinal is its index in every row of the
+// table, and every row array is exactly as wide as the schema.
+class TableSchema {
+    private final List<Column> columns = new ArrayList<>();
+    private final Map<String, Column> byName = new HashMap<>();
+
+    Column add(String name, String type) {
+        if (byName.containsKey(name)) throw new RuntimeException("Column '" + name + "' already exists.");
+        Column column = new Column(name, type, columns.size());
+        columns.add(column);
+        byName.put(name, column);
+        return column;
+    }
+
+    int size() {
+        return columns.size();
+    }
+
+    Column get(int ordinal) {
+        return columns.get(ordinal);
+    }
+
+    List<Column> columns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    int ordinal(String name) {
+        Column column = byName.get(name);
+        if (column == null) throw new RuntimeException("Column '" + name + "' not found.");
+        return column.ordinal;
+    }
+
+    List<String> names() {
+        List<String> names = new ArrayList<>(columns.size());
+        for (Column column : columns) names.add(column.name);
+        return names;
+    }
+
+    // Same descriptors, own column list: later ALTERs do not change the copy.
+    TableSchema copy() {
+        TableSchema copy = new TableSchema();
+        for (Column column : columns) {
+            copy.columns.add(column);
+            copy.byName.put(column.name, column);
+        }
+        return copy;
+    }
+}
+
 class Database {
-    private Map<String, Map<String, String>> tableSchemas = new HashMap<>();
-    private Map<String, List<Map<String, Object>>> tableData = new HashMap<>();
+    // -Dsqlcompiler.snapshotFormat=text writes the old one-line-per-row format; both formats load.
+    private static final boolean TEXT_SNAPSHOTS = "text".equalsIgnoreCase(System.getProperty("sqlcompiler.snapshotFormat"));
+    // -Dsqlcompiler.storage=heap (default), offheap (direct buffers) or mapped (temporary files); see OffHeapRowList.
+    private static final String STORAGE = System.getProperty("sqlcompiler.storage", "heap");
+    // -Dsqlcompiler.compactRatio: a table is compacted once this fraction of its rows are deleted.
+    private static final double COMPACT_RATIO = Double.parseDouble(System.getProperty("sqlcompiler.compactRatio", "0.25"));
+
+    private Map<String, TableSchema> tableSchemas = new HashMap<>();
+    private Map<String, List<Object[]>> tableData = new HashMap<>();
+    // Deleted rows by position. They stay in tableData, skipped by every scan, until compact() removes them.
+    // Concurrent because the partitions of one table are scanned in parallel.
+    private Map<String, BitSet> tombstones = new ConcurrentHashMap<>();
+    // Synchronized because --parallel runs DML on several tables at once.
+    private Set<String> pendingCompactions = Collections.synchronizedSet(new LinkedHashSet<>());
+    private Map<String, ZoneMap> zoneMaps = new HashMap<>();
+    // Partitioned tables; each partition is a table of its own in the maps above (see Partitioning).
+    private Map<String, Partitioning> partitions = new HashMap<>();
+    private Map<String, MaterializedView> views = new LinkedHashMap<>();
+    // Scan counters of the statement running on each thread, so statements run by --parallel are
+    // measured separately. Partition reads on the common pool count into the statement that started them.
+    private final ThreadLocal<ScanCounts> scanCounts = ThreadLocal.withInitial(ScanCounts::new);
+    // Memory held by the query running on each thread; see query().
+    private final ThreadLocal<MemoryTracker> queryMemory = ThreadLocal.withInitial(() -> MemoryTracker.UNTRACKED);
+    private ExecutorService checkpointWriter;
+    private Future<?> checkpoint;
+    // Status messages ("Inserted ...") go to System.out unless an embedding such as the JDBC driver turns them off.
+    private volatile boolean quiet;
+
+    void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    private void status(String message) {
+        if (!quiet) System.out.println(message);
+    }
+
+    // Rows read by scans since the last call; used for statement metrics.
+    long takeRowsScanned() {
+        return scanCounts.get().rows.sumThenReset();
+    }
+
+    // Zone map blocks skipped by scans since the last call; used for statement metrics.
+    long takeBlocksSkipped() {
+        return scanCounts.get().blocks.sumThenReset();
+    }
+
+    private static final class ScanCounts {
+        final LongAdder rows = new LongAdder();
+        final LongAdder blocks = new LongAdder();
+    }
+
+    TableSchema schema(String tableName) {
+        TableSchema schema = tableSchemas.get(tableName);
+        if (schema == null) throw new RuntimeException("Table '" + tableName + "' not found.");
+        return schema;
+    }
+
+    // Semantic analysis: resolves the statement's column references to row ordinals against the
+    // current schemas, so execution never looks a column up by name.
+    void bind(ASTNode node) {
+        switch (node.type) {
+            case "Select":
+                bindSelect(node);
+                break;
+            case "Explain":
+                bindSelect(node.query);
+                break;
+            case "Delete":
+            case "Update": {
+                TableSchema schema = schema(node.tableName);
+                if (node.where != null) bindCondition(node.where, schema.names());
+                if (node.setColumn != null) node.setOrdinal = schema.ordinal(node.setColumn);
+                break;
+            }
+        }
+    }
+
+    // Join rows are the base row followed by the join table's row, so join columns ("JT.COL")
+    // come after the base columns; after GROUP BY the row is (group column, COUNT), and with an
+    // aggregate (group column, aggregate) or just (aggregate).
+    private void bindSelect(ASTNode node) {
+        MaterializedView view = views.get(node.tableName);
+        if (view != null) {
+            bindViewSelect(node, view);
+            return;
+        }
+        TableSchema schema = schema(node.tableName);
+        List<String> columns = schema.names();
+        if (node.joinTable != null) {
+            TableSchema join = tableSchemas.get(node.joinTable);
+            if (join == null) throw new RuntimeException("Join table '" + node.joinTable + "' not found.");
+            node.joinOrdinal1 = schema.ordinal(node.joinColumn1);
+            node.joinOrdinal2 = join.ordinal(node.joinColumn2);
+            for (String column : join.names()) columns.add(node.joinTable + "." + column);
+        }
+        if (node.where != null) bindCondition(node.where, columns);
+        if (node.aggregate != null) node.aggregateOrdinal = ordinal(columns, node.aggregateColumn);
+        if (node.groupByColumn != null) node.groupByOrdinal = ordinal(columns, node.groupByColumn);
+        if (node.aggregate != null || node.groupByColumn != null) columns = resultColumns(node);
+        if (node.orderByColumn != null) node.orderByOrdinal = ordinal(columns, node.orderByColumn);
+    }
+
+    // A view reads like a table of its result columns that can only be filtered and sorted.
+    private static void bindViewSelect(ASTNode node, MaterializedView view) {
+        if (node.joinTable != null || node.aggregate != null || node.groupByColumn != null || node.sample != null) {
+            throw new RuntimeException("Materialized view '" + view.name + "' can only be queried with WHERE and ORDER BY.");
+        }
+        if (node.where != null) bindCondition(node.where, view.columns);
+        if (node.orderByColumn != null) node.orderByOrdinal = ordinal(view.columns, node.orderByColumn);
+    }
+
+    private static List<String> resultColumns(ASTNode node) {
+        String value = "COUNT";
+        if ("APPROX_COUNT_DISTINCT".equals(node.aggregate)) value = "APPROX_COUNT_DISTINCT(" + node.aggregateColumn + ")";
+        else if ("COUNT_DISTINCT".equals(node.aggregate)) value = "COUNT(DISTINCT " + node.aggregateColumn + ")";
+        return node.groupByColumn != null ? Arrays.asList(node.groupByColumn, value) : Collections.singletonList(value);
+    }
+
+    private static void bindCondition(Condition condition, List<String> columns) {
+        if (condition.isLeaf()) condition.ordinal = ordinal(columns, condition.column);
+        for (Condition child : condition.children) bindCondition(child, columns);
+    }
+
+    private static int ordinal(List<String> columns, String column) {
+        int ordinal = columns.indexOf(column);
+        if (ordinal < 0) throw new RuntimeException("Column '" + column + "' not found.");
+        return ordinal;
+    }
 
     void createTable(String tableName, Map<String, String> columns) {
+        createTable(tableName, columns, null);
+    }
+
+    void createTable(String tableName, Map<String, String> columns, Partitioning partitioning) {
+        if (views.containsKey(tableName)) throw new RuntimeException("Materialized view '" + tableName + "' already exists.");
         if (tableSchemas.containsKey(tableName)) {
-            System.out.println("Table '" + tableName + "' already exists, skipping creation.");
+            status("Table '" + tableName + "' already exists, skipping creation.");
+            return;
+        }
+        TableSchema schema = new TableSchema();
+        columns.forEach(schema::add);
+        if (partitioning != null) partitioning.ordinal = schema.ordinal(partitioning.column);
+        addTable(tableName, schema);
+        if (partitioning == null) {
+            status("Created table '" + tableName + "'.");
             return;
         }
-        tableSchemas.put(tableName, columns);
-        tableData.put(tableName, new ArrayList<>());
-        System.out.println("Created table '" + tableName + "'.");
+        partitions.put(tableName, partitioning);
+        for (String partition : partitioning.names) addPartitionTable(tableName, partition);
+        status("Created table '" + tableName + "' with " + partitioning.names.size() + " " + partitioning.kind + " partition(s).");
+    }
+
+    private void addTable(String tableName, TableSchema schema) {
+        tableSchemas.put(tableName, schema);
+        tableData.put(tableName, newRowList());
+        zoneMaps.put(tableName, new ZoneMap(schema.size()));
+    }
+
+    // A partition gets the table's columns and bitmap indexes, as descriptors of its own.
+    private void addPartitionTable(String tableName, String partition) {
+        TableSchema schema = new TableSchema();
+        for (Column column : tableSchemas.get(tableName).columns()) {
+            Column local = schema.add(column.name, column.type);
+            if (column.index != null) local.index = new BitmapIndex(column.index.name, local.ordinal);
+        }
+        addTable(Partitioning.tableName(tableName, partition), schema);
     }
 
     void alterTable(String tableName, String columnName, String columnType) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        tableSchemas.get(tableName).put(columnName, columnType);
-        System.out.println("Altered table '" + tableName + "' to add '" + columnName + "'.");
+        addColumn(tableName, columnName, columnType);
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning != null) {
+            for (String partition : partitioning.names) addColumn(Partitioning.tableName(tableName, partition), columnName, columnType);
+        }
+        status("Altered table '" + tableName + "' to add '" + columnName + "'.");
+    }
+
+    // Existing rows are widened (replaced, not changed, so a running checkpoint keeps its rows).
+    // Off-heap rows are left as they are and decode with the new column NULL.
+    private void addColumn(String tableName, String columnName, String columnType) {
+        TableSchema schema = schema(tableName);
+        schema.add(columnName, columnType);
+        List<Object[]> rows = tableData.get(tableName);
+        if (rows instanceof OffHeapRowList) {
+            ((OffHeapRowList) rows).widen(schema.size());
+        } else {
+            for (int i = 0; i < rows.size(); i++) rows.set(i, Arrays.copyOf(rows.get(i), schema.size()));
+        }
+        zoneMaps.get(tableName).addColumn();
     }
 
     void dropTable(String tableName) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
+        schema(tableName);
+        for (MaterializedView view : views.values()) {
+            if (view.table().equals(tableName)) throw new RuntimeException("Table '" + tableName + "' has materialized view '" + view.name + "'; drop it first.");
+        }
+        removeTable(tableName);
+        Partitioning partitioning = partitions.remove(tableName);
+        if (partitioning != null) {
+            for (String partition : partitioning.names) removeTable(Partitioning.tableName(tableName, partition));
+        }
+        status("Dropped table '" + tableName + "'.");
+    }
+
+    private void removeTable(String tableName) {
         tableSchemas.remove(tableName);
         tableData.remove(tableName);
-        System.out.println("Dropped table '" + tableName + "'.");
+        tombstones.remove(tableName);
+        pendingCompactions.remove(tableName);
+        zoneMaps.remove(tableName);
+    }
+
+    void addPartition(String tableName, String partition, Object bound) {
+        rangePartitioning(tableName).addRange(partition, bound);
+        addPartitionTable(tableName, partition);
+        status("Added partition '" + partition + "' to '" + tableName + "'.");
+    }
+
+    // Only drops the partition's table: no rows are scanned unless a materialized view is defined
+    // on the table. The next partition's range now starts where the dropped one's did.
+    void dropPartition(String tableName, String partition) {
+        Partitioning partitioning = rangePartitioning(tableName);
+        int i = partitioning.names.indexOf(partition);
+        if (i < 0) throw new RuntimeException("Partition '" + partition + "' of '" + tableName + "' not found.");
+        String partitionTable = Partitioning.tableName(tableName, partition);
+        int rows = tableData.get(partitionTable).size() - tombstones(partitionTable).cardinality();
+        // Views are the exception: they have to take the partition's rows out.
+        List<MaterializedView> dependent = viewsOn(tableName);
+        if (!dependent.isEmpty()) {
+            List<Object[]> data = tableData.get(partitionTable);
+            BitSet deleted = tombstones(partitionTable);
+            for (int position = deleted.nextClearBit(0); position < data.size(); position = deleted.nextClearBit(position + 1)) {
+                for (MaterializedView view : dependent) view.apply(data.get(position), -1);
+            }
+        }
+        partitioning.names.remove(i);
+        partitioning.bounds.remove(i);
+        removeTable(partitionTable);
+        status("Dropped partition '" + partition + "' of '" + tableName + "' with " + rows + " row(s).");
+    }
+
+    private Partitioning rangePartitioning(String tableName) {
+        schema(tableName);
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning == null || !"RANGE".equals(partitioning.kind)) throw new RuntimeException("Table '" + tableName + "' is not partitioned by RANGE.");
+        return partitioning;
+    }
+
+    // The tables holding the rows of `tableName` that match every term: the partitions that are
+    // not pruned, or the table itself when it is not partitioned.
+    private List<String> tablesFor(String tableName, List<Condition> terms) {
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning == null) return Collections.singletonList(tableName);
+        List<String> tables = new ArrayList<>();
+        for (String partition : partitioning.prune(terms, 0)) tables.add(Partitioning.tableName(tableName, partition));
+        return tables;
+    }
+
+    void createIndex(String indexName, String tableName, String columnName) {
+        TableSchema schema = schema(tableName);
+        Column column = schema.get(schema.ordinal(columnName));
+        for (TableSchema table : tableSchemas.values()) {
+            for (Column other : table.columns()) {
+                if (other.index != null && other.index.name.equals(indexName)) throw new RuntimeException("Index '" + indexName + "' already exists.");
+            }
+        }
+        if (column.index != null) throw new RuntimeException("Column '" + columnName + "' already has index '" + column.index.name + "'.");
+        BitmapIndex index = new BitmapIndex(indexName, column.ordinal);
+        index.build(tableData.get(tableName));
+        column.index = index;
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning != null) {
+            for (String partition : tablesFor(tableName, Collections.emptyList())) {
+                Column local = tableSchemas.get(partition).get(column.ordinal);
+                local.index = new BitmapIndex(indexName, column.ordinal);
+                local.index.build(tableData.get(partition));
+            }
+            status("Created bitmap index '" + indexName + "' on '" + tableName + "' (" + columnName + ") in " + partitioning.names.size() + " partition(s).");
+            return;
+        }
+        status("Created bitmap index '" + indexName + "' on '" + tableName + "' (" + columnName + ") with " + index.distinctValues() + " distinct value(s).");
+    }
+
+    // The view is filled from the table's live rows once; from then on DML keeps it up to date.
+    void createView(String viewName, ASTNode query, String definition) {
+        if (tableSchemas.containsKey(viewName) || views.containsKey(viewName)) throw new RuntimeException("Table or view '" + viewName + "' already exists.");
+        if (views.containsKey(query.tableName)) throw new RuntimeException("Materialized view '" + viewName + "' cannot be defined on another view.");
+        MaterializedView view = defineView(viewName, query, definition);
+        fill(view);
+        views.put(viewName, view);
+        status("Created materialized view '" + viewName + "' with " + view.groups() + " group(s).");
+    }
+
+    private MaterializedView defineView(String viewName, ASTNode query, String definition) {
+        bindSelect(query);
+        return new MaterializedView(viewName, definition, query, resultColumns(query));
+    }
+
+    private void fill(MaterializedView view) {
+        for (String tableName : tablesFor(view.table(), Collections.emptyList())) {
+            List<Object[]> rows = tableData.get(tableName);
+            BitSet deleted = tombstones(tableName);
+            for (int position = deleted.nextClearBit(0); position < rows.size(); position = deleted.nextClearBit(position + 1)) {
+                view.apply(rows.get(position), 1);
+            }
+        }
+    }
+
+    void dropView(String viewName) {
+        if (views.remove(viewName) == null) throw new RuntimeException("Materialized view '" + viewName + "' not found.");
+        status("Dropped materialized view '" + viewName + "'.");
+    }
+
+    // Views over the table a table (or partition) belongs to.
+    private List<MaterializedView> viewsOn(String tableName) {
+        if (views.isEmpty()) return Collections.emptyList();
+        String table = Partitioning.parentOf(tableName);
+        List<MaterializedView> on = new ArrayList<>();
+        for (MaterializedView view : views.values()) if (view.table().equals(table)) on.add(view);
+        return on;
+    }
+
+    // View name -> its table, for --parallel to see that writing the table changes the view.
+    Map<String, String> viewTables() {
+        Map<String, String> tables = new HashMap<>();
+        views.forEach((name, view) -> tables.put(name, view.table()));
+        return tables;
+    }
+
+    // Adds rows appended at positions first, first + 1, ... to the table's zone map and bitmap indexes.
+    private void appended(String tableName, List<Object[]> rows, int first) {
+        ZoneMap zones = zoneMaps.get(tableName);
+        for (Object[] row : rows) zones.add(row);
+        for (Column column : tableSchemas.get(tableName).columns()) {
+            if (column.index == null) continue;
+            for (int i = 0; i < rows.size(); i++) column.index.add(first + i, rows.get(i)[column.ordinal]);
+        }
+    }
+
+    private void rebuildIndexes(String tableName) {
+        for (Column column : tableSchemas.get(tableName).columns()) {
+            if (column.index != null) column.index.build(tableData.get(tableName));
+        }
     }
 
     void insert(String tableName, List<Object> values) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        Map<String, String> schema = tableSchemas.get(tableName);
+        TableSchema schema = schema(tableName);
+        route(tableName, Collections.singletonList(toRow(schema, values)));
+        status("Inserted into '" + tableName + "'.");
+    }
+
+    // Multi-row INSERT: all rows are validated before any is added.
+    void insertRows(String tableName, List<List<Object>> rows) {
+        TableSchema schema = schema(tableName);
+        List<Object[]> newRows = new ArrayList<>(rows.size());
+        for (List<Object> values : rows) newRows.add(toRow(schema, values));
+        route(tableName, newRows);
+        status("Inserted " + newRows.size() + " row(s) into '" + tableName + "'.");
+    }
+
+    // Appends rows to the table, or to the partitions their keys belong to. Every row is routed
+    // before any is added, so a key no partition takes adds nothing.
+    private void route(String tableName, List<Object[]> rows) {
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning == null) {
+            addRows(tableName, rows);
+            return;
+        }
+        Map<String, List<Object[]>> routed = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            String partition = Partitioning.tableName(tableName, partitioning.partitionOf(row[partitioning.ordinal]));
+            routed.computeIfAbsent(partition, k -> new ArrayList<>()).add(row);
+        }
+        routed.forEach(this::addRows);
+    }
+
+    private void addRows(String tableName, List<Object[]> rows) {
+        List<Object[]> table = tableData.get(tableName);
+        if (table instanceof ArrayList) ((ArrayList<Object[]>) table).ensureCapacity(table.size() + rows.size());
+        // Added first: if the rows don't fit (off-heap storage full) nothing else has changed.
+        int first = table.size();
+        table.addAll(rows);
+        appended(tableName, rows, first);
+        for (MaterializedView view : viewsOn(tableName)) {
+            for (Object[] row : rows) view.apply(row, 1);
+        }
+    }
+
+    private static Object[] toRow(TableSchema schema, List<Object> values) {
         if (values.size() != schema.size()) throw new RuntimeException("Expected " + schema.size() + " values, got " + values.size());
-        Map<String, Object> row = new HashMap<>();
-        int i = 0;
-        for (String col : schema.keySet()) row.put(col, values.get(i++));
-        tableData.get(tableName).add(row);
-        System.out.println("Inserted into '" + tableName + "'.");
-    }
-
-    List<Map<String, Object>> select(String tableName, String joinTable, String joinColumn1, String joinColumn2, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck, String groupByColumn, String orderByColumn) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        List<Map<String, Object>> result = new ArrayList<>();
-        List<Map<String, Object>> baseRows = tableData.get(tableName);
-
-        if (joinTable != null) {
-            if (!tableSchemas.containsKey(joinTable)) throw new RuntimeException("Join table '" + joinTable + "' not found.");
-            List<Map<String, Object>> joinRows = tableData.get(joinTable);
-            for (Map<String, Object> baseRow : baseRows) {
-                for (Map<String, Object> joinRow : joinRows) {
-                    if (baseRow.get(joinColumn1).equals(joinRow.get(joinColumn2))) {
-                        Map<String, Object> combined = new HashMap<>(baseRow);
-                        joinRow.forEach((k, v) -> combined.put(joinTable + "." + k, v));
-                        result.add(combined);
-                    }
-                }
+        return values.toArray();
+    }
+
+    private static List<Object[]> newRowList() {
+        switch (STORAGE) {
+            case "heap": return new ArrayList<>();
+            case "offheap": return new OffHeapRowList(false);
+            case "mapped": return new OffHeapRowList(true);
+            default: throw new RuntimeException("Unknown storage '" + STORAGE + "', expected heap, offheap or mapped.");
+        }
+    }
+
+    List<Object[]> select(ASTNode query) {
+        MemoryTracker memory = query();
+        try {
+            PlanNode plan = planSelect(query);
+            boolean shared = sharesRows(plan);
+            List<Object[]> result = new ArrayList<>();
+            for (Iterator<Object[]> rows = open(plan, false); rows.hasNext(); ) {
+                Object[] row = rows.next();
+                memory.reserve(null, MemoryTracker.rowBytes(row, shared));
+                result.add(row);
             }
-        } else {
-            result.addAll(baseRows);
+            return result;
+        } finally {
+            endQuery(memory);
         }
+    }
 
-        if (whereColumn != null || likePattern != null || isNullCheck || isNotNullCheck) {
-            result.removeIf(row -> {
-                if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) return true;
-                if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) return true;
-                if (isNullCheck && row.get(whereColumn) != null) return true;
-                if (isNotNullCheck && row.get(whereColumn) == null) return true;
-                return false;
-            });
+    // Streams the result rows into the sink as the plan produces them; returns the row count.
+    long selectInto(ASTNode query, ResultSink sink) {
+        MemoryTracker memory = query();
+        try {
+            PlanNode plan = planSelect(query);
+            Iterator<Object[]> rows = open(plan, false);
+            long count = 0;
+            sink.begin(query.tableName, plan.columns);
+            while (rows.hasNext()) {
+                sink.row(rows.next());
+                count++;
+            }
+            sink.end();
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            endQuery(memory);
         }
+    }
 
-        if (groupByColumn != null) {
-            Map<Object, List<Map<String, Object>>> grouped = new LinkedHashMap<>();
-            for (Map<String, Object> row : result) {
-                Object key = row.get(groupByColumn);
-                grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+    PlanNode explain(ASTNode query, boolean analyze) {
+        MemoryTracker memory = query();
+        try {
+            PlanNode plan = planSelect(query);
+            if (analyze) {
+                Iterator<Object[]> rows = open(plan, true);
+                while (rows.hasNext()) rows.next();
+                plan.finish();
             }
-            result.clear();
-            grouped.forEach((key, rows) -> {
-                Map<String, Object> aggRow = new HashMap<>();
-                aggRow.put(groupByColumn, key);
-                aggRow.put("COUNT", (double) rows.size());
-                result.add(aggRow);
-            });
+            return plan;
+        } finally {
+            endQuery(memory);
         }
+    }
 
-        if (orderByColumn != null) {
-            result.sort((a, b) -> {
-                Object valA = a.get(orderByColumn);
-                Object valB = b.get(orderByColumn);
-                if (valA instanceof Double && valB instanceof Double) return Double.compare((Double) valA, (Double) valB);
-                return valA.toString().compareTo(valB.toString());
-            });
+    // Opens the query for its rows to be read as they are wanted (the JDBC driver's ResultSet).
+    // Its memory stays reserved until the cursor is closed.
+    QueryCursor openCursor(ASTNode query) {
+        MemoryTracker memory = query();
+        try {
+            PlanNode plan = planSelect(query);
+            return new QueryCursor(plan.columns, columnTypes(query, plan.columns), sharesRows(plan), open(plan, false), memory::close);
+        } catch (RuntimeException e) {
+            memory.close();
+            throw e;
+        } finally {
+            queryMemory.remove();
         }
+    }
 
-        return result;
+    // The declared type of each result column ("DOUBLE" for counts); join columns are "JT.COL".
+    private List<String> columnTypes(ASTNode query, List<String> columns) {
+        MaterializedView view = views.get(query.tableName);
+        String table = view != null ? view.table() : query.tableName;
+        List<String> types = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            int dot = column.indexOf('.');
+            TableSchema schema = tableSchemas.get(dot < 0 ? table : column.substring(0, dot));
+            String name = column.substring(dot + 1);
+            types.add(schema != null && schema.names().contains(name) ? schema.get(schema.ordinal(name)).type : "DOUBLE");
+        }
+        return types;
+    }
+
+    // Admits the query to the memory pool, waiting while the pool is full; its operators then
+    // account what they hold against it until endQuery.
+    private MemoryTracker query() {
+        MemoryTracker memory = QueryMemoryPool.INSTANCE.admit();
+        queryMemory.set(memory);
+        return memory;
+    }
+
+    private void endQuery(MemoryTracker memory) {
+        queryMemory.remove();
+        memory.close();
+    }
+
+    // Whether the plan returns the table's own rows (heap scans), which cost nothing but a
+    // reference to hold; joins and off-heap tables make new ones.
+    private static boolean sharesRows(PlanNode node) {
+        switch (node.operator) {
+            case "SeqScan":
+            case "BitmapIndexScan":
+                return "heap".equals(STORAGE);
+            case "Filter":
+            case "Sort":
+            case "Append":
+                return sharesRows(node.children.get(0));
+            default:
+                return false;
+        }
+    }
+
+    // Builds the operator tree for a bound SELECT: scans at the leaves, then join, filter, grouping and sort.
+    PlanNode planSelect(ASTNode query) {
+        PlanEvent event = new PlanEvent();
+        event.begin();
+        PlanNode plan = buildPlan(query);
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = query.tableName;
+            event.plan = plan.toText();
+            event.commit();
+        }
+        return plan;
     }
 
-    void delete(String tableName, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        List<Map<String, Object>> rows = tableData.get(tableName);
-        int removed = 0;
-        Iterator<Map<String, Object>> iterator = rows.iterator();
-        while (iterator.hasNext()) {
-            Map<String, Object> row = iterator.next();
-            boolean match = true;
-            if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) match = false;
-            if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) match = false;
-            if (isNullCheck && row.get(whereColumn) != null) match = false;
-            if (isNotNullCheck && row.get(whereColumn) == null) match = false;
-            if (match) {
-                iterator.remove();
-                removed++;
+    private PlanNode buildPlan(ASTNode q) {
+        MaterializedView view = views.get(q.tableName);
+        if (view != null) {
+            // One row per group, already aggregated: no table is read.
+            PlanNode plan = new PlanNode("ViewScan", q.tableName);
+            plan.tableName = q.tableName;
+            plan.columns = view.columns;
+            if (q.where != null) plan = filter(q.where.conjuncts(), 0, plan);
+            return q.orderByOrdinal >= 0 ? sort(q, plan) : plan;
+        }
+        TableSchema schema = schema(q.tableName);
+        TableSchema joinSchema = null;
+        if (q.joinTable != null) {
+            joinSchema = tableSchemas.get(q.joinTable);
+            if (joinSchema == null) throw new RuntimeException("Join table '" + q.joinTable + "' not found.");
+        }
+        // Predicate pushdown: AND terms that only reference one table are applied to that table's
+        // rows below the join; only terms mixing both tables are left for the joined rows.
+        int width = schema.size();
+        List<Condition> outer = new ArrayList<>();
+        List<Condition> inner = new ArrayList<>();
+        List<Condition> joined = new ArrayList<>();
+        if (q.where != null) {
+            for (Condition term : q.where.conjuncts()) {
+                if (term.within(0, width)) outer.add(term);
+                else if (joinSchema != null && term.within(width, width + joinSchema.size())) inner.add(term);
+                else joined.add(term);
             }
         }
-        System.out.println("Deleted " + removed + " row(s) from '" + tableName + "'.");
+        if ("APPROX_COUNT_DISTINCT".equals(q.aggregate) && q.where == null && q.joinTable == null && q.groupByOrdinal < 0 && q.sample == null && sketch(q.tableName, q.aggregateOrdinal) != null) {
+            PlanNode statistics = new PlanNode("Statistics", q.tableName + ", " + resultColumns(q).get(0));
+            statistics.tableName = q.tableName;
+            statistics.aggregate = q.aggregate;
+            statistics.aggregateOrdinal = q.aggregateOrdinal;
+            statistics.columns = resultColumns(q);
+            return q.orderByOrdinal >= 0 ? sort(q, statistics) : statistics;
+        }
+        PlanNode plan = planTable(q.tableName, schema, outer, 0);
+        if (q.sample != null) sample(plan, q.sample);
+        if (joinSchema != null) {
+            PlanNode join = new PlanNode("NestedLoopJoin", q.tableName + "." + q.joinColumn1 + " = " + q.joinTable + "." + q.joinColumn2, plan, planTable(q.joinTable, joinSchema, inner, width));
+            join.tableName = q.joinTable;
+            join.ordinal = q.joinOrdinal1;
+            join.joinOrdinal = q.joinOrdinal2;
+            join.columns = new ArrayList<>(plan.columns);
+            for (String column : joinSchema.names()) join.columns.add(q.joinTable + "." + column);
+            plan = join;
+        }
+        if (!joined.isEmpty()) plan = filter(joined, 0, plan);
+        if (q.aggregate != null || q.groupByOrdinal >= 0) {
+            List<String> columns = resultColumns(q);
+            String detail = columns.get(columns.size() - 1);
+            if (q.groupByOrdinal >= 0) detail = "GROUP BY " + q.groupByColumn + ", " + detail;
+            plan = new PlanNode(q.groupByOrdinal >= 0 ? "HashAggregate" : "Aggregate", detail, plan);
+            plan.ordinal = q.groupByOrdinal;
+            plan.aggregate = q.aggregate;
+            plan.aggregateOrdinal = q.aggregateOrdinal;
+            plan.columns = columns;
+        }
+        return q.orderByOrdinal >= 0 ? sort(q, plan) : plan;
     }
 
-    void update(String tableName, String setColumn, Object setValue, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck) {
-        if (!tableSchemas.containsKey(tableName)) throw new RuntimeException("Table '" + tableName + "' not found.");
-        if (!tableSchemas.get(tableName).containsKey(setColumn)) throw new RuntimeException("Column '" + setColumn + "' not found.");
-        List<Map<String, Object>> rows = tableData.get(tableName);
-        int updated = 0;
-        for (Map<String, Object> row : rows) {
-            boolean match = true;
-            if (whereColumn != null && !row.get(whereColumn).equals(whereValue)) match = false;
-            if (likePattern != null && (row.get(whereColumn) == null || !((String) row.get(whereColumn)).matches(likePattern.replace("%", ".*")))) match = false;
-            if (isNullCheck && row.get(whereColumn) != null) match = false;
-            if (isNotNullCheck && row.get(whereColumn) == null) match = false;
-            if (match) {
-                row.put(setColumn, setValue);
-                updated++;
+    private static PlanNode sort(ASTNode q, PlanNode input) {
+        PlanNode plan = new PlanNode("Sort", "ORDER BY " + q.orderByColumn, input);
+        plan.ordinal = q.orderByOrdinal;
+        return plan;
+    }
+
+    // Puts the TABLESAMPLE on the scans under `plan`, per partition for a partitioned table.
+    private static void sample(PlanNode plan, TableSample sample) {
+        if ("SeqScan".equals(plan.operator) || "BitmapIndexScan".equals(plan.operator)) plan.sample = sample.forTable(plan.tableName);
+        for (PlanNode child : plan.children) sample(child, sample);
+    }
+
+    // The sketch of a column's distinct values kept with the table's zone maps (merged over its
+    // partitions), or null when deleted or updated rows may have made it overcount.
+    private HyperLogLog sketch(String tableName, int ordinal) {
+        Partitioning partitioning = partitions.get(tableName);
+        List<String> tables = new ArrayList<>();
+        if (partitioning == null) tables.add(tableName);
+        else for (String partition : partitioning.names) tables.add(Partitioning.tableName(tableName, partition));
+        HyperLogLog union = new HyperLogLog();
+        for (String table : tables) {
+            BitSet deleted = tombstones.get(table);
+            HyperLogLog sketch = zoneMaps.get(table).distinct(ordinal);
+            if (sketch == null || (deleted != null && !deleted.isEmpty())) return null;
+            union.merge(sketch);
+        }
+        return union;
+    }
+
+    // Access path for one table, whose columns start at `offset` in the statement's rows. AND terms
+    // that bitmap indexes can answer are combined into one bitmap (AND of the terms' bitmaps,
+    // themselves built with AND / OR / AND NOT) before any row is read, and a BitmapIndexScan
+    // reads just those positions. Otherwise a SeqScan skips the zone map blocks the terms rule
+    // out. Remaining terms go into a Filter above the scan.
+    // A partitioned table becomes an Append of its partitions' access paths, leaving out the
+    // partitions the terms rule out.
+    private PlanNode planTable(String tableName, TableSchema schema, List<Condition> terms, int offset) {
+        Partitioning partitioning = partitions.get(tableName);
+        if (partitioning != null) {
+            List<String> pruned = partitioning.prune(terms, offset);
+            PlanNode append = new PlanNode("Append", tableName + ", " + pruned.size() + " of " + partitioning.names.size() + " partitions");
+            append.tableName = tableName;
+            append.columns = schema.names();
+            for (String partition : pruned) {
+                String partitionTable = Partitioning.tableName(tableName, partition);
+                append.children.add(planTable(partitionTable, tableSchemas.get(partitionTable), terms, offset));
             }
+            return append;
         }
-        System.out.println("Updated " + updated + " row(s) in '" + tableName + "'.");
+        List<String> indexes = new ArrayList<>();
+        List<Condition> indexed = new ArrayList<>();
+        List<Condition> residual = new ArrayList<>();
+        RoaringBitmap positions = null;
+        for (Condition term : terms) {
+            List<String> used = new ArrayList<>();
+            RoaringBitmap bitmap = term.bitmap(schema, offset, used);
+            if (bitmap == null) {
+                residual.add(term);
+                continue;
+            }
+            positions = positions == null ? bitmap : RoaringBitmap.and(positions, bitmap);
+            indexed.add(term);
+            for (String name : used) if (!indexes.contains(name)) indexes.add(name);
+        }
+        PlanNode plan;
+        if (positions != null) {
+            plan = new PlanNode("BitmapIndexScan", tableName + " WHERE " + Condition.combine("AND", indexed));
+            plan.tableName = tableName;
+            plan.columns = schema.names();
+            plan.index = String.join(", ", indexes);
+            plan.positions = positions;
+        } else {
+            plan = PlanNode.scan(tableName, schema.names());
+            if (!terms.isEmpty()) {
+                Condition all = Condition.combine("AND", terms);
+                ZoneMap zones = zoneMaps.get(tableName);
+                plan.blocks = block -> all.mayMatch(zones, block, offset);
+            }
+        }
+        if (residual.isEmpty()) return plan;
+        PlanNode filter = filter(residual, offset, plan);
+        if (tableData.get(tableName) instanceof OffHeapRowList) filter.encoded = Condition.combine("AND", residual).encodedTest(offset);
+        return filter;
     }
 
-    void saveToFile(String filename) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (String tableName : tableSchemas.keySet()) {
-                writer.write("TABLE " + tableName + "\n");
-                Map<String, String> schema = tableSchemas.get(tableName);
-                writer.write("SCHEMA ");
-                for (Map.Entry<String, String> col : schema.entrySet()) writer.write(col.getKey() + ":" + col.getValue() + ",");
-                writer.newLine();
-                List<Map<String, Object>> rows = tableData.get(tableName);
-                for (Map<String, Object> row : rows) {
-                    writer.write("ROW ");
-                    for (Map.Entry<String, Object> entry : row.entrySet()) writer.write(entry.getKey() + "=" + entry.getValue() + ",");
-                    writer.newLine();
+    private static PlanNode filter(List<Condition> terms, int offset, PlanNode input) {
+        Condition.order(terms, true);
+        Condition condition = Condition.combine("AND", terms);
+        PlanNode filter = new PlanNode("Filter", condition.toString(), input);
+        filter.filter = condition.compile(offset);
+        return filter;
+    }
+
+    // Positions of the live rows a scan node reads, less those its TABLESAMPLE leaves out. SYSTEM
+    // samples of a SeqScan are applied to whole blocks in scanPositions.
+    private PrimitiveIterator.OfInt positions(PlanNode scan) {
+        if ("SeqScan".equals(scan.operator)) {
+            PrimitiveIterator.OfInt positions = scanPositions(scan.tableName, scan.blocks, scan);
+            return scan.sample == null || scan.sample.system ? positions : sampled(positions, scan.sample);
+        }
+        if (scan.sample != null) return sampled(indexPositions(scan), scan.sample);
+        return indexPositions(scan);
+    }
+
+    private static PrimitiveIterator.OfInt sampled(PrimitiveIterator.OfInt positions, TableSample sample) {
+        return new PrimitiveIterator.OfInt() {
+            private int next = -1;
+
+            public boolean hasNext() {
+                while (next < 0 && positions.hasNext()) {
+                    int position = positions.nextInt();
+                    if (sample.keepsPosition(position)) next = position;
                 }
-                writer.write("END\n");
+                return next >= 0;
             }
-        }
-        System.out.println("Database saved to " + filename);
+
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int position = next;
+                next = -1;
+                return position;
+            }
+        };
     }
 
-    void loadFromFile(String filename) throws IOException {
-        tableSchemas.clear();
-        tableData.clear();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            String currentTable = null;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.startsWith("TABLE ")) {
-                    currentTable = line.substring(6);
-                    tableSchemas.put(currentTable, new HashMap<>());
-                    tableData.put(currentTable, new ArrayList<>());
-                } else if (line.startsWith("SCHEMA ") && currentTable != null) {
-                    String[] parts = line.substring(7).split(",");
-                    for (String part : parts) {
-                        if (!part.isEmpty()) {
-                            String[] col = part.split(":");
-                            tableSchemas.get(currentTable).put(col[0], col[1]);
+    private PrimitiveIterator.OfInt indexPositions(PlanNode scan) {
+        scanCounts.get().rows.add(scan.positions.cardinality());
+        BitSet deleted = tombstones(scan.tableName);
+        PrimitiveIterator.OfInt positions = scan.positions.iterator();
+        return new PrimitiveIterator.OfInt() {
+            private int next = -1;
+
+            public boolean hasNext() {
+                while (next < 0 && positions.hasNext()) {
+                    int position = positions.nextInt();
+                    if (!deleted.get(position)) next = position;
+                }
+                return next >= 0;
+            }
+
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int position = next;
+                next = -1;
+                return position;
+            }
+        };
+    }
+
+    private Iterator<Object[]> open(PlanNode node, boolean analyze) {
+        long start = analyze ? System.nanoTime() : 0;
+        long allocated = analyze ? PlanNode.allocatedBytes() : 0;
+        Iterator<Object[]> rows;
+        switch (node.operator) {
+            case "SeqScan":
+            case "BitmapIndexScan":
+                rows = rowsAt(node.tableName, positions(node));
+                break;
+            case "Append":
+                rows = openAppend(node, analyze);
+                break;
+            case "NestedLoopJoin": {
+                Iterator<Object[]> outer = open(node.children.get(0), analyze);
+                List<Object[]> inner = new ArrayList<>();
+                MemoryTracker memory = queryMemory.get();
+                boolean shared = sharesRows(node.children.get(1));
+                for (Iterator<Object[]> innerRows = open(node.children.get(1), analyze); innerRows.hasNext(); ) {
+                    Object[] row = innerRows.next();
+                    memory.reserve(node, MemoryTracker.rowBytes(row, shared));
+                    inner.add(row);
+                }
+                rows = new Iterator<Object[]>() {
+                    private Object[] outerRow;
+                    private int innerPos;
+                    private Object[] next;
+
+                    public boolean hasNext() {
+                        while (next == null) {
+                            if (outerRow == null || innerPos == inner.size()) {
+                                if (!outer.hasNext()) return false;
+                                outerRow = outer.next();
+                                innerPos = 0;
+                                continue;
+                            }
+                            Object[] innerRow = inner.get(innerPos++);
+                            Object key = outerRow[node.ordinal];
+                            if (key != null && key.equals(innerRow[node.joinOrdinal])) {
+                                Object[] combined = Arrays.copyOf(outerRow, outerRow.length + innerRow.length);
+                                System.arraycopy(innerRow, 0, combined, outerRow.length, innerRow.length);
+                                next = combined;
+                            }
                         }
+                        return true;
                     }
-                } else if (line.startsWith("ROW ") && currentTable != null) {
-                    Map<String, Object> row = new HashMap<>();
-                    String[] parts = line.substring(4).split(",");
-                    for (String part : parts) {
-                        if (!part.isEmpty()) {
-                            String[] kv = part.split("=");
-                            String value = kv[1];
-                            if (value.matches("-?\\d+\\.?\\d*")) row.put(kv[0], Double.parseDouble(value));
-                            else row.put(kv[0], value);
+
+                    public Object[] next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Object[] row = next;
+                        next = null;
+                        return row;
+                    }
+                };
+                break;
+            }
+            case "Filter": {
+                if (node.encoded != null) {
+                    rows = encodedRows(node, node.children.get(0), analyze);
+                    break;
+                }
+                Iterator<Object[]> input = open(node.children.get(0), analyze);
+                rows = new Iterator<Object[]>() {
+                    private Object[] next;
+
+                    public boolean hasNext() {
+                        while (next == null && input.hasNext()) {
+                            Object[] row = input.next();
+                            if (node.filter.test(row)) next = row;
                         }
+                        return next != null;
                     }
-                    tableData.get(currentTable).add(row);
+
+                    public Object[] next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Object[] row = next;
+                        next = null;
+                        return row;
+                    }
+                };
+                break;
+            }
+            case "HashAggregate": {
+                MemoryTracker memory = queryMemory.get();
+                boolean shared = sharesRows(node.children.get(0));
+                if (node.aggregate != null) {
+                    rows = aggregate(node, open(node.children.get(0), analyze), memory, shared).iterator();
+                    break;
                 }
+                Map<Object, long[]> counts = new LinkedHashMap<>();
+                for (Iterator<Object[]> input = open(node.children.get(0), analyze); input.hasNext(); ) {
+                    Object key = input.next()[node.ordinal];
+                    long[] count = counts.get(key);
+                    if (count == null) {
+                        memory.reserve(node, MemoryTracker.GROUP_BYTES + (shared ? 0 : MemoryTracker.valueBytes(key)));
+                        counts.put(key, count = new long[1]);
+                    }
+                    count[0]++;
+                }
+                List<Object[]> groups = new ArrayList<>(counts.size());
+                counts.forEach((key, count) -> groups.add(new Object[] {key, (double) count[0]}));
+                rows = groups.iterator();
+                break;
+            }
+            case "Aggregate":
+                rows = aggregate(node, open(node.children.get(0), analyze), queryMemory.get(), sharesRows(node.children.get(0))).iterator();
+                break;
+            case "ViewScan":
+                rows = views.get(node.tableName).rows().iterator();
+                break;
+            case "Statistics":
+                rows = Collections.singletonList(new Object[] {(double) sketch(node.tableName, node.aggregateOrdinal).estimate()}).iterator();
+                break;
+            case "Sort": {
+                List<Object[]> sorted = new ArrayList<>();
+                MemoryTracker memory = queryMemory.get();
+                boolean shared = sharesRows(node.children.get(0));
+                for (Iterator<Object[]> input = open(node.children.get(0), analyze); input.hasNext(); ) {
+                    Object[] row = input.next();
+                    memory.reserve(node, MemoryTracker.rowBytes(row, shared));
+                    sorted.add(row);
+                }
+                sorted.sort((a, b) -> compareValues(a[node.ordinal], b[node.ordinal]));
+                rows = sorted.iterator();
+                break;
+            }
+            default:
+                throw new RuntimeException("Unknown plan operator '" + node.operator + "'.");
+        }
+        if (!analyze) return rows;
+        node.timeNanos += System.nanoTime() - start;
+        node.allocatedBytes += PlanNode.allocatedBytes() - allocated;
+        return new PlanNode.ProfiledIterator(node, rows);
+    }
+
+    // COUNT(DISTINCT) keeps every distinct value of each group in a set; APPROX_COUNT_DISTINCT
+    // only a HyperLogLog sketch, at most 16 KB however many values there are. Without GROUP BY
+    // (Aggregate) all rows are one group, which has a row even when there are no rows.
+    private static List<Object[]> aggregate(PlanNode node, Iterator<Object[]> input, MemoryTracker memory, boolean shared) {
+        boolean grouped = node.ordinal >= 0;
+        boolean approximate = "APPROX_COUNT_DISTINCT".equals(node.aggregate);
+        Map<Object, Object> groups = new LinkedHashMap<>();
+        if (!grouped) groups.put(null, approximate ? new HyperLogLog() : new HashSet<>());
+        while (input.hasNext()) {
+            Object[] row = input.next();
+            Object key = grouped ? row[node.ordinal] : null;
+            Object state = groups.get(key);
+            if (state == null) {
+                state = approximate ? new HyperLogLog() : new HashSet<>();
+                memory.reserve(node, MemoryTracker.GROUP_BYTES + (shared ? 0 : MemoryTracker.valueBytes(key)));
+                groups.put(key, state);
+            }
+            Object value = row[node.aggregateOrdinal];
+            if (approximate) {
+                HyperLogLog sketch = (HyperLogLog) state;
+                int before = sketch.memoryBytes();
+                sketch.add(value);
+                if (sketch.memoryBytes() != before) memory.reserve(node, sketch.memoryBytes() - before);
+            } else if (value != null) {
+                @SuppressWarnings("unchecked")
+                Set<Object> values = (Set<Object>) state;
+                if (values.add(value)) memory.reserve(node, MemoryTracker.SET_ENTRY_BYTES + (shared ? 0 : MemoryTracker.valueBytes(value)));
+            }
+        }
+        List<Object[]> result = new ArrayList<>(groups.size());
+        groups.forEach((key, state) -> {
+            double count = approximate ? ((HyperLogLog) state).estimate() : ((Set<?>) state).size();
+            result.add(grouped ? new Object[] {key, count} : new Object[] {count});
+        });
+        return result;
+    }
+
+    // Partitions are read on the common pool, up to `window` ahead of the consumer, and their rows
+    // returned in partition order. A partition's rows are buffered until the consumer gets to them.
+    private Iterator<Object[]> openAppend(PlanNode node, boolean analyze) {
+        if (node.children.size() == 1) return open(node.children.get(0), analyze);
+        // At least one partition is read ahead while the consumer works through the current one.
+        int window = Math.max(2, ForkJoinPool.getCommonPoolParallelism());
+        Deque<CompletableFuture<List<Object[]>>> reading = new ArrayDeque<>();
+        ScanCounts counts = scanCounts.get();
+        MemoryTracker memory = queryMemory.get();
+        boolean shared = sharesRows(node);
+        return new Iterator<Object[]>() {
+            private int started;
+            private Iterator<Object[]> current = Collections.emptyIterator();
+            // Memory held by the partition being returned, given back once it has been.
+            private long held;
+
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    memory.release(node, held);
+                    held = 0;
+                    while (started < node.children.size() && reading.size() < window) {
+                        PlanNode partition = node.children.get(started++);
+                        reading.add(CompletableFuture.supplyAsync(() -> {
+                            ScanCounts previous = scanCounts.get();
+                            scanCounts.set(counts);
+                            try {
+                                List<Object[]> rows = new ArrayList<>();
+                                open(partition, analyze).forEachRemaining(rows::add);
+                                return rows;
+                            } finally {
+                                scanCounts.set(previous);
+                            }
+                        }));
+                    }
+                    if (reading.isEmpty()) return false;
+                    try {
+                        List<Object[]> rows = reading.poll().join();
+                        for (Object[] row : rows) held += MemoryTracker.rowBytes(row, shared);
+                        memory.reserve(node, held);
+                        current = rows.iterator();
+                    } catch (CompletionException e) {
+                        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                        throw e;
+                    }
+                }
+                return true;
+            }
+
+            public Object[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    static int compareValues(Object a, Object b) {
+        if (a == null || b == null) return a == null ? (b == null ? 0 : 1) : -1;
+        if (a instanceof Double && b instanceof Double) return Double.compare((Double) a, (Double) b);
+        return a.toString().compareTo(b.toString());
+    }
+
+    static Pattern likeToRegex(String likePattern) {
+        StringBuilder regex = new StringBuilder();
+        String[] parts = likePattern.split("%", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) regex.append(".*");
+            if (!parts[i].isEmpty()) regex.append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    int delete(ASTNode statement) {
+        schema(statement.tableName);
+        List<Condition> terms = statement.where == null ? new ArrayList<>() : statement.where.conjuncts();
+        int deleted = 0;
+        for (String tableName : tablesFor(statement.tableName, terms)) deleted += deleteFrom(tableName, terms);
+        status("Deleted " + deleted + " row(s) from '" + statement.tableName + "'.");
+        return deleted;
+    }
+
+    // Matching rows are only marked in the table's tombstones; compact() reclaims them later.
+    private int deleteFrom(String tableName, List<Condition> terms) {
+        List<Object[]> rows = tableData.get(tableName);
+        BitSet deleted = tombstones(tableName);
+        int before = deleted.cardinality();
+        List<MaterializedView> dependent = viewsOn(tableName);
+        if (terms.isEmpty()) {
+            scanCounts.get().rows.add(rows.size());
+            for (int i = deleted.nextClearBit(0); !dependent.isEmpty() && i < rows.size(); i = deleted.nextClearBit(i + 1)) {
+                for (MaterializedView view : dependent) view.apply(rows.get(i), -1);
+            }
+            deleted.set(0, rows.size());
+        } else {
+            PlanNode plan = planTable(tableName, tableSchemas.get(tableName), terms, 0);
+            PlanNode scan = plan.children.isEmpty() ? plan : plan.children.get(0);
+            for (PrimitiveIterator.OfInt positions = positions(scan); positions.hasNext(); ) {
+                int i = positions.nextInt();
+                if (passes(plan, rows, i)) {
+                    deleted.set(i);
+                    if (!dependent.isEmpty()) {
+                        Object[] row = rows.get(i);
+                        for (MaterializedView view : dependent) view.apply(row, -1);
+                    }
+                }
+            }
+        }
+        compactLater(tableName);
+        return deleted.cardinality() - before;
+    }
+
+    // Whether the row at `position` passes the Filter of a planTable plan, if it has one. Off-heap
+    // rows are tested before they are decoded.
+    private static boolean passes(PlanNode plan, List<Object[]> rows, int position) {
+        if (plan.encoded != null) return ((OffHeapRowList) rows).test(position, plan.encoded);
+        return plan.filter == null || plan.filter.test(rows.get(position));
+    }
+
+    // Queues the table for compaction once COMPACT_RATIO of its rows are deleted.
+    private void compactLater(String tableName) {
+        int deleted = tombstones(tableName).cardinality();
+        if (deleted > 0 && deleted >= COMPACT_RATIO * tableData.get(tableName).size()) pendingCompactions.add(tableName);
+    }
+
+    private BitSet tombstones(String tableName) {
+        return tombstones.computeIfAbsent(tableName, k -> new BitSet());
+    }
+
+    // Positions of the live rows in the blocks `blocks` does not rule out (all blocks when null),
+    // in order. Rows of skipped blocks are never read. Scanned rows and skipped blocks are counted
+    // for the statement metrics, and skipped blocks also on the plan node when there is one.
+    // Blocks a SYSTEM sample of the node leaves out are passed over without being counted.
+    private PrimitiveIterator.OfInt scanPositions(String tableName, IntPredicate blocks, PlanNode node) {
+        List<Object[]> rows = tableData.get(tableName);
+        BitSet deleted = tombstones(tableName);
+        ScanCounts counts = scanCounts.get();
+        TableSample sample = node != null && node.sample != null && node.sample.system ? node.sample : null;
+        return new PrimitiveIterator.OfInt() {
+            private int position;
+            private int blockEnd;
+
+            public boolean hasNext() {
+                while (true) {
+                    if (position < blockEnd) {
+                        position = deleted.nextClearBit(position);
+                        if (position < blockEnd) return true;
+                    }
+                    if (blockEnd >= rows.size()) return false;
+                    position = blockEnd;
+                    blockEnd = Math.min(rows.size(), position + ZoneMap.BLOCK_ROWS);
+                    if (blocks != null && !blocks.test(position / ZoneMap.BLOCK_ROWS)) {
+                        counts.blocks.increment();
+                        if (node != null) node.blocksSkipped++;
+                        position = blockEnd;
+                    } else if (sample != null && !sample.keepsBlock(position / ZoneMap.BLOCK_ROWS)) {
+                        position = blockEnd;
+                    } else {
+                        counts.rows.add(blockEnd - position);
+                    }
+                }
+            }
+
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return position++;
+            }
+        };
+    }
+
+    // A Filter over an off-heap scan: rows are tested encoded and only the matching ones decoded.
+    // The scan is not opened as an operator of its own, but still reports the rows it read.
+    private Iterator<Object[]> encodedRows(PlanNode filter, PlanNode scan, boolean analyze) {
+        OffHeapRowList rows = (OffHeapRowList) tableData.get(scan.tableName);
+        PrimitiveIterator.OfInt positions = positions(scan);
+        return new Iterator<Object[]>() {
+            private int next = -1;
+
+            public boolean hasNext() {
+                while (next < 0) {
+                    long start = analyze ? System.nanoTime() : 0;
+                    if (!positions.hasNext()) return false;
+                    int position = positions.nextInt();
+                    if (analyze) {
+                        scan.timeNanos += System.nanoTime() - start;
+                        scan.rowsOut++;
+                    }
+                    if (rows.test(position, filter.encoded)) next = position;
+                }
+                return true;
+            }
+
+            public Object[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Object[] row = rows.get(next);
+                next = -1;
+                return row;
+            }
+        };
+    }
+
+    private Iterator<Object[]> rowsAt(String tableName, PrimitiveIterator.OfInt positions) {
+        List<Object[]> rows = tableData.get(tableName);
+        return new Iterator<Object[]>() {
+            public boolean hasNext() {
+                return positions.hasNext();
+            }
+
+            public Object[] next() {
+                return rows.get(positions.nextInt());
+            }
+        };
+    }
+
+    // Compacts at most one table that crossed COMPACT_RATIO; called between statements so a
+    // DELETE returns as soon as its rows are marked and compaction work is spread out.
+    void compactPending() {
+        String tableName;
+        synchronized (pendingCompactions) {
+            Iterator<String> pending = pendingCompactions.iterator();
+            if (!pending.hasNext()) return;
+            tableName = pending.next();
+            pending.remove();
+        }
+        compact(tableName);
+    }
+
+    // --parallel: compacts the pending tables among `tableNames` (and their partitions), which the
+    // calling statement has to itself while it runs.
+    void compactPending(Set<String> tableNames) {
+        List<String> due = new ArrayList<>();
+        synchronized (pendingCompactions) {
+            for (Iterator<String> pending = pendingCompactions.iterator(); pending.hasNext(); ) {
+                String tableName = pending.next();
+                if (tableNames.contains(Partitioning.parentOf(tableName))) {
+                    due.add(tableName);
+                    pending.remove();
+                }
+            }
+        }
+        for (String tableName : due) compact(tableName);
+    }
+
+    // Slides live rows down over the deleted ones in one pass and truncates the list. A running
+    // checkpoint is unaffected: it writes its own copy of the row list.
+    void compact(String tableName) {
+        BitSet deleted = tombstones.remove(tableName);
+        if (deleted == null || deleted.isEmpty()) return;
+        removeDeleted(tableData.get(tableName), deleted);
+        // Positions after the first deleted row all moved.
+        rebuildIndexes(tableName);
+        zoneMaps.put(tableName, ZoneMap.build(tableData.get(tableName), tableSchemas.get(tableName).size()));
+    }
+
+    private static void removeDeleted(List<Object[]> rows, BitSet deleted) {
+        if (rows instanceof OffHeapRowList) {
+            ((OffHeapRowList) rows).removeRows(deleted);
+            return;
+        }
+        int live = deleted.nextSetBit(0);
+        if (live < 0) return;
+        for (int i = deleted.nextClearBit(live); i < rows.size(); i = deleted.nextClearBit(i + 1)) rows.set(live++, rows.get(i));
+        rows.subList(live, rows.size()).clear();
+    }
+
+    // Setting the partition key moves rows whose partition changes: they are deleted from their
+    // partition and added to the key's one.
+    int update(ASTNode statement) {
+        schema(statement.tableName);
+        List<Condition> terms = statement.where == null ? new ArrayList<>() : statement.where.conjuncts();
+        Partitioning partitioning = partitions.get(statement.tableName);
+        String target = null;
+        if (partitioning != null && partitioning.ordinal == statement.setOrdinal) target = Partitioning.tableName(statement.tableName, partitioning.partitionOf(statement.setValue));
+        List<Object[]> moved = new ArrayList<>();
+        int updated = 0;
+        for (String tableName : tablesFor(statement.tableName, terms)) updated += updateIn(tableName, statement, terms, target, moved);
+        if (!moved.isEmpty()) addRows(target, moved);
+        status("Updated " + updated + " row(s) in '" + statement.tableName + "'.");
+        return updated;
+    }
+
+    private int updateIn(String tableName, ASTNode statement, List<Condition> terms, String target, List<Object[]> moved) {
+        TableSchema schema = tableSchemas.get(tableName);
+        List<Object[]> rows = tableData.get(tableName);
+        ZoneMap zones = zoneMaps.get(tableName);
+        int ordinal = statement.setOrdinal;
+        Object value = statement.setValue;
+        BitmapIndex setIndex = schema.get(ordinal).index;
+        // While a checkpoint is writing, its frozen copy shares these rows: replace them instead of changing them.
+        boolean shared = checkpoint != null && !checkpoint.isDone();
+        // Off-heap rows are decoded copies and have to be written back.
+        boolean writeBack = shared || rows instanceof OffHeapRowList;
+        boolean move = target != null && !target.equals(tableName);
+        BitSet deleted = move ? tombstones(tableName) : null;
+        PlanNode plan = planTable(tableName, schema, terms, 0);
+        PlanNode scan = plan.children.isEmpty() ? plan : plan.children.get(0);
+        // Copied first: updating an indexed column changes the bitmaps being read.
+        if (scan.positions != null) scan.positions = RoaringBitmap.or(scan.positions, new RoaringBitmap());
+        List<MaterializedView> dependent = viewsOn(tableName);
+        int updated = 0;
+        for (PrimitiveIterator.OfInt positions = positions(scan); positions.hasNext(); ) {
+            int i = positions.nextInt();
+            if (passes(plan, rows, i)) {
+                Object[] row = rows.get(i);
+                // The moved copy is added to the views with the target partition's rows.
+                for (MaterializedView view : dependent) view.apply(row, -1);
+                if (!move && !dependent.isEmpty()) {
+                    Object[] changed = row.clone();
+                    changed[ordinal] = value;
+                    for (MaterializedView view : dependent) view.apply(changed, 1);
+                }
+                if (move) {
+                    deleted.set(i);
+                    row = row.clone();
+                    row[ordinal] = statement.setValue;
+                    moved.add(row);
+                } else {
+                    updateRow(rows, i, row, ordinal, value, setIndex, zones, shared, writeBack);
+                }
+                updated++;
+            }
+        }
+        if (move) compactLater(tableName);
+        return updated;
+    }
+
+    private static void updateRow(List<Object[]> rows, int position, Object[] row, int ordinal, Object value, BitmapIndex index, ZoneMap zones, boolean shared, boolean writeBack) {
+        if (index != null) {
+            index.remove(position, row[ordinal]);
+            index.add(position, value);
+        }
+        zones.update(position, ordinal, row[ordinal], value);
+        if (shared) row = row.clone();
+        row[ordinal] = value;
+        if (writeBack) rows.set(position, row);
+    }
+
+    void saveToFile(String filename) throws IOException {
+        awaitCheckpoint();
+        for (String tableName : new ArrayList<>(tombstones.keySet())) compact(tableName);
+        pendingCompactions.clear();
+        writeSnapshot(filename, tableSchemas, tableData, partitions, views.values());
+        status("Database saved to " + filename);
+    }
+
+    // Background checkpoint: freezes the tables and writes them on the checkpoint thread while
+    // statements keep running. Freezing copies each table's row list (references only); rows are
+    // not copied because update replaces rows instead of changing them while a checkpoint is
+    // running, and delete and insert only change the live lists. Returns false if one is running.
+    boolean checkpoint(String filename) {
+        if (checkpoint != null && !checkpoint.isDone()) {
+            status("Checkpoint already in progress, skipped.");
+            return false;
+        }
+        Map<String, TableSchema> schemas = new HashMap<>();
+        Map<String, List<Object[]>> data = new HashMap<>();
+        for (String tableName : tableSchemas.keySet()) {
+            schemas.put(tableName, tableSchemas.get(tableName).copy());
+            List<Object[]> rows = tableData.get(tableName);
+            List<Object[]> frozen = rows instanceof OffHeapRowList ? ((OffHeapRowList) rows).snapshot() : new ArrayList<>(rows);
+            removeDeleted(frozen, tombstones(tableName));
+            data.put(tableName, frozen);
+        }
+        Map<String, Partitioning> partitioned = new HashMap<>();
+        partitions.forEach((tableName, partitioning) -> partitioned.put(tableName, partitioning.copy()));
+        List<MaterializedView> frozenViews = new ArrayList<>();
+        for (MaterializedView view : views.values()) frozenViews.add(view.copy());
+        if (checkpointWriter == null) {
+            checkpointWriter = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        checkpoint = checkpointWriter.submit(() -> {
+            try {
+                writeSnapshot(filename, schemas, data, partitioned, frozenViews);
+            } catch (IOException e) {
+                System.err.println("Checkpoint to " + filename + " failed: " + e.getMessage());
+            }
+        });
+        status("Checkpoint of " + totalRows(data) + " row(s) to " + filename + " started.");
+        return true;
+    }
+
+    // Only one snapshot writer at a time: they share the temporary file.
+    private void awaitCheckpoint() {
+        if (checkpoint == null) return;
+        try {
+            checkpoint.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Checkpoint failed: " + e.getCause().getMessage());
+        }
+    }
+
+    // Written to a temporary file and renamed over the old snapshot, so a crash mid-write leaves
+    // the previous snapshot intact.
+    private static void writeSnapshot(String filename, Map<String, TableSchema> schemas, Map<String, List<Object[]>> data, Map<String, Partitioning> partitions, Collection<MaterializedView> views) throws IOException {
+        SaveEvent event = new SaveEvent();
+        event.begin();
+        File temp = new File(filename + ".tmp");
+        if (TEXT_SNAPSHOTS) {
+            saveText(temp, schemas, data, partitions, views);
+        } else {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                ColumnarSnapshot.writeHeader(out, schemas.size());
+                for (String tableName : schemas.keySet()) ColumnarSnapshot.writeTable(out, tableName, schemas.get(tableName), data.get(tableName), partitions.get(tableName));
+                ColumnarSnapshot.writeVarint(out, views.size());
+                for (MaterializedView view : views) {
+                    ColumnarSnapshot.writeString(out, view.name);
+                    ColumnarSnapshot.writeString(out, view.definition);
+                    view.writeState(out);
+                }
+            }
+        }
+        Files.move(temp.toPath(), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.tables = schemas.size();
+            event.rows = totalRows(data);
+            event.commit();
+        }
+    }
+
+    private static void saveText(File file, Map<String, TableSchema> tableSchemas, Map<String, List<Object[]>> tableData, Map<String, Partitioning> partitions, Collection<MaterializedView> views) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (String tableName : tableSchemas.keySet()) {
+                writer.write("TABLE " + tableName + "\n");
+                TableSchema schema = tableSchemas.get(tableName);
+                writer.write("SCHEMA ");
+                for (Column col : schema.columns()) {
+                    BitmapIndex index = col.index;
+                    writer.write(col.name + ":" + col.type + (index == null ? "" : ":" + index.name) + ",");
+                }
+                writer.newLine();
+                Partitioning partitioning = partitions.get(tableName);
+                if (partitioning != null) {
+                    // PARTITION HASH col P0,P1, or PARTITION RANGE col name=bound,...,name, (no bound = MAXVALUE)
+                    writer.write("PARTITION " + partitioning.kind + " " + partitioning.column + " ");
+                    for (int i = 0; i < partitioning.names.size(); i++) {
+                        Object bound = "RANGE".equals(partitioning.kind) ? partitioning.bounds.get(i) : null;
+                        writer.write(partitioning.names.get(i) + (bound == null ? "" : "=" + bound) + ",");
+                    }
+                    writer.newLine();
+                }
+                List<Object[]> rows = tableData.get(tableName);
+                for (Object[] row : rows) {
+                    writer.write("ROW ");
+                    for (Column col : schema.columns()) {
+                        // NULLs are left out; a missing column reads back as NULL.
+                        if (row[col.ordinal] != null) writer.write(col.name + "=" + row[col.ordinal] + ",");
+                    }
+                    writer.newLine();
+                }
+                writer.write("END\n");
+            }
+            // Only the definition: the view is filled from its table again on load.
+            for (MaterializedView view : views) writer.write("VIEW " + view.name + " " + view.definition + "\n");
+        }
+    }
+
+    void loadFromFile(String filename) throws IOException {
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        tableSchemas.clear();
+        tableData.clear();
+        tombstones.clear();
+        pendingCompactions.clear();
+        zoneMaps.clear();
+        partitions.clear();
+        views.clear();
+        Map<String, String> textViews = new LinkedHashMap<>();
+        int version;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+            version = ColumnarSnapshot.readHeader(in);
+            if (version > 0) {
+                int tables = (int) ColumnarSnapshot.readVarint(in);
+                for (int i = 0; i < tables; i++) {
+                    String tableName = ColumnarSnapshot.readTable(in, version, tableSchemas, tableData, zoneMaps, partitions);
+                    if (!"heap".equals(STORAGE)) {
+                        List<Object[]> rows = newRowList();
+                        rows.addAll(tableData.get(tableName));
+                        tableData.put(tableName, rows);
+                    }
+                }
+                int viewCount = version >= 6 ? (int) ColumnarSnapshot.readVarint(in) : 0;
+                for (int i = 0; i < viewCount; i++) {
+                    String viewName = ColumnarSnapshot.readString(in);
+                    String definition = ColumnarSnapshot.readString(in);
+                    MaterializedView view = defineView(viewName, SQLCompiler.parseQuery(definition), definition);
+                    view.readState(in);
+                    views.put(viewName, view);
+                }
+            }
+        }
+        if (version == 0) loadText(filename, textViews);
+        for (String tableName : tableSchemas.keySet()) {
+            rebuildIndexes(tableName);
+            // Text and version 1-2 snapshots carry no zone maps.
+            if (!zoneMaps.containsKey(tableName)) zoneMaps.put(tableName, ZoneMap.build(tableData.get(tableName), tableSchemas.get(tableName).size()));
+        }
+        textViews.forEach((viewName, definition) -> {
+            MaterializedView view = defineView(viewName, SQLCompiler.parseQuery(definition), definition);
+            fill(view);
+            views.put(viewName, view);
+        });
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.tables = tableSchemas.size();
+            event.rows = totalRows(tableData);
+            event.commit();
+        }
+        status("Database loaded from " + filename);
+    }
+
+    private void loadText(String filename, Map<String, String> views) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            String currentTable = null;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("VIEW ")) {
+                    String[] parts = line.split(" ", 3);
+                    views.put(parts[1], parts[2]);
+                } else if (line.startsWith("TABLE ")) {
+                    currentTable = line.substring(6);
+                    tableSchemas.put(currentTable, new TableSchema());
+                    tableData.put(currentTable, newRowList());
+                } else if (line.startsWith("SCHEMA ") && currentTable != null) {
+                    String[] parts = line.substring(7).split(",");
+                    for (String part : parts) {
+                        if (!part.isEmpty()) {
+                            String[] col = part.split(":");
+                            Column column = tableSchemas.get(currentTable).add(col[0], col[1]);
+                            if (col.length > 2) column.index = new BitmapIndex(col[2], column.ordinal);
+                        }
+                    }
+                } else if (line.startsWith("PARTITION ") && currentTable != null) {
+                    String[] parts = line.split(" ", 4);
+                    Partitioning partitioning = "HASH".equals(parts[1]) ? Partitioning.hash(parts[2], parts[3].split(",").length) : Partitioning.range(parts[2]);
+                    if ("RANGE".equals(parts[1])) {
+                        for (String part : parts[3].split(",")) {
+                            String[] kv = part.split("=");
+                            Object bound = null;
+                            if (kv.length > 1) bound = kv[1].matches("-?\\d+\\.?\\d*") ? (Object) Double.parseDouble(kv[1]) : kv[1];
+                            partitioning.addRange(kv[0], bound);
+                        }
+                    }
+                    partitioning.ordinal = tableSchemas.get(currentTable).ordinal(partitioning.column);
+                    partitions.put(currentTable, partitioning);
+                } else if (line.startsWith("ROW ") && currentTable != null) {
+                    TableSchema schema = tableSchemas.get(currentTable);
+                    Object[] row = new Object[schema.size()];
+                    String[] parts = line.substring(4).split(",");
+                    for (String part : parts) {
+                        if (!part.isEmpty()) {
+                            String[] kv = part.split("=");
+                            String value = kv[1];
+                            if (value.matches("-?\\d+\\.?\\d*")) row[schema.ordinal(kv[0])] = Double.parseDouble(value);
+                            else row[schema.ordinal(kv[0])] = value;
+                        }
+                    }
+                    tableData.get(currentTable).add(row);
+                }
+            }
+        }
+    }
+
+    // COPY FROM: rows are parsed in parallel by CsvLoader and only appended once the whole file
+    // converted, so a bad value leaves the table unchanged.
+    int copyFrom(String tableName, String filename) throws IOException {
+        TableSchema schema = schema(tableName);
+        List<Object[]> rows;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            rows = new CsvLoader(channel, schema).load();
+        }
+        route(tableName, rows);
+        status("Copied " + rows.size() + " row(s) from " + filename + " into '" + tableName + "'.");
+        return rows.size();
+    }
+
+    // COPY TO: rows are written straight from the table in schema column order, in the same CSV
+    // dialect COPY FROM reads.
+    void copyTo(String tableName, String filename) throws IOException {
+        TableSchema schema = schema(tableName);
+        long count = 0;
+        try (OutputStream out = new FileOutputStream(filename)) {
+            ResultSink csv = new CsvResultSink(out);
+            csv.begin(tableName, schema.names());
+            for (String table : tablesFor(tableName, Collections.emptyList())) {
+                for (Iterator<Object[]> rows = rowsAt(table, scanPositions(table, null, null)); rows.hasNext(); count++) csv.row(rows.next());
+            }
+            csv.end();
+        }
+        status("Copied " + count + " row(s) from '" + tableName + "' to " + filename + ".");
+    }
+
+    private static long totalRows(Map<String, List<Object[]>> tableData) {
+        long rows = 0;
+        for (List<Object[]> table : tableData.values()) rows += table.size();
+        return rows;
+    }
+}
+
+class PlanNode {
+    String operator;
+    String detail;
+    List<PlanNode> children = new ArrayList<>();
+    String tableName;
+    // Join: outer ordinal, with joinOrdinal in the inner rows. HashAggregate and Sort: the key ordinal.
+    int ordinal = -1;
+    int joinOrdinal = -1;
+    List<String> columns;
+    Predicate<Object[]> filter;
+    // Filter directly over an off-heap table's scan: the same test on the encoded rows.
+    OffHeapRowList.RowTest encoded;
+    String index;
+    // BitmapIndexScan: the row positions to read.
+    RoaringBitmap positions;
+    // SeqScan: zone map blocks that may hold matching rows (null = all), and how many were skipped.
+    IntPredicate blocks;
+    long blocksSkipped;
+    // SeqScan and BitmapIndexScan: TABLESAMPLE, if any.
+    TableSample sample;
+    // Aggregate and HashAggregate: APPROX_COUNT_DISTINCT or COUNT DISTINCT of aggregateOrdinal
+    // (null = COUNT(*)). Statistics: the column whose sketch answers APPROX_COUNT_DISTINCT.
+    String aggregate;
+    int aggregateOrdinal = -1;
+
+    // Filled in by EXPLAIN ANALYZE. Time and allocation are inclusive of children until finish().
+    boolean analyzed;
+    long rowsIn;
+    long rowsOut;
+    long timeNanos;
+    long allocatedBytes;
+    // Estimated memory the operator holds (see MemoryTracker), and the most it held; counted on
+    // every run, not only for EXPLAIN ANALYZE.
+    long memoryBytes;
+    long peakMemoryBytes;
+
+    private static final java.lang.management.ThreadMXBean THREADS = java.lang.management.ManagementFactory.getThreadMXBean();
+
+    PlanNode(String operator, String detail, PlanNode... children) {
+        this.operator = operator;
+        this.detail = detail;
+        this.children.addAll(Arrays.asList(children));
+        if (children.length > 0) this.columns = children[0].columns;
+    }
+
+    static PlanNode scan(String tableName, Collection<String> columns) {
+        PlanNode node = new PlanNode("SeqScan", tableName);
+        node.tableName = tableName;
+        node.columns = new ArrayList<>(columns);
+        node.index = "none";
+        return node;
+    }
+
+    static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+        return 0;
+    }
+
+    // Converts inclusive measurements into per-operator figures.
+    void finish() {
+        analyzed = true;
+        rowsIn = 0;
+        for (PlanNode child : children) {
+            child.finish();
+            rowsIn += child.rowsOut;
+            timeNanos -= child.timeNanos + child.childTimeNanos();
+            allocatedBytes -= child.allocatedBytes + child.childAllocatedBytes();
+        }
+        if ("SeqScan".equals(operator) || "BitmapIndexScan".equals(operator) || "ViewScan".equals(operator)) rowsIn = rowsOut;
+        if ("Append".equals(operator)) {
+            // Partitions run on other threads, overlapping each other and the Append's waiting.
+            timeNanos = Math.max(0, timeNanos);
+            allocatedBytes = Math.max(0, allocatedBytes);
+        }
+    }
+
+    private long childTimeNanos() {
+        long total = 0;
+        for (PlanNode child : children) total += child.timeNanos + child.childTimeNanos();
+        return total;
+    }
+
+    private long childAllocatedBytes() {
+        long total = 0;
+        for (PlanNode child : children) total += child.allocatedBytes + child.childAllocatedBytes();
+        return total;
+    }
+
+    String toText() {
+        StringBuilder sb = new StringBuilder();
+        appendText(sb, 0);
+        return sb.toString();
+    }
+
+    private void appendText(StringBuilder sb, int depth) {
+        for (int i = 0; i < depth; i++) sb.append("  ");
+        if (depth > 0) sb.append("-> ");
+        sb.append(operator).append(" (").append(detail).append(")");
+        if (index != null) sb.append(" index=").append(index);
+        if (sample != null) sb.append(" sample=").append(sample);
+        if (analyzed) {
+            String skipped = blocks != null ? ", blocks skipped=" + blocksSkipped : "";
+            String memory = peakMemoryBytes > 0 ? ", memory=" + peakMemoryBytes + " B" : "";
+            sb.append(String.format(" [rows in=%d out=%d%s, time=%.3f ms, alloc=%d B%s]", rowsIn, rowsOut, skipped, timeNanos / 1e6, allocatedBytes, memory));
+        }
+        sb.append("\n");
+        for (PlanNode child : children) child.appendText(sb, depth + 1);
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"operator\":").append(quote(operator)).append(",\"detail\":").append(quote(detail));
+        sb.append(",\"index\":").append(index == null ? "null" : quote(index));
+        if (sample != null) sb.append(",\"sample\":").append(quote(sample.toString()));
+        if (analyzed) {
+            sb.append(",\"rowsIn\":").append(rowsIn).append(",\"rowsOut\":").append(rowsOut);
+            if (blocks != null) sb.append(",\"blocksSkipped\":").append(blocksSkipped);
+            sb.append(",\"timeNanos\":").append(timeNanos).append(",\"allocatedBytes\":").append(allocatedBytes);
+            sb.append(",\"memoryBytes\":").append(peakMemoryBytes);
+        }
+        sb.append(",\"children\":[");
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) sb.append(",");
+            sb.append(children.get(i).toJson());
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : value.toCharArray()) {
+            if (ch == '"' || ch == '\\') sb.append('\\').append(ch);
+            else if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+            else sb.append(ch);
+        }
+        return sb.append('"').toString();
+    }
+
+    static class ProfiledIterator implements Iterator<Object[]> {
+        private final PlanNode node;
+        private final Iterator<Object[]> rows;
+
+        ProfiledIterator(PlanNode node, Iterator<Object[]> rows) {
+            this.node = node;
+            this.rows = rows;
+        }
+
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            long allocated = allocatedBytes();
+            boolean result = rows.hasNext();
+            node.timeNanos += System.nanoTime() - start;
+            node.allocatedBytes += allocatedBytes() - allocated;
+            return result;
+        }
+
+        public Object[] next() {
+            long start = System.nanoTime();
+            long allocated = allocatedBytes();
+            Object[] row = rows.next();
+            node.timeNanos += System.nanoTime() - start;
+            node.allocatedBytes += allocatedBytes() - allocated;
+            node.rowsOut++;
+            return row;
+        }
+    }
+}
+
+// Table rows kept outside the Java heap, in direct buffers or buffers mapped from deleted temporary
+// files. The heap holds only the segment handles and one long per row (segment << 32 | position),
+// so the collector has almost nothing to trace. A list's first segment is MIN_SEGMENT bytes and
+// each one after it half the size of the ones before, up to SEGMENT_SIZE, so small tables and
+// partitions stay small.
+// Rows are encoded as u16 width, u16 count { u16 ordinal, tag, value }, with doubles in 8 bytes
+// and strings as i32 length + utf8; NULLs are left out. get() decodes a short-lived array; set()
+// appends the new version and repoints the row. Written bytes are never changed, which is what lets a
+// checkpoint snapshot share the segments. Superseded versions and removed rows are reclaimed by
+// copying the live rows into new segments (see reclaim()); a snapshot keeps the old ones.
+// Filters can test rows without decoding them: see test() and Condition.encodedTest.
+// (JDK 17's MemorySegment API is still incubating, hence ByteBuffers.)
+class OffHeapRowList extends AbstractList<Object[]> implements RandomAccess {
+    static final int SEGMENT_SIZE = 64 << 20;
+    static final int MIN_SEGMENT = 64 << 10;
+    private static final int DOUBLE = 1;
+    private static final int TEXT = 2;
+
+    // A test of one encoded row, given its segment and position.
+    interface RowTest {
+        boolean test(ByteBuffer segment, int row);
+    }
+
+    private final boolean mapped;
+    // Copy-on-write: a snapshot being written on the checkpoint thread reads the segment list.
+    // reclaim() replaces it, and snapshots keep the list they were taken from.
+    private List<ByteBuffer> segments;
+    private final boolean readOnly;
+    private long[] offsets;
+    private int size;
+    // Rows encoded narrower than this (before an ALTER TABLE ADD) decode with NULLs at the end.
+    private int width;
+    private int writePosition;
+    private long liveBytes;
+    private long garbageBytes;
+    private byte[] scratch = new byte[256];
+
+    OffHeapRowList(boolean mapped) {
+        this.mapped = mapped;
+        this.segments = new CopyOnWriteArrayList<>();
+        this.readOnly = false;
+        this.offsets = new long[16];
+    }
+
+    private OffHeapRowList(OffHeapRowList source) {
+        this.mapped = source.mapped;
+        this.segments = source.segments;
+        this.readOnly = true;
+        this.offsets = Arrays.copyOf(source.offsets, source.size);
+        this.size = source.size;
+        this.width = source.width;
+    }
+
+    // A read-only view of the current rows that later changes to this list do not affect.
+    OffHeapRowList snapshot() {
+        return new OffHeapRowList(this);
+    }
+
+    // Adds NULL columns to every row without rewriting any of them.
+    void widen(int width) {
+        this.width = Math.max(this.width, width);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] get(int index) {
+        Objects.checkIndex(index, size);
+        ByteBuffer segment = segments.get((int) (offsets[index] >>> 32));
+        int position = (int) offsets[index];
+        Object[] row = new Object[Math.max(width, segment.getShort(position) & 0xFFFF)];
+        int count = segment.getShort(position + 2) & 0xFFFF;
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            row[segment.getShort(position) & 0xFFFF] = value(segment, position + 2);
+            position = next(segment, position);
+        }
+        return row;
+    }
+
+    boolean test(int index, RowTest test) {
+        Objects.checkIndex(index, size);
+        return test.test(segments.get((int) (offsets[index] >>> 32)), (int) offsets[index]);
+    }
+
+    // Position of the tag of the row's value for `ordinal`, or -1 if it is NULL.
+    static int field(ByteBuffer segment, int row, int ordinal) {
+        int count = segment.getShort(row + 2) & 0xFFFF;
+        int position = row + 4;
+        for (int i = 0; i < count; i++) {
+            int at = segment.getShort(position) & 0xFFFF;
+            // Values are written in column order.
+            if (at >= ordinal) return at == ordinal ? position + 2 : -1;
+            position = next(segment, position);
+        }
+        return -1;
+    }
+
+    static boolean isNumber(ByteBuffer segment, int field) {
+        return segment.get(field) == DOUBLE;
+    }
+
+    static double number(ByteBuffer segment, int field) {
+        return segment.getDouble(field + 1);
+    }
+
+    static boolean textEquals(ByteBuffer segment, int field, byte[] text) {
+        if (segment.get(field) != TEXT || segment.getInt(field + 1) != text.length) return false;
+        for (int i = 0; i < text.length; i++) if (segment.get(field + 5 + i) != text[i]) return false;
+        return true;
+    }
+
+    static Object value(ByteBuffer segment, int field) {
+        if (segment.get(field) == DOUBLE) return segment.getDouble(field + 1);
+        byte[] bytes = new byte[segment.getInt(field + 1)];
+        segment.get(field + 5, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Position of the value after the one at `position` (its ordinal).
+    private static int next(ByteBuffer segment, int position) {
+        return position + (segment.get(position + 2) == DOUBLE ? 11 : 7 + segment.getInt(position + 3));
+    }
+
+    private static int length(ByteBuffer segment, int row) {
+        int count = segment.getShort(row + 2) & 0xFFFF;
+        int position = row + 4;
+        for (int i = 0; i < count; i++) position = next(segment, position);
+        return position - row;
+    }
+
+    private int length(long offset) {
+        return length(segments.get((int) (offset >>> 32)), (int) offset);
+    }
+
+    @Override
+    public Object[] set(int index, Object[] row) {
+        Object[] previous = get(index);
+        long offset = append(row);
+        int length = length(offsets[index]);
+        garbageBytes += length;
+        liveBytes -= length;
+        offsets[index] = offset;
+        // Amortized: at most half the space is garbage, and each byte is copied about once more.
+        if (garbageBytes > liveBytes) reclaim();
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Object[] row) {
+        Objects.checkIndex(index, size + 1);
+        long offset = append(row);
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, Math.max(16, size + (size >> 1)));
+        System.arraycopy(offsets, index, offsets, index + 1, size - index);
+        offsets[index] = offset;
+        size++;
+        modCount++;
+    }
+
+    // All or nothing: running out of memory part way leaves the list as it was.
+    @Override
+    public boolean addAll(Collection<? extends Object[]> rows) {
+        int oldSize = size;
+        int oldSegments = segments.size();
+        int oldPosition = writePosition;
+        long oldLive = liveBytes;
+        try {
+            for (Object[] row : rows) add(size, row);
+        } catch (RuntimeException e) {
+            // Bytes written after oldPosition are not referenced by anything.
+            size = oldSize;
+            writePosition = oldPosition;
+            liveBytes = oldLive;
+            while (segments.size() > oldSegments) segments.remove(segments.size() - 1);
+            throw e;
+        }
+        return !rows.isEmpty();
+    }
+
+    @Override
+    public Object[] remove(int index) {
+        Object[] previous = get(index);
+        if (!readOnly) {
+            int length = length(offsets[index]);
+            garbageBytes += length;
+            liveBytes -= length;
+        }
+        System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+        size--;
+        modCount++;
+        if (garbageBytes > liveBytes) reclaim();
+        return previous;
+    }
+
+    // Drops the rows at the set positions, then copies the others into new segments. On a snapshot
+    // only the offsets are compacted, since its segments are the live list's.
+    void removeRows(BitSet positions) {
+        int live = 0;
+        for (int i = 0; i < size; i++) {
+            if (!positions.get(i)) {
+                offsets[live++] = offsets[i];
+            } else if (!readOnly) {
+                int length = length(offsets[i]);
+                garbageBytes += length;
+                liveBytes -= length;
+            }
+        }
+        size = live;
+        modCount++;
+        if (garbageBytes > 0) reclaim();
+    }
+
+    // Copies the live rows into new segments sized for them and drops the old ones (a snapshot
+    // still reading them keeps them until it is done). If there isn't memory for the copy the list
+    // is left as it was: it is still correct, only bigger.
+    private void reclaim() {
+        if (readOnly) return;
+        List<ByteBuffer> copies = new CopyOnWriteArrayList<>();
+        long[] moved = new long[Math.max(16, size)];
+        int position = 0;
+        try {
+            for (int i = 0; i < size; i++) {
+                ByteBuffer segment = segments.get((int) (offsets[i] >>> 32));
+                int row = (int) offsets[i];
+                int length = length(segment, row);
+                if (copies.isEmpty() || position + length > copies.get(copies.size() - 1).capacity()) {
+                    copies.add(allocate(segmentSize(copies, length, liveBytes)));
+                    position = 0;
+                }
+                copies.get(copies.size() - 1).put(position, segment, row, length);
+                moved[i] = ((long) (copies.size() - 1) << 32) | position;
+                position += length;
+            }
+        } catch (RuntimeException e) {
+            return;
+        }
+        segments = copies;
+        offsets = moved;
+        writePosition = position;
+        garbageBytes = 0;
+    }
+
+    private long append(Object[] row) {
+        if (readOnly) throw new UnsupportedOperationException("Snapshot rows are read-only.");
+        int length = encode(row);
+        if (length > SEGMENT_SIZE) throw new RuntimeException("Row of " + length + " bytes does not fit a storage segment.");
+        if (segments.isEmpty() || writePosition + length > segments.get(segments.size() - 1).capacity()) {
+            segments.add(allocate(segmentSize(segments, length, 0)));
+            writePosition = 0;
+        }
+        segments.get(segments.size() - 1).put(writePosition, scratch, 0, length);
+        long offset = ((long) (segments.size() - 1) << 32) | writePosition;
+        writePosition += length;
+        liveBytes += length;
+        return offset;
+    }
+
+    // Half of what the list already holds (`expected` for the first), between MIN_SEGMENT and
+    // SEGMENT_SIZE, and never less than the row being written.
+    private static int segmentSize(List<ByteBuffer> segments, int length, long expected) {
+        long held = 0;
+        for (ByteBuffer segment : segments) held += segment.capacity();
+        long size = Math.max(MIN_SEGMENT, segments.isEmpty() ? expected : held / 2);
+        return (int) Math.max(length, Math.min(SEGMENT_SIZE, size));
+    }
+
+    private int encode(Object[] row) {
+        if (row.length > 0xFFFF) throw new RuntimeException("Too many columns for off-heap storage.");
+        ByteBuffer out = ByteBuffer.wrap(scratch);
+        int count = 0;
+        out.putShort(0, (short) row.length);
+        out.position(4);
+        for (int ordinal = 0; ordinal < row.length; ordinal++) {
+            Object value = row[ordinal];
+            if (value == null) continue;
+            byte[] text = value instanceof Double ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+            int needed = 3 + (text == null ? 8 : 4 + text.length);
+            if (out.remaining() < needed) {
+                scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, out.position() + needed));
+                out = ByteBuffer.wrap(scratch).position(out.position());
+            }
+            out.putShort((short) ordinal);
+            if (text == null) {
+                out.put((byte) DOUBLE);
+                out.putDouble((Double) value);
+            } else {
+                out.put((byte) TEXT);
+                out.putInt(text.length);
+                out.put(text);
+            }
+            count++;
+        }
+        out.putShort(2, (short) count);
+        return out.position();
+    }
+
+    // Running out of direct memory or mapping space fails the statement, not the JVM: the
+    // OutOfMemoryError of allocateDirect only means the -XX:MaxDirectMemorySize reservation failed.
+    private ByteBuffer allocate(int capacity) {
+        if (!mapped) {
+            try {
+                return ByteBuffer.allocateDirect(capacity);
+            } catch (OutOfMemoryError e) {
+                throw new RuntimeException("Out of off-heap memory: could not allocate " + capacity + " bytes for table rows (see -XX:MaxDirectMemorySize).");
+            }
+        }
+        try {
+            File file = File.createTempFile("sqlcompiler-", ".seg", new File(System.getProperty("sqlcompiler.storageDir", System.getProperty("java.io.tmpdir"))));
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                // The mapping outlives the file name; the space is released when the buffer is collected.
+                file.delete();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Out of mapped storage: could not map " + capacity + " bytes for table rows (" + e.getMessage() + ").");
+        }
+    }
+}
+
+// Distinct values of a TEXT column while a dictionary-encoded snapshot column loads, so a value
+// repeated across its chunks is kept once. Only held for the load: rows added later keep their own
+// strings, and comparisons use equals() either way.
+class ColumnDictionary {
+    private final Map<String, String> values = new HashMap<>();
+
+    String intern(String value) {
+        String code = values.putIfAbsent(value, value);
+        return code == null ? value : code;
+    }
+}
+
+// Compressed set of row positions, organised like a Roaring bitmap: the high 16 bits of a
+// position select a container, which keeps the low 16 bits as a sorted char array while it holds
+// at most ARRAY_MAX of them and as a 65536-bit bitmap beyond that. Set operations return new
+// bitmaps and work container by container, so sparse and dense ranges both stay cheap.
+class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    private static final class Container {
+        char[] array;
+        long[] bitmap;
+        int cardinality;
+
+        Container() {
+            array = new char[4];
+        }
+
+        boolean add(char value) {
+            if (bitmap != null) {
+                long bit = 1L << value;
+                if ((bitmap[value >>> 6] & bit) != 0) return false;
+                bitmap[value >>> 6] |= bit;
+                cardinality++;
+                return true;
+            }
+            // Positions mostly arrive in order, so check for an append first.
+            int i = cardinality > 0 && array[cardinality - 1] < value ? -cardinality - 1 : Arrays.binarySearch(array, 0, cardinality, value);
+            if (i >= 0) return false;
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                return add(value);
+            }
+            i = -i - 1;
+            if (cardinality == array.length) array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            System.arraycopy(array, i, array, i + 1, cardinality - i);
+            array[i] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (bitmap != null) {
+                long bit = 1L << value;
+                if ((bitmap[value >>> 6] & bit) == 0) return false;
+                bitmap[value >>> 6] &= ~bit;
+                if (--cardinality <= ARRAY_MAX) toArray();
+                return true;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, value);
+            if (i < 0) return false;
+            System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean contains(char value) {
+            if (bitmap != null) return (bitmap[value >>> 6] & (1L << value)) != 0;
+            return Arrays.binarySearch(array, 0, cardinality, value) >= 0;
+        }
+
+        long[] words() {
+            if (bitmap != null) return bitmap;
+            long[] words = new long[1024];
+            for (int i = 0; i < cardinality; i++) words[array[i] >>> 6] |= 1L << array[i];
+            return words;
+        }
+
+        private void toBitmap() {
+            bitmap = words();
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < bitmap.length; w++) {
+                for (long word = bitmap[w]; word != 0; word &= word - 1) values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+            }
+            array = values;
+            bitmap = null;
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.array = array == null ? null : array.clone();
+            copy.bitmap = bitmap == null ? null : bitmap.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        static Container ofWords(long[] words) {
+            Container container = new Container();
+            container.array = null;
+            container.bitmap = words;
+            for (long word : words) container.cardinality += Long.bitCount(word);
+            if (container.cardinality <= ARRAY_MAX) container.toArray();
+            return container;
+        }
+
+        // Array results of and/andNot keep the values of `a` that pass the test, in order.
+        static Container filter(Container a, Container b, boolean keepContained) {
+            Container result = new Container();
+            result.array = new char[Math.max(4, a.cardinality)];
+            for (int i = 0; i < a.cardinality; i++) {
+                if (b.contains(a.array[i]) == keepContained) result.array[result.cardinality++] = a.array[i];
+            }
+            return result;
+        }
+
+        static Container and(Container a, Container b) {
+            if (a.bitmap == null) return filter(a, b, true);
+            if (b.bitmap == null) return filter(b, a, true);
+            long[] words = new long[1024];
+            for (int w = 0; w < words.length; w++) words[w] = a.bitmap[w] & b.bitmap[w];
+            return ofWords(words);
+        }
+
+        static Container andNot(Container a, Container b) {
+            if (a.bitmap == null) return filter(a, b, false);
+            long[] other = b.words();
+            long[] words = new long[1024];
+            for (int w = 0; w < words.length; w++) words[w] = a.bitmap[w] & ~other[w];
+            return ofWords(words);
+        }
+
+        static Container or(Container a, Container b) {
+            long[] words = a.words().clone();
+            long[] other = b.words();
+            for (int w = 0; w < words.length; w++) words[w] |= other[w];
+            return ofWords(words);
+        }
+    }
+
+    void add(int position) {
+        container((char) (position >>> 16), true).add((char) position);
+    }
+
+    void remove(int position) {
+        int i = find((char) (position >>> 16));
+        if (i < 0 || !containers[i].remove((char) position)) return;
+        if (containers[i].cardinality == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+    }
+
+    boolean contains(int position) {
+        int i = find((char) (position >>> 16));
+        return i >= 0 && containers[i].contains((char) position);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) cardinality += containers[i].cardinality;
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (int i = 0, j = 0; i < a.size && j < b.size; ) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else result.append(a.keys[i], Container.and(a.containers[i++], b.containers[j++]));
+        }
+        return result;
+    }
+
+    static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) result.append(a.keys[i], a.containers[i++].copy());
+            else if (i == a.size || a.keys[i] > b.keys[j]) result.append(b.keys[j], b.containers[j++].copy());
+            else result.append(a.keys[i], Container.or(a.containers[i++], b.containers[j++]));
+        }
+        return result;
+    }
+
+    static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (int i = 0; i < a.size; i++) {
+            int j = b.find(a.keys[i]);
+            result.append(a.keys[i], j < 0 ? a.containers[i].copy() : Container.andNot(a.containers[i], b.containers[j]));
+        }
+        return result;
+    }
+
+    int[] toArray() {
+        int[] positions = new int[cardinality()];
+        PrimitiveIterator.OfInt iterator = iterator();
+        for (int i = 0; i < positions.length; i++) positions[i] = iterator.nextInt();
+        return positions;
+    }
+
+    // Ascending positions.
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int container;
+            private int index;
+            private int word = -1;
+            private long bits;
+
+            public boolean hasNext() {
+                while (container < size) {
+                    Container c = containers[container];
+                    if (c.bitmap == null) {
+                        if (index < c.cardinality) return true;
+                    } else {
+                        while (bits == 0 && word < 1023) bits = c.bitmap[++word];
+                        if (bits != 0) return true;
+                    }
+                    container++;
+                    index = 0;
+                    word = -1;
+                    bits = 0;
+                }
+                return false;
+            }
+
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Container c = containers[container];
+                int low;
+                if (c.bitmap == null) {
+                    low = c.array[index++];
+                } else {
+                    low = word * 64 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+                return keys[container] << 16 | low;
+            }
+        };
+    }
+
+    private int find(char key) {
+        if (size > 0 && keys[size - 1] == key) return size - 1;
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private Container container(char key, boolean create) {
+        int i = find(key);
+        if (i >= 0) return containers[i];
+        if (!create) return null;
+        i = -i - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = new Container();
+        size++;
+        return containers[i];
+    }
+
+    // Keys arrive in ascending order from the set operations; empty containers are dropped.
+    private void append(char key, Container container) {
+        if (container.cardinality == 0) return;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size++] = container;
+    }
+}
+
+// CREATE BITMAP INDEX: a RoaringBitmap of row positions for each distinct value of one column,
+// plus one for its NULLs. Positions index the table's row list, deleted rows included (readers
+// skip tombstones), and are rebuilt when the table is compacted.
+class BitmapIndex {
+    final String name;
+    final int ordinal;
+    private final Map<Object, RoaringBitmap> values = new HashMap<>();
+    private RoaringBitmap nulls = new RoaringBitmap();
+
+    BitmapIndex(String name, int ordinal) {
+        this.name = name;
+        this.ordinal = ordinal;
+    }
+
+    void build(List<Object[]> rows) {
+        values.clear();
+        nulls = new RoaringBitmap();
+        for (int i = 0; i < rows.size(); i++) add(i, rows.get(i)[ordinal]);
+    }
+
+    void add(int position, Object value) {
+        if (value == null) nulls.add(position);
+        else values.computeIfAbsent(value, k -> new RoaringBitmap()).add(position);
+    }
+
+    void remove(int position, Object value) {
+        if (value == null) {
+            nulls.remove(position);
+            return;
+        }
+        RoaringBitmap positions = values.get(value);
+        if (positions == null) return;
+        positions.remove(position);
+        if (positions.isEmpty()) values.remove(value);
+    }
+
+    RoaringBitmap equal(Object value) {
+        RoaringBitmap positions = values.get(value);
+        return positions == null ? new RoaringBitmap() : positions;
+    }
+
+    RoaringBitmap nulls() {
+        return nulls;
+    }
+
+    // Union of the positions of the values that pass the test; one bitmap per distinct value is
+    // what makes this affordable for ranges and LIKE on low-cardinality columns.
+    RoaringBitmap matching(Predicate<Object> test) {
+        RoaringBitmap all = new RoaringBitmap();
+        for (Map.Entry<Object, RoaringBitmap> entry : values.entrySet()) {
+            if (test.test(entry.getKey())) all = RoaringBitmap.or(all, entry.getValue());
+        }
+        return all;
+    }
+
+    RoaringBitmap notNulls() {
+        RoaringBitmap all = new RoaringBitmap();
+        for (RoaringBitmap positions : values.values()) all = RoaringBitmap.or(all, positions);
+        return all;
+    }
+
+    int distinctValues() {
+        return values.size();
+    }
+}
+
+// HyperLogLog sketch of the distinct non-NULL values of a column, with 2^P one-byte registers. A
+// value's 64-bit hash picks a register with its top P bits, which keeps the highest position of
+// the first 1 bit seen in the remaining bits. The estimate uses Ertl's improved estimator ("New
+// cardinality estimation algorithms for HyperLogLog sketches", 2017), which needs no empirical bias
+// tables and has a relative standard error of about 1.04 / sqrt(2^P), 0.81% at P = 14, from a few
+// values up to billions. Sketches merge by taking register maxima, so the union of two sketches is
+// the sketch of the union. While at most SPARSE_MAX registers are set only those are stored, as a
+// sorted array of index << 6 | value, so sketches of small columns stay small.
+class HyperLogLog {
+    static final int P = 14;
+    private static final int M = 1 << P;
+    private static final int Q = 64 - P;
+    private static final int SPARSE_MAX = M / 16;
+
+    private int[] sparse = new int[4];
+    private int size;
+    private byte[] registers;
+
+    void add(Object value) {
+        if (value == null) return;
+        long hash = hash(value);
+        int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+        set((int) (hash >>> Q), rank);
+    }
+
+    // Equal values (in the sense of equals) hash alike; 1.0 and '1' are different values.
+    static long hash(Object value) {
+        if (value instanceof Double) return mix(Double.doubleToLongBits((Double) value));
+        String text = value.toString();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        return mix(hash ^ 0x5bd1e995L);
+    }
+
+    // Murmur3's 64-bit finalizer.
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void set(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) registers[index] = (byte) rank;
+            return;
+        }
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int at = sparse[middle] >>> 6;
+            if (at < index) {
+                low = middle + 1;
+            } else if (at > index) {
+                high = middle - 1;
+            } else {
+                if (rank > (sparse[middle] & 63)) sparse[middle] = index << 6 | rank;
+                return;
+            }
+        }
+        if (size == SPARSE_MAX) {
+            registers = new byte[M];
+            for (int i = 0; i < size; i++) registers[sparse[i] >>> 6] = (byte) (sparse[i] & 63);
+            sparse = null;
+            registers[index] = (byte) rank;
+            return;
+        }
+        if (size == sparse.length) sparse = Arrays.copyOf(sparse, size * 2);
+        System.arraycopy(sparse, low, sparse, low + 1, size - low);
+        sparse[low] = index << 6 | rank;
+        size++;
+    }
+
+    // Estimated heap size, for MemoryTracker.
+    int memoryBytes() {
+        return registers != null ? 40 + M : 40 + 4 * sparse.length;
+    }
+
+    void merge(HyperLogLog other) {
+        if (other.registers != null) {
+            for (int i = 0; i < M; i++) if (other.registers[i] != 0) set(i, other.registers[i]);
+        } else {
+            for (int i = 0; i < other.size; i++) set(other.sparse[i] >>> 6, other.sparse[i] & 63);
+        }
+    }
+
+    long estimate() {
+        int[] counts = new int[Q + 2];
+        if (registers != null) {
+            for (byte register : registers) counts[register]++;
+        } else {
+            counts[0] = M - size;
+            for (int i = 0; i < size; i++) counts[sparse[i] & 63]++;
+        }
+        double z = M * tau(1 - (double) counts[Q + 1] / M);
+        for (int k = Q; k >= 1; k--) z = 0.5 * (z + counts[k]);
+        z += M * sigma((double) counts[0] / M);
+        return Math.round(M / (2 * Math.log(2)) * M / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) return Double.POSITIVE_INFINITY;
+        double y = 1, z = x, previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) return 0;
+        double y = 1, z = 1 - x, previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    // Heap bytes held by the registers.
+    long bytes() {
+        return registers != null ? M : 4L * sparse.length;
+    }
+
+    // 0 varint(count) { varint(index << 6 | value, as the difference to the previous) } while
+    // sparse, 1 followed by the 2^P registers once dense.
+    void write(DataOutputStream out) throws IOException {
+        if (registers != null) {
+            out.write(1);
+            out.write(registers);
+            return;
+        }
+        out.write(0);
+        ColumnarSnapshot.writeVarint(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            ColumnarSnapshot.writeVarint(out, sparse[i] - previous);
+            previous = sparse[i];
+        }
+    }
+
+    static HyperLogLog read(DataInputStream in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog();
+        if (in.readUnsignedByte() == 1) {
+            sketch.sparse = null;
+            sketch.registers = new byte[M];
+            in.readFully(sketch.registers);
+            return sketch;
+        }
+        sketch.size = (int) ColumnarSnapshot.readVarint(in);
+        sketch.sparse = new int[Math.max(4, sketch.size)];
+        int previous = 0;
+        for (int i = 0; i < sketch.size; i++) {
+            previous += (int) ColumnarSnapshot.readVarint(in);
+            sketch.sparse[i] = previous;
+        }
+        return sketch;
+    }
+}
+
+// TABLESAMPLE of a scan: keeps each row (BERNOULLI) or each zone map block of BLOCK_ROWS rows
+// (SYSTEM) with probability percent / 100. Whether a position or block is kept is a hash of it and
+// the seed, so REPEATABLE (seed) draws the same sample again while the table is unchanged. SYSTEM
+// never reads the blocks it leaves out, which is what makes it fast, but a block's rows are kept
+// or dropped together, so clustered data gives a more variable sample than BERNOULLI.
+class TableSample {
+    final boolean system;
+    final double percent;
+    // REPEATABLE (seed), or null for a new sample each time.
+    final Long seed;
+    private final long salt;
+    private final long threshold;
+
+    TableSample(boolean system, double percent, Long seed) {
+        if (percent < 0 || percent > 100) throw new RuntimeException("TABLESAMPLE percentage must be between 0 and 100.");
+        this.system = system;
+        this.percent = percent;
+        this.seed = seed;
+        salt = seed != null ? HyperLogLog.mix(seed) : new SplittableRandom().nextLong();
+        threshold = (long) (percent / 100 * (1L << 53));
+    }
+
+    private TableSample(TableSample sample, long salt) {
+        system = sample.system;
+        percent = sample.percent;
+        seed = sample.seed;
+        this.salt = salt;
+        threshold = sample.threshold;
+    }
+
+    // The partitions of a table are sampled independently of each other.
+    TableSample forTable(String tableName) {
+        return new TableSample(this, HyperLogLog.mix(salt ^ HyperLogLog.hash(tableName)));
+    }
+
+    boolean keepsBlock(int block) {
+        return keeps(block);
+    }
+
+    boolean keepsPosition(int position) {
+        return system ? keeps(position / ZoneMap.BLOCK_ROWS) : keeps(position);
+    }
+
+    private boolean keeps(long key) {
+        return HyperLogLog.mix(salt + key * 0x9e3779b97f4a7c15L) >>> 11 < threshold;
+    }
+
+    public String toString() {
+        String amount = percent == Math.rint(percent) ? String.valueOf((long) percent) : String.valueOf(percent);
+        return (system ? "SYSTEM" : "BERNOULLI") + " (" + amount + " PERCENT)" + (seed != null ? " REPEATABLE (" + seed + ")" : "");
+    }
+}
+
+// Zone map: the table's row positions in blocks of BLOCK_ROWS, with each block's per-column
+// smallest and largest value and NULL count. Scans skip blocks whose statistics rule out the
+// WHERE condition. The statistics cover every row in the block, deleted ones included, so
+// DELETE leaves them valid; UPDATE only widens min/max. Compaction rebuilds them.
+// Bounds use the order of Database.compareValues, which agrees with equals for Doubles and for
+// Strings; a column holding both in one block gets no bounds there.
+// Each column also has a HyperLogLog sketch of its distinct values over the whole table. Like the
+// bounds it covers deleted rows, and values an UPDATE replaced, until the next rebuild.
+class ZoneMap {
+    static final int BLOCK_ROWS = 4096;
+    private static final Object MIXED = new Object();
+
+    private final List<Block> blocks = new ArrayList<>();
+    private int width;
+    private HyperLogLog[] distinct;
+    private boolean updated;
+
+    private static final class Block {
+        Object[] min;
+        Object[] max;
+        int[] nulls;
+        int rows;
+
+        Block(int width) {
+            min = new Object[width];
+            max = new Object[width];
+            nulls = new int[width];
+        }
+    }
+
+    ZoneMap(int width) {
+        this.width = width;
+        distinct = new HyperLogLog[width];
+        for (int ordinal = 0; ordinal < width; ordinal++) distinct[ordinal] = new HyperLogLog();
+    }
+
+    static ZoneMap build(List<Object[]> rows, int width) {
+        ZoneMap zones = new ZoneMap(width);
+        for (Object[] row : rows) zones.add(row);
+        return zones;
+    }
+
+    // Rows are added in position order.
+    void add(Object[] row) {
+        Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (block == null || block.rows == BLOCK_ROWS) {
+            block = new Block(width);
+            blocks.add(block);
+        }
+        for (int ordinal = 0; ordinal < width; ordinal++) {
+            include(block, ordinal, row[ordinal]);
+            distinct[ordinal].add(row[ordinal]);
+        }
+        block.rows++;
+    }
+
+    void update(int position, int ordinal, Object previous, Object value) {
+        Block block = blocks.get(position / BLOCK_ROWS);
+        if (previous == null) block.nulls[ordinal]--;
+        include(block, ordinal, value);
+        distinct[ordinal].add(value);
+        updated = true;
+    }
+
+    // The column's distinct-value sketch, or null when an UPDATE may have left it counting
+    // values no row holds any more.
+    HyperLogLog distinct(int ordinal) {
+        return updated ? null : distinct[ordinal];
+    }
+
+    // ALTER TABLE ADD: the new column is NULL in every row.
+    void addColumn() {
+        for (Block block : blocks) {
+            block.min = Arrays.copyOf(block.min, width + 1);
+            block.max = Arrays.copyOf(block.max, width + 1);
+            block.nulls = Arrays.copyOf(block.nulls, width + 1);
+            block.nulls[width] = block.rows;
+        }
+        distinct = Arrays.copyOf(distinct, width + 1);
+        distinct[width] = new HyperLogLog();
+        width++;
+    }
+
+    private static void include(Block block, int ordinal, Object value) {
+        if (value == null) {
+            block.nulls[ordinal]++;
+            return;
+        }
+        Object min = block.min[ordinal];
+        if (min == MIXED) return;
+        if (min == null) {
+            block.min[ordinal] = value;
+            block.max[ordinal] = value;
+        } else if (min.getClass() != value.getClass()) {
+            block.min[ordinal] = MIXED;
+            block.max[ordinal] = MIXED;
+        } else {
+            if (Database.compareValues(value, min) < 0) block.min[ordinal] = value;
+            if (Database.compareValues(value, block.max[ordinal]) > 0) block.max[ordinal] = value;
+        }
+    }
+
+    int blocks() {
+        return blocks.size();
+    }
+
+    int rows(int block) {
+        return blocks.get(block).rows;
+    }
+
+    int nulls(int block, int ordinal) {
+        return blocks.get(block).nulls[ordinal];
+    }
+
+    // False only when no row in the block can equal the value.
+    boolean mayEqual(int block, int ordinal, Object value) {
+        Block b = blocks.get(block);
+        Object min = b.min[ordinal];
+        if (min == null) return false;
+        if (min == MIXED) return true;
+        if (min.getClass() != value.getClass()) return false;
+        return Database.compareValues(value, min) >= 0 && Database.compareValues(value, b.max[ordinal]) <= 0;
+    }
+
+    // False only when no row in the block can fall in the range; a null bound is open.
+    boolean mayOverlap(int block, int ordinal, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        Block b = blocks.get(block);
+        Object min = b.min[ordinal];
+        if (min == null) return false;
+        if (min == MIXED) return true;
+        if (low != null) {
+            if (min.getClass() != low.getClass()) return false;
+            int c = Database.compareValues(b.max[ordinal], low);
+            if (c < 0 || (c == 0 && !lowInclusive)) return false;
+        }
+        if (high != null) {
+            if (min.getClass() != high.getClass()) return false;
+            int c = Database.compareValues(min, high);
+            if (c > 0 || (c == 0 && !highInclusive)) return false;
+        }
+        return true;
+    }
+
+    // Per block: varint(rows), then per column varint(nulls) and a bounds flag
+    // (0 = no values, 1 = min and max follow as tagged values, 2 = mixed types).
+    // Then the columns' sketches (HyperLogLog.write).
+    void write(DataOutputStream out) throws IOException {
+        ColumnarSnapshot.writeVarint(out, blocks.size());
+        for (Block block : blocks) {
+            ColumnarSnapshot.writeVarint(out, block.rows);
+            for (int ordinal = 0; ordinal < width; ordinal++) {
+                ColumnarSnapshot.writeVarint(out, block.nulls[ordinal]);
+                Object min = block.min[ordinal];
+                if (min == null) {
+                    out.write(0);
+                } else if (min == MIXED) {
+                    out.write(2);
+                } else {
+                    out.write(1);
+                    ColumnarSnapshot.writeValue(out, min);
+                    ColumnarSnapshot.writeValue(out, block.max[ordinal]);
+                }
+            }
+        }
+        for (HyperLogLog sketch : distinct) sketch.write(out);
+    }
+
+    // Snapshots before version 5 have no sketches; the caller adds the rows to them (addDistinct).
+    static ZoneMap read(DataInputStream in, int width, boolean sketches) throws IOException {
+        ZoneMap zones = new ZoneMap(width);
+        int count = (int) ColumnarSnapshot.readVarint(in);
+        for (int i = 0; i < count; i++) {
+            Block block = new Block(width);
+            block.rows = (int) ColumnarSnapshot.readVarint(in);
+            for (int ordinal = 0; ordinal < width; ordinal++) {
+                block.nulls[ordinal] = (int) ColumnarSnapshot.readVarint(in);
+                int bounds = in.readUnsignedByte();
+                if (bounds == 1) {
+                    block.min[ordinal] = ColumnarSnapshot.readValue(in);
+                    block.max[ordinal] = ColumnarSnapshot.readValue(in);
+                } else if (bounds == 2) {
+                    block.min[ordinal] = MIXED;
+                    block.max[ordinal] = MIXED;
+                }
+            }
+            zones.blocks.add(block);
+        }
+        if (sketches) {
+            for (int ordinal = 0; ordinal < width; ordinal++) zones.distinct[ordinal] = HyperLogLog.read(in);
+        }
+        return zones;
+    }
+
+    void addDistinct(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            for (int ordinal = 0; ordinal < width; ordinal++) distinct[ordinal].add(row[ordinal]);
+        }
+    }
+}
+
+// PARTITION BY HASH or RANGE of a table. Each partition is stored as a table of its own, named
+// TABLE#PARTITION, with its own rows, tombstones, zone map and bitmap indexes; the partitioned
+// table keeps only the schema. HASH partitions are P0..Pn-1 and a key goes to the mixed hashCode mod n.
+// RANGE partitions are kept in bound order and a key goes to the first whose bound (exclusive,
+// null = MAXVALUE) is above it, so dropping one hands its range to the next. NULL keys go to the
+// first partition.
+class Partitioning {
+    final String kind;
+    final String column;
+    int ordinal = -1;
+    final List<String> names = new ArrayList<>();
+    // RANGE: each partition's upper bound, all numbers or all strings.
+    final List<Object> bounds = new ArrayList<>();
+
+    private Partitioning(String kind, String column) {
+        this.kind = kind;
+        this.column = column;
+    }
+
+    static Partitioning hash(String column, int count) {
+        if (count < 1) throw new RuntimeException("A table needs at least one partition.");
+        Partitioning partitioning = new Partitioning("HASH", column);
+        for (int i = 0; i < count; i++) partitioning.names.add("P" + i);
+        return partitioning;
+    }
+
+    // Partitions are added with addRange.
+    static Partitioning range(String column) {
+        return new Partitioning("RANGE", column);
+    }
+
+    static String tableName(String tableName, String partition) {
+        return tableName + "#" + partition;
+    }
+
+    // The partitioned table a partition's table belongs to, or the name itself for other tables.
+    static String parentOf(String tableName) {
+        int hash = tableName.indexOf('#');
+        return hash < 0 ? tableName : tableName.substring(0, hash);
+    }
+
+    // Appends a RANGE partition; bounds have to increase and nothing follows MAXVALUE.
+    void addRange(String name, Object bound) {
+        if (names.contains(name)) throw new RuntimeException("Partition '" + name + "' already exists.");
+        if (!bounds.isEmpty()) {
+            Object last = bounds.get(bounds.size() - 1);
+            if (last == null) throw new RuntimeException("No partition can follow MAXVALUE partition '" + names.get(names.size() - 1) + "'.");
+            if (bound != null && bound.getClass() != last.getClass()) throw new RuntimeException("Partition bounds must all be numbers or all be strings.");
+            if (bound != null && Database.compareValues(bound, last) <= 0) throw new RuntimeException("Partition bound " + bound + " is not above " + last + ".");
+        }
+        names.add(name);
+        bounds.add(bound);
+    }
+
+    Partitioning copy() {
+        Partitioning copy = new Partitioning(kind, column);
+        copy.ordinal = ordinal;
+        copy.names.addAll(names);
+        copy.bounds.addAll(bounds);
+        return copy;
+    }
+
+    // Index of the partition a key belongs to, or -1 when there is none.
+    int find(Object key) {
+        if (names.isEmpty()) return -1;
+        if (key == null) return 0;
+        if ("HASH".equals(kind)) return Math.floorMod(mix(key.hashCode()), names.size());
+        for (int i = 0; i < bounds.size(); i++) {
+            Object bound = bounds.get(i);
+            if (bound == null) return i;
+            if (bound.getClass() != key.getClass()) return -1;
+            if (Database.compareValues(key, bound) < 0) return i;
+        }
+        return -1;
+    }
+
+    // Murmur3's finalizer: Double.hashCode of small integral values has all-zero low bits.
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    String partitionOf(Object key) {
+        int i = find(key);
+        if (i < 0) throw new RuntimeException("No partition for " + column + " = " + key + ".");
+        return names.get(i);
+    }
+
+    // Partitions, in order, that rows matching every term can be in; the key is at `offset` +
+    // ordinal in the statement's rows. Only terms on the key prune: =, IN and IS NULL, and for
+    // RANGE also <, <=, >, >= and BETWEEN.
+    List<String> prune(List<Condition> terms, int offset) {
+        BitSet candidates = new BitSet();
+        candidates.set(0, names.size());
+        for (Condition term : terms) candidates.and(candidates(term, offset + ordinal));
+        List<String> result = new ArrayList<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) result.add(names.get(i));
+        return result;
+    }
+
+    private BitSet candidates(Condition condition, int key) {
+        BitSet result = new BitSet();
+        switch (condition.op) {
+            case "AND":
+                result.set(0, names.size());
+                for (Condition child : condition.children) result.and(candidates(child, key));
+                return result;
+            case "OR":
+                for (Condition child : condition.children) result.or(candidates(child, key));
+                return result;
+        }
+        if (condition.ordinal == key && !condition.negated) {
+            List<Object> values = condition.values;
+            switch (condition.op) {
+                case "IS NULL":
+                    if (!names.isEmpty()) result.set(0);
+                    return result;
+                case "=":
+                case "IN":
+                    for (Object value : values) {
+                        int i = find(value);
+                        if (i >= 0) result.set(i);
+                    }
+                    return result;
+            }
+            if ("RANGE".equals(kind) && comparable(values)) {
+                switch (condition.op) {
+                    case "<": return overlapping(null, values.get(0), false);
+                    case "<=": return overlapping(null, values.get(0), true);
+                    case ">":
+                    case ">=": return overlapping(values.get(0), null, false);
+                    case "BETWEEN": return overlapping(values.get(0), values.get(1), true);
+                }
+            }
+        }
+        result.set(0, names.size());
+        return result;
+    }
+
+    // Whether the literals have the bounds' type; keys of another type are in no partition.
+    private boolean comparable(List<Object> values) {
+        if (bounds.isEmpty() || bounds.get(0) == null) return false;
+        for (Object value : values) if (value.getClass() != bounds.get(0).getClass()) return false;
+        return true;
+    }
+
+    // RANGE partitions that can hold a key above `low` and below `high` (null = unbounded).
+    // Partition i holds [bound i-1, bound i).
+    private BitSet overlapping(Object low, Object high, boolean highInclusive) {
+        BitSet result = new BitSet();
+        for (int i = 0; i < names.size(); i++) {
+            Object from = i == 0 ? null : bounds.get(i - 1);
+            Object to = bounds.get(i);
+            if (low != null && to != null && Database.compareValues(low, to) >= 0) continue;
+            if (high != null && from != null) {
+                int c = Database.compareValues(high, from);
+                if (c < 0 || (c == 0 && !highInclusive)) continue;
+            }
+            result.set(i);
+        }
+        return result;
+    }
+
+    // string(column) varint(partitions) { string(name) } and for RANGE, per partition, 0 for
+    // MAXVALUE or 1 and the bound.
+    void write(DataOutputStream out) throws IOException {
+        ColumnarSnapshot.writeString(out, column);
+        ColumnarSnapshot.writeVarint(out, names.size());
+        for (String name : names) ColumnarSnapshot.writeString(out, name);
+        if (!"RANGE".equals(kind)) return;
+        for (Object bound : bounds) {
+            out.write(bound == null ? 0 : 1);
+            if (bound != null) ColumnarSnapshot.writeValue(out, bound);
+        }
+    }
+
+    static Partitioning read(DataInputStream in, String kind, TableSchema schema) throws IOException {
+        Partitioning partitioning = new Partitioning(kind, ColumnarSnapshot.readString(in));
+        partitioning.ordinal = schema.ordinal(partitioning.column);
+        int count = (int) ColumnarSnapshot.readVarint(in);
+        for (int i = 0; i < count; i++) partitioning.names.add(ColumnarSnapshot.readString(in));
+        if ("RANGE".equals(kind)) {
+            for (int i = 0; i < count; i++) partitioning.bounds.add(in.readUnsignedByte() == 0 ? null : ColumnarSnapshot.readValue(in));
+        }
+        return partitioning;
+    }
+}
+
+// CREATE MATERIALIZED VIEW name AS SELECT * | COUNT(DISTINCT col) FROM table [WHERE ...] GROUP BY col.
+// Instead of rows it keeps one entry per group: the group's row count and, for COUNT(DISTINCT), how
+// many of its rows hold each value. DML on the table hands every row it adds or removes to apply()
+// (an UPDATE as the old row removed and the new one added), so the view never rescans the table
+// and reading it costs O(groups). Groups are listed in the order they first appeared; one that
+// empties and comes back goes to the end. APPROX_COUNT_DISTINCT is not allowed, as a HyperLogLog
+// sketch cannot take a value out again.
+class MaterializedView {
+    final String name;
+    // The SELECT as SQL text, parsed again when the database is loaded.
+    final String definition;
+    // Bound against the table.
+    final ASTNode query;
+    final List<String> columns;
+    private final Predicate<Object[]> filter;
+    private final Map<Object, Group> groups = new LinkedHashMap<>();
+
+    private static final class Group {
+        long rows;
+        // COUNT(DISTINCT): the number of rows holding each non-NULL value.
+        Map<Object, long[]> values;
+    }
+
+    MaterializedView(String name, String definition, ASTNode query, List<String> columns) {
+        if (query.groupByColumn == null) throw new RuntimeException("Materialized view '" + name + "' needs a GROUP BY.");
+        if (query.joinTable != null || query.sample != null || query.orderByColumn != null) {
+            throw new RuntimeException("Materialized view '" + name + "' cannot have JOIN, TABLESAMPLE or ORDER BY.");
+        }
+        if ("APPROX_COUNT_DISTINCT".equals(query.aggregate)) {
+            throw new RuntimeException("Materialized view '" + name + "' cannot keep APPROX_COUNT_DISTINCT up to date; use COUNT(DISTINCT).");
+        }
+        this.name = name;
+        this.definition = definition;
+        this.query = query;
+        this.columns = columns;
+        filter = query.where == null ? null : query.where.compile(0);
+    }
+
+    String table() {
+        return query.tableName;
+    }
+
+    // `row` was added to the table (sign 1) or removed from it (sign -1).
+    void apply(Object[] row, int sign) {
+        if (filter != null && !filter.test(row)) return;
+        Object key = row[query.groupByOrdinal];
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            if (query.aggregate != null) group.values = new HashMap<>();
+            groups.put(key, group);
+        }
+        group.rows += sign;
+        Object value = group.values != null ? row[query.aggregateOrdinal] : null;
+        if (value != null) {
+            long[] rows = group.values.computeIfAbsent(value, k -> new long[1]);
+            rows[0] += sign;
+            if (rows[0] == 0) group.values.remove(value);
+        }
+        if (group.rows == 0) groups.remove(key);
+    }
+
+    List<Object[]> rows() {
+        List<Object[]> rows = new ArrayList<>(groups.size());
+        groups.forEach((key, group) -> rows.add(new Object[] {key, (double) (group.values != null ? group.values.size() : group.rows)}));
+        return rows;
+    }
+
+    int groups() {
+        return groups.size();
+    }
+
+    // For a checkpoint, which writes the copy while DML keeps changing this one.
+    MaterializedView copy() {
+        MaterializedView copy = new MaterializedView(name, definition, query, columns);
+        groups.forEach((key, group) -> {
+            Group copied = new Group();
+            copied.rows = group.rows;
+            if (group.values != null) {
+                copied.values = new HashMap<>();
+                group.values.forEach((value, rows) -> copied.values.put(value, rows.clone()));
+            }
+            copy.groups.put(key, copied);
+        });
+        return copy;
+    }
+
+    // varint(groups) { key varint(rows) [varint(values) { value varint(rows) }] }, keys as a NULL
+    // flag (0 = NULL) and a tagged value, COUNT(DISTINCT) values as tagged values.
+    void writeState(DataOutputStream out) throws IOException {
+        ColumnarSnapshot.writeVarint(out, groups.size());
+        for (Map.Entry<Object, Group> entry : groups.entrySet()) {
+            out.write(entry.getKey() == null ? 0 : 1);
+            if (entry.getKey() != null) ColumnarSnapshot.writeValue(out, entry.getKey());
+            Group group = entry.getValue();
+            ColumnarSnapshot.writeVarint(out, group.rows);
+            if (group.values == null) continue;
+            ColumnarSnapshot.writeVarint(out, group.values.size());
+            for (Map.Entry<Object, long[]> value : group.values.entrySet()) {
+                ColumnarSnapshot.writeValue(out, value.getKey());
+                ColumnarSnapshot.writeVarint(out, value.getValue()[0]);
+            }
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        long count = ColumnarSnapshot.readVarint(in);
+        for (long i = 0; i < count; i++) {
+            Object key = in.readUnsignedByte() == 0 ? null : ColumnarSnapshot.readValue(in);
+            Group group = new Group();
+            group.rows = ColumnarSnapshot.readVarint(in);
+            if (query.aggregate != null) {
+                group.values = new HashMap<>();
+                long values = ColumnarSnapshot.readVarint(in);
+                for (long j = 0; j < values; j++) group.values.put(ColumnarSnapshot.readValue(in), new long[] {ColumnarSnapshot.readVarint(in)});
+            }
+            groups.put(key, group);
+        }
+    }
+}
+
+// Columnar snapshot written by saveToFile:
+//   "SQLCSNAP" varint(version) varint(tables)
+//   per table: string(name) varint(columns) { string(column) string(type) string(index) } varint(rows)
+//     (index is the bitmap index name or ""; version 1 files have no index field)
+//   per column, per CHUNK_ROWS rows: encoding, null bitmap, then the chunk's non-NULL values as
+//     PLAIN       { tag value }, tag 1 = double, 2 = string (as in BinaryResultSink)
+//     DICTIONARY  varint(size) { string } width codes bit-packed in width bits
+//     RLE         varint(runs) { tag value varint(length) }
+//     DELTA       zigzag(first) zigzag(min delta) width (delta - min delta) bit-packed, integral doubles only
+//   then, from version 3, the table's zone map (ZoneMap.write; its distinct-value sketches from version 5)
+//   then, from version 4, string(HASH, RANGE or "" when not partitioned) and Partitioning.write
+// then, from version 6, varint(views) { string(name) string(definition) MaterializedView.writeState }
+// Strings are varint(length) utf8. The encoding is chosen per chunk from the chunk's values.
+class ColumnarSnapshot {
+    private static final byte[] MAGIC = "SQLCSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 6;
+    static final int CHUNK_ROWS = 1 << 16;
+    static final int PLAIN = 0;
+    static final int DICTIONARY = 1;
+    static final int RLE = 2;
+    static final int DELTA = 3;
+
+    static void writeHeader(DataOutputStream out, int tables) throws IOException {
+        out.write(MAGIC);
+        writeVarint(out, VERSION);
+        writeVarint(out, tables);
+    }
+
+    // The snapshot's version, or 0 (with the stream rewound) when the file is not a columnar snapshot.
+    static int readHeader(DataInputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte[] magic = new byte[MAGIC.length];
+        int read = in.readNBytes(magic, 0, magic.length);
+        if (read != magic.length || !Arrays.equals(magic, MAGIC)) {
+            in.reset();
+            return 0;
+        }
+        long version = readVarint(in);
+        if (version < 1 || version > VERSION) throw new RuntimeException("Unsupported snapshot version " + version + ".");
+        return (int) version;
+    }
+
+    static void writeTable(DataOutputStream out, String tableName, TableSchema schema, List<Object[]> rows, Partitioning partitioning) throws IOException {
+        writeString(out, tableName);
+        writeVarint(out, schema.size());
+        for (Column column : schema.columns()) {
+            writeString(out, column.name);
+            writeString(out, column.type);
+            BitmapIndex index = column.index;
+            writeString(out, index == null ? "" : index.name);
+        }
+        writeVarint(out, rows.size());
+        List<Object> values = new ArrayList<>(Math.min(rows.size(), CHUNK_ROWS));
+        for (Column column : schema.columns()) {
+            for (int start = 0; start < rows.size(); start += CHUNK_ROWS) {
+                int end = Math.min(rows.size(), start + CHUNK_ROWS);
+                byte[] nulls = new byte[(end - start + 7) / 8];
+                boolean hasNulls = false;
+                values.clear();
+                for (int i = start; i < end; i++) {
+                    Object value = rows.get(i)[column.ordinal];
+                    if (value == null) {
+                        nulls[(i - start) >> 3] |= 1 << ((i - start) & 7);
+                        hasNulls = true;
+                    } else {
+                        values.add(value);
+                    }
+                }
+                int encoding = chooseEncoding(values);
+                out.write(encoding);
+                out.write(hasNulls ? 1 : 0);
+                if (hasNulls) out.write(nulls);
+                switch (encoding) {
+                    case DICTIONARY: writeDictionary(out, values); break;
+                    case RLE: writeRle(out, values); break;
+                    case DELTA: writeDelta(out, values); break;
+                    default: for (Object value : values) writeValue(out, value);
+                }
+            }
+        }
+        ZoneMap.build(rows, schema.size()).write(out);
+        writeString(out, partitioning == null ? "" : partitioning.kind);
+        if (partitioning != null) partitioning.write(out);
+    }
+
+    // Bitmap indexes come back empty; Database.loadFromFile builds them once the rows are in place.
+    static String readTable(DataInputStream in, int version, Map<String, TableSchema> schemas, Map<String, List<Object[]>> data, Map<String, ZoneMap> zones, Map<String, Partitioning> partitions) throws IOException {
+        String tableName = readString(in);
+        int columnCount = (int) readVarint(in);
+        TableSchema schema = new TableSchema();
+        for (int i = 0; i < columnCount; i++) {
+            Column column = schema.add(readString(in), readString(in));
+            String index = version >= 2 ? readString(in) : "";
+            if (!index.isEmpty()) column.index = new BitmapIndex(index, column.ordinal);
+        }
+        int rowCount = (int) readVarint(in);
+        List<Object[]> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) rows.add(new Object[columnCount]);
+        for (Column column : schema.columns()) {
+            ColumnDictionary dictionary = null;
+            for (int start = 0; start < rowCount; start += CHUNK_ROWS) {
+                int end = Math.min(rowCount, start + CHUNK_ROWS);
+                int encoding = in.readUnsignedByte();
+                byte[] nulls = null;
+                if (in.readUnsignedByte() == 1) {
+                    nulls = new byte[(end - start + 7) / 8];
+                    in.readFully(nulls);
+                }
+                int count = end - start;
+                if (nulls != null) for (byte b : nulls) count -= Integer.bitCount(b & 0xFF);
+                Object[] values;
+                switch (encoding) {
+                    case DICTIONARY:
+                        if (dictionary == null) dictionary = new ColumnDictionary();
+                        values = readDictionary(in, count, dictionary);
+                        break;
+                    case RLE: values = readRle(in, count); break;
+                    case DELTA: values = readDelta(in, count); break;
+                    case PLAIN:
+                        values = new Object[count];
+                        for (int i = 0; i < count; i++) values[i] = readValue(in);
+                        break;
+                    default: throw new RuntimeException("Unknown column encoding " + encoding + " in table '" + tableName + "'.");
+                }
+                int next = 0;
+                for (int i = start; i < end; i++) {
+                    if (nulls != null && (nulls[(i - start) >> 3] & (1 << ((i - start) & 7))) != 0) continue;
+                    rows.get(i)[column.ordinal] = values[next++];
+                }
+            }
+            if (dictionary != null) {
+                // Chunks of a dictionary column that were stored another way share its instances too.
+                for (Object[] row : rows) {
+                    if (row[column.ordinal] instanceof String) row[column.ordinal] = dictionary.intern((String) row[column.ordinal]);
+                }
+            }
+        }
+        if (version >= 3) {
+            ZoneMap zoneMap = ZoneMap.read(in, columnCount, version >= 5);
+            if (version < 5) zoneMap.addDistinct(rows);
+            zones.put(tableName, zoneMap);
+        }
+        String partitioned = version >= 4 ? readString(in) : "";
+        if (!partitioned.isEmpty()) partitions.put(tableName, Partitioning.read(in, partitioned, schema));
+        schemas.put(tableName, schema);
+        data.put(tableName, rows);
+        return tableName;
+    }
+
+    // RLE when values repeat in runs (sorted or constant columns), DELTA for integral numbers,
+    // DICTIONARY for low-cardinality text, PLAIN otherwise.
+    private static int chooseEncoding(List<Object> values) {
+        if (values.isEmpty()) return PLAIN;
+        int runs = 1;
+        boolean integral = true;
+        boolean text = true;
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (i > 0 && !value.equals(values.get(i - 1))) runs++;
+            if (value instanceof Double) {
+                text = false;
+                if (integral && !isIntegral((Double) value)) integral = false;
+            } else {
+                integral = false;
+                if (!(value instanceof String)) text = false;
+            }
+        }
+        if (runs * 4 <= values.size()) return RLE;
+        if (integral) return DELTA;
+        if (text) {
+            Set<Object> distinct = new HashSet<>();
+            int limit = values.size() / 4;
+            for (Object value : values) {
+                if (distinct.add(value) && distinct.size() > limit) return PLAIN;
+            }
+            return DICTIONARY;
+        }
+        return PLAIN;
+    }
+
+    // Within the exactly representable range, and not -0.0, which a long would turn into 0.0.
+    private static boolean isIntegral(double value) {
+        return value == Math.rint(value) && Math.abs(value) <= (1L << 53) && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0);
+    }
+
+    private static void writeDictionary(DataOutputStream out, List<Object> values) throws IOException {
+        Map<Object, Integer> codes = new LinkedHashMap<>();
+        long[] packed = new long[values.size()];
+        for (int i = 0; i < values.size(); i++) packed[i] = codes.computeIfAbsent(values.get(i), k -> codes.size());
+        writeVarint(out, codes.size());
+        for (Object value : codes.keySet()) writeString(out, (String) value);
+        int width = bitWidth(codes.size() - 1);
+        out.write(width);
+        writePacked(out, packed, width);
+    }
+
+    private static Object[] readDictionary(DataInputStream in, int count, ColumnDictionary dictionary) throws IOException {
+        String[] entries = new String[(int) readVarint(in)];
+        for (int i = 0; i < entries.length; i++) entries[i] = dictionary.intern(readString(in));
+        long[] codes = readPacked(in, count, in.readUnsignedByte());
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) values[i] = entries[(int) codes[i]];
+        return values;
+    }
+
+    private static void writeRle(DataOutputStream out, List<Object> values) throws IOException {
+        int runs = 1;
+        for (int i = 1; i < values.size(); i++) if (!values.get(i).equals(values.get(i - 1))) runs++;
+        writeVarint(out, runs);
+        int runStart = 0;
+        for (int i = 1; i <= values.size(); i++) {
+            if (i == values.size() || !values.get(i).equals(values.get(runStart))) {
+                writeValue(out, values.get(runStart));
+                writeVarint(out, i - runStart);
+                runStart = i;
+            }
+        }
+    }
+
+    private static Object[] readRle(DataInputStream in, int count) throws IOException {
+        Object[] values = new Object[count];
+        long runs = readVarint(in);
+        int next = 0;
+        for (long r = 0; r < runs; r++) {
+            Object value = readValue(in);
+            int length = (int) readVarint(in);
+            Arrays.fill(values, next, next + length, value);
+            next += length;
+        }
+        return values;
+    }
+
+    private static void writeDelta(DataOutputStream out, List<Object> values) throws IOException {
+        long previous = (long) (double) (Double) values.get(0);
+        long[] deltas = new long[values.size() - 1];
+        long min = Long.MAX_VALUE;
+        for (int i = 1; i < values.size(); i++) {
+            long current = (long) (double) (Double) values.get(i);
+            deltas[i - 1] = current - previous;
+            min = Math.min(min, deltas[i - 1]);
+            previous = current;
+        }
+        writeVarint(out, zigzag((long) (double) (Double) values.get(0)));
+        if (deltas.length == 0) return;
+        long max = 0;
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] -= min;
+            max = Math.max(max, deltas[i]);
+        }
+        writeVarint(out, zigzag(min));
+        int width = bitWidth(max);
+        out.write(width);
+        writePacked(out, deltas, width);
+    }
+
+    private static Object[] readDelta(DataInputStream in, int count) throws IOException {
+        Object[] values = new Object[count];
+        long current = unzigzag(readVarint(in));
+        values[0] = (double) current;
+        if (count == 1) return values;
+        long min = unzigzag(readVarint(in));
+        long[] deltas = readPacked(in, count - 1, in.readUnsignedByte());
+        for (int i = 1; i < count; i++) {
+            current += deltas[i - 1] + min;
+            values[i] = (double) current;
+        }
+        return values;
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Double) {
+            out.write(BinaryResultSink.DOUBLE);
+            out.writeDouble((Double) value);
+        } else {
+            out.write(BinaryResultSink.TEXT);
+            writeString(out, value.toString());
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == BinaryResultSink.DOUBLE) return in.readDouble();
+        if (tag == BinaryResultSink.TEXT) return readString(in);
+        throw new RuntimeException("Unknown value tag " + tag + " in snapshot.");
+    }
+
+    private static int bitWidth(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    // Values packed least significant bit first into consecutive bytes.
+    private static void writePacked(DataOutputStream out, long[] values, int width) throws IOException {
+        int buffer = 0;
+        int bits = 0;
+        for (long value : values) {
+            int remaining = width;
+            while (remaining > 0) {
+                int take = Math.min(8 - bits, remaining);
+                buffer |= (int) (value & ((1L << take) - 1)) << bits;
+                value >>>= take;
+                bits += take;
+                remaining -= take;
+                if (bits == 8) {
+                    out.write(buffer);
+                    buffer = 0;
+                    bits = 0;
+                }
+            }
+        }
+        if (bits > 0) out.write(buffer);
+    }
+
+    private static long[] readPacked(DataInputStream in, int count, int width) throws IOException {
+        long[] values = new long[count];
+        int buffer = 0;
+        int available = 0;
+        for (int i = 0; i < count; i++) {
+            long value = 0;
+            int got = 0;
+            while (got < width) {
+                if (available == 0) {
+                    buffer = in.readUnsignedByte();
+                    available = 8;
+                }
+                int take = Math.min(available, width - got);
+                value |= (long) ((buffer >>> (8 - available)) & ((1 << take) - 1)) << got;
+                available -= take;
+                got += take;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
+
+// Receives SELECT results row by row as the plan produces them. end() flushes, so result
+// output and the engine's status messages on System.out stay in statement order.
+interface ResultSink {
+    void begin(String tableName, List<String> columns) throws IOException;
+
+    void row(Object[] row) throws IOException;
+
+    void end() throws IOException;
+}
+
+// Aligned text in schema column order. Column widths are taken from the first SAMPLE_ROWS
+// rows so output can start before the query finishes; wider values later just overflow.
+class TextResultSink implements ResultSink {
+    private static final int SAMPLE_ROWS = 1000;
+
+    private final Writer out;
+    private List<String> columns;
+    private List<String[]> sample;
+    private int[] widths;
+    private long rows;
+
+    TextResultSink(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    public void begin(String tableName, List<String> columns) throws IOException {
+        this.columns = columns;
+        sample = new ArrayList<>();
+        widths = new int[columns.size()];
+        for (int i = 0; i < widths.length; i++) widths[i] = columns.get(i).length();
+        rows = 0;
+        out.write("Results from '" + tableName + "':\n");
+    }
+
+    public void row(Object[] row) throws IOException {
+        String[] cells = new String[columns.size()];
+        for (int i = 0; i < cells.length; i++) {
+            Object value = row[i];
+            cells[i] = value == null ? "NULL" : value.toString();
+        }
+        rows++;
+        if (sample == null) {
+            writeLine(cells);
+            return;
+        }
+        for (int i = 0; i < cells.length; i++) widths[i] = Math.max(widths[i], cells[i].length());
+        sample.add(cells);
+        if (sample.size() == SAMPLE_ROWS) writeSample();
+    }
+
+    public void end() throws IOException {
+        if (sample != null) writeSample();
+        out.write("(" + rows + (rows == 1 ? " row)\n" : " rows)\n"));
+        out.flush();
+    }
+
+    private void writeSample() throws IOException {
+        writeLine(columns.toArray(new String[0]));
+        for (int i = 0; i < widths.length; i++) {
+            if (i > 0) out.write("-+-");
+            for (int j = 0; j < widths[i]; j++) out.write('-');
+        }
+        out.write('\n');
+        for (String[] cells : sample) writeLine(cells);
+        sample = null;
+    }
+
+    private void writeLine(String[] cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) out.write(" | ");
+            out.write(cells[i]);
+            if (i < cells.length - 1) for (int j = cells[i].length(); j < widths[i]; j++) out.write(' ');
+        }
+        out.write('\n');
+    }
+}
+
+// RFC 4180 CSV: a header line per result set, NULL as an empty field, result sets separated by a blank line.
+class CsvResultSink implements ResultSink {
+    private final Writer out;
+    private List<String> columns;
+    private boolean first = true;
+
+    CsvResultSink(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    public void begin(String tableName, List<String> columns) throws IOException {
+        this.columns = columns;
+        if (!first) out.write("\r\n");
+        first = false;
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) out.write(',');
+            writeField(columns.get(i), false);
+        }
+        out.write("\r\n");
+    }
+
+    public void row(Object[] row) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) out.write(',');
+            Object value = row[i];
+            if (value != null) writeField(value.toString(), !(value instanceof Double));
+        }
+        out.write("\r\n");
+    }
+
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    // Text that reads as a number is quoted, so CsvLoader loads it back as text.
+    private void writeField(String value, boolean text) throws IOException {
+        boolean quote = value.isEmpty() || text && CsvLoader.isNumber(value);
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
+
+// Reads CSV as written by CsvResultSink: a header line naming the columns, an empty field as NULL,
+// "" for the empty string. Columns of a numeric type hold numbers; in others an unquoted field
+// that reads as a number is one (as literals and text snapshots are), and anything else is text. The file is memory-mapped and split into CHUNK_SIZE chunks at line
+// boundaries outside quotes; chunks are parsed and converted to the column types on all cores and
+// their rows are concatenated in file order.
+class CsvLoader {
+    private static final int CHUNK_SIZE = 16 << 20;
+    private static final int WINDOW_SIZE = 256 << 20;
+    private static final Set<String> NUMERIC_TYPES = new HashSet<>(Arrays.asList("INT", "INTEGER", "BIGINT", "SMALLINT", "FLOAT", "DOUBLE", "REAL", "DECIMAL", "NUMERIC", "NUMBER"));
+    // What Double.toString writes.
+    private static final Pattern NUMBER = Pattern.compile("-?(\\d+(\\.\\d*)?(E-?\\d+)?|Infinity)|NaN");
+
+    private final FileChannel channel;
+    private final TableSchema schema;
+    private String[] columns;
+    private int[] ordinals;
+    private boolean[] numeric;
+    private long fileSize;
+
+    CsvLoader(FileChannel channel, TableSchema schema) {
+        this.channel = channel;
+        this.schema = schema;
+    }
+
+    List<Object[]> load() throws IOException {
+        long size = channel.size();
+        fileSize = size;
+        long dataStart = readHeader(size);
+        List<long[]> chunks = split(dataStart, size);
+        List<List<Object[]>> parsed = chunks.parallelStream().map(chunk -> {
+            try {
+                return parseChunk(chunk[0], chunk[1]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).collect(java.util.stream.Collectors.toList());
+        int total = 0;
+        for (List<Object[]> rows : parsed) total += rows.size();
+        List<Object[]> result = new ArrayList<>(total);
+        for (List<Object[]> rows : parsed) result.addAll(rows);
+        return result;
+    }
+
+    // The header maps file columns to schema columns; schema columns missing from it load as NULL.
+    private long readHeader(long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, CHUNK_SIZE));
+        int end = 0;
+        while (end < buffer.limit() && buffer.get(end) != '\n') end++;
+        if (end == 0 || end == buffer.limit() && end < size) throw new RuntimeException("Missing CSV header line.");
+        byte[] bytes = new byte[end];
+        buffer.get(0, bytes);
+        String[] names = new String(bytes, StandardCharsets.UTF_8).trim().split(",");
+        columns = new String[names.length];
+        ordinals = new int[names.length];
+        numeric = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim().replace("\"", "").toUpperCase();
+            columns[i] = name;
+            ordinals[i] = schema.ordinal(name);
+            numeric[i] = NUMERIC_TYPES.contains(schema.get(ordinals[i]).type.toUpperCase());
+        }
+        return Math.min(size, end + 1);
+    }
+
+    // One sequential pass that only tracks quote state, so chunk boundaries never fall inside a
+    // quoted field that spans lines.
+    private List<long[]> split(long start, long size) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long chunkStart = start;
+        boolean quoted = false;
+        for (long windowStart = start; windowStart < size; windowStart += WINDOW_SIZE) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted && windowStart + i + 1 - chunkStart >= CHUNK_SIZE) {
+                    chunks.add(new long[] {chunkStart, windowStart + i + 1});
+                    chunkStart = windowStart + i + 1;
+                }
+            }
+        }
+        if (chunkStart < size) chunks.add(new long[] {chunkStart, size});
+        return chunks;
+    }
+
+    private List<Object[]> parseChunk(long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buffer.limit();
+        List<Object[]> rows = new ArrayList<>();
+        byte[] field = new byte[256];
+        int i = 0;
+        while (i < limit) {
+            int lineStart = i;
+            Object[] row = new Object[schema.size()];
+            int column = 0;
+            boolean endOfLine = false;
+            boolean blank = true;
+            while (!endOfLine) {
+                int length = 0;
+                boolean quoted = false;
+                if (i < limit && buffer.get(i) == '"') {
+                    quoted = true;
+                    i++;
+                    while (true) {
+                        if (i >= limit) throw new RuntimeException("Unterminated quoted field at byte " + (start + lineStart) + ".");
+                        byte b = buffer.get(i++);
+                        if (b == '"') {
+                            if (i < limit && buffer.get(i) == '"') i++;
+                            else break;
+                        }
+                        if (length == field.length) field = Arrays.copyOf(field, length * 2);
+                        field[length++] = b;
+                    }
+                }
+                while (i < limit) {
+                    byte b = buffer.get(i);
+                    if (b == ',' || b == '\n') break;
+                    i++;
+                    if (b == '\r' && (i == limit || buffer.get(i) == '\n')) continue;
+                    if (length == field.length) field = Arrays.copyOf(field, length * 2);
+                    field[length++] = b;
+                }
+                endOfLine = i >= limit || buffer.get(i) == '\n';
+                i++;
+                if (length > 0 || quoted) blank = false;
+                if (column < columns.length) row[ordinals[column]] = convert(field, length, quoted, column, start + lineStart);
+                column++;
+            }
+            // An empty line is a row of one NULL in a one-column table (COPY TO writes them that
+            // way); in any other table only a trailing one at the end of the file is skipped.
+            if (column == 1 && blank && columns.length > 1 && i >= limit && start + limit == fileSize) continue;
+            if (column != columns.length) throw new RuntimeException("Expected " + columns.length + " values, got " + column + " at byte " + (start + lineStart) + ".");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    static boolean isNumber(String text) {
+        return NUMBER.matcher(text).matches();
+    }
+
+    private Object convert(byte[] field, int length, boolean quoted, int column, long offset) {
+        if (length == 0 && !quoted) return null;
+        if (!numeric[column]) {
+            // Only fields starting like a number are matched against the pattern.
+            byte first = field[0];
+            if (quoted || !(first >= '0' && first <= '9' || first == '-' || first == 'I' || first == 'N')) return new String(field, 0, length, StandardCharsets.UTF_8);
+            String text = new String(field, 0, length, StandardCharsets.UTF_8);
+            return isNumber(text) ? (Object) Double.parseDouble(text) : text;
+        }
+        String text = new String(field, 0, length, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid number '" + text + "' for column '" + columns[column] + "' at byte " + offset + ".");
+        }
+    }
+}
+
+// Compact binary rows for piping into other tools. Per result set:
+//   'T' varint(len) table-utf8 varint(columns) { varint(len) name-utf8 }
+//   'R' { tag value } per row, tag 0 = NULL, 1 = double (8 bytes, big-endian), 2 = varint(len) utf8
+//   'E' varint(rows)
+class BinaryResultSink implements ResultSink {
+    static final int NULL = 0;
+    static final int DOUBLE = 1;
+    static final int TEXT = 2;
+
+    private final DataOutputStream out;
+    private List<String> columns;
+    private long rows;
+
+    BinaryResultSink(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    public void begin(String tableName, List<String> columns) throws IOException {
+        this.columns = columns;
+        rows = 0;
+        out.write('T');
+        writeString(tableName);
+        writeVarint(columns.size());
+        for (String column : columns) writeString(column);
+    }
+
+    public void row(Object[] row) throws IOException {
+        out.write('R');
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = row[i];
+            if (value == null) {
+                out.write(NULL);
+            } else if (value instanceof Double) {
+                out.write(DOUBLE);
+                out.writeDouble((Double) value);
+            } else {
+                out.write(TEXT);
+                writeString(value.toString());
+            }
+        }
+        rows++;
+    }
+
+    public void end() throws IOException {
+        out.write('E');
+        writeVarint(rows);
+        out.flush();
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
+
+// Holds a statement's result sets until --parallel replays them into the real sink in script
+// order. Rows are copied because a later UPDATE may change them in place before the replay.
+class RecordingSink implements ResultSink {
+    private static final Object BEGIN = new Object();
+    private final List<Object[]> calls = new ArrayList<>();
+
+    public void begin(String tableName, List<String> columns) {
+        calls.add(new Object[]{BEGIN, tableName, columns});
+    }
+
+    public void row(Object[] row) {
+        calls.add(row.clone());
+    }
+
+    public void end() {
+        calls.add(null);
+    }
+
+    void replay(ResultSink sink) throws IOException {
+        for (Object[] call : calls) {
+            if (call == null) {
+                sink.end();
+            } else if (call.length == 3 && call[0] == BEGIN) {
+                @SuppressWarnings("unchecked")
+                List<String> columns = (List<String>) call[2];
+                sink.begin((String) call[1], columns);
+            } else {
+                sink.row(call);
+            }
+        }
+    }
+}
+
+// System.out or System.err while --parallel runs: a worker's writes go to the buffer of the
+// statement it is running, everything else straight to the stream underneath.
+class RoutedOutputStream extends OutputStream {
+    final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<>();
+    private final OutputStream out;
+
+    RoutedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    private OutputStream target() {
+        ByteArrayOutputStream statement = buffer.get();
+        return statement != null ? statement : out;
+    }
+
+    public void write(int b) throws IOException {
+        target().write(b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        target().write(b, off, len);
+    }
+
+    public void flush() throws IOException {
+        target().flush();
+    }
+}
+
+@Name("sqlcompiler.Parse")
+@Label("SQL Parse")
+@Category("SQLCompiler")
+class ParseEvent extends Event {
+    @Label("Statements")
+    int statements;
+}
+
+@Name("sqlcompiler.Plan")
+@Label("SQL Plan")
+@Category("SQLCompiler")
+class PlanEvent extends Event {
+    @Label("Table")
+    String table;
+
+    @Label("Plan")
+    String plan;
+}
+
+@Name("sqlcompiler.Execute")
+@Label("SQL Execute")
+@Category("SQLCompiler")
+class ExecuteEvent extends Event {
+    @Label("Statement Type")
+    String statementType;
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Rows Scanned")
+    long rowsScanned;
+
+    @Label("Blocks Skipped")
+    long blocksSkipped;
+
+    @Label("Failed")
+    boolean failed;
+}
+
+@Name("sqlcompiler.Load")
+@Label("Database Load")
+@Category("SQLCompiler")
+class LoadEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Tables")
+    int tables;
+
+    @Label("Rows")
+    long rows;
+}
+
+@Name("sqlcompiler.Save")
+@Label("Database Save")
+@Category("SQLCompiler")
+class SaveEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Tables")
+    int tables;
+
+    @Label("Rows")
+    long rows;
+}
+
+// Log-linear histogram in the style of HdrHistogram: each power of two is split into
+// 32 linear sub-buckets, so any recorded value is reported within ~3% of its true value.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * HALF + SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) { }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    long percentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) return Math.min(highestValueIn(i), max.get());
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / HALF - 1;
+        long subBucket = index - (long) shift * HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
+
+class StatementMetrics implements StatementMetricsMXBean {
+    private final String statementType;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder blocksSkipped = new LongAdder();
+
+    StatementMetrics(String statementType) {
+        this.statementType = statementType;
+    }
+
+    void record(long nanos, long scanned, long skipped, boolean failed) {
+        latency.record(nanos);
+        rowsScanned.add(scanned);
+        blocksSkipped.add(skipped);
+        if (failed) errors.increment();
+    }
+
+    public String getStatementType() {
+        return statementType;
+    }
+
+    public long getCount() {
+        return latency.count();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    public long getBlocksSkipped() {
+        return blocksSkipped.sum();
+    }
+
+    public double getMeanMicros() {
+        return latency.mean() / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return latency.max() / 1000.0;
+    }
+
+    public double getP50Micros() {
+        return latency.percentile(50) / 1000.0;
+    }
+
+    public double getP90Micros() {
+        return latency.percentile(90) / 1000.0;
+    }
+
+    public double getP99Micros() {
+        return latency.percentile(99) / 1000.0;
+    }
+
+    public double getP999Micros() {
+        return latency.percentile(99.9) / 1000.0;
+    }
+
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        rowsScanned.reset();
+        blocksSkipped.reset();
+    }
+}
+
+// Per-statement-type counters and latency histograms, published as MXBeans under
+// "SQLCompiler:type=StatementMetrics,name=<type>", plus the slow-query log.
+// Enabled with -Dsqlcompiler.metrics=true; JFR events are emitted regardless and cost
+// nothing unless a recording is running.
+class EngineMetrics {
+    static final boolean ENABLED = Boolean.getBoolean("sqlcompiler.metrics");
+    static final long SLOW_QUERY_NANOS = Long.getLong("sqlcompiler.slowQueryMillis", 1000L) * 1_000_000L;
+    static final String SLOW_QUERY_LOG = System.getProperty("sqlcompiler.slowQueryLog", "slow_query.log");
+
+    private static final Map<String, StatementMetrics> BY_TYPE = new ConcurrentHashMap<>();
+    private static BufferedWriter slowQueryWriter;
+
+    static StatementMetrics forType(String statementType) {
+        return BY_TYPE.computeIfAbsent(statementType, type -> {
+            StatementMetrics metrics = new StatementMetrics(type);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("SQLCompiler:type=StatementMetrics,name=" + type));
+            } catch (JMException e) {
+                System.err.println("Could not register metrics for " + type + ": " + e.getMessage());
+            }
+            return metrics;
+        });
+    }
+
+    static boolean isSlow(long nanos) {
+        return ENABLED && nanos >= SLOW_QUERY_NANOS;
+    }
+
+    static void record(String statementType, long nanos, long rowsScanned, long blocksSkipped, boolean failed) {
+        if (ENABLED) forType(statementType).record(nanos, rowsScanned, blocksSkipped, failed);
+    }
+
+    static synchronized void logSlowQuery(String sql, long nanos, long rowsScanned, long blocksSkipped) {
+        try {
+            if (slowQueryWriter == null) slowQueryWriter = new BufferedWriter(new FileWriter(SLOW_QUERY_LOG, true));
+            slowQueryWriter.write(String.format("%s duration_ms=%.3f rows_scanned=%d blocks_skipped=%d sql=%s", java.time.Instant.now(), nanos / 1e6, rowsScanned, blocksSkipped, sql));
+            slowQueryWriter.newLine();
+            slowQueryWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing slow query log: " + e.getMessage());
+        }
+    }
+}
+
+// Memory for the operators of every running query, as estimated by MemoryTracker:
+// -Dsqlcompiler.memoryPool bytes (default three quarters of the heap) shared by all queries, and
+// at most -Dsqlcompiler.queryMemory (default half the pool) for one. Queries take it GRANT bytes
+// at a time. A query is admitted once the pool can give it its first grant and otherwise waits
+// for running queries to finish, for up to -Dsqlcompiler.memoryQueueMillis. One that needs more
+// than its limit, or more than the pool has left, fails instead: queries waiting for each other's
+// memory would never finish. Published as "SQLCompiler:type=QueryMemory" with -Dsqlcompiler.metrics.
+class QueryMemoryPool implements QueryMemoryPoolMXBean {
+    static final long GRANT = 1 << 20;
+    static final QueryMemoryPool INSTANCE = new QueryMemoryPool(
+            Long.getLong("sqlcompiler.memoryPool", Runtime.getRuntime().maxMemory() / 4 * 3),
+            Long.getLong("sqlcompiler.queryMemory", -1L),
+            Long.getLong("sqlcompiler.memoryQueueMillis", 30_000L));
+
+    private final long size;
+    private final long queryLimit;
+    private final long queueMillis;
+    private long used;
+    private long peak;
+    private int running;
+    private int queued;
+    private long admitted;
+    private long rejected;
+    private long aborted;
+
+    QueryMemoryPool(long size, long queryLimit, long queueMillis) {
+        this.size = size;
+        this.queryLimit = queryLimit < 0 ? size / 2 : queryLimit;
+        this.queueMillis = queueMillis;
+        if (EngineMetrics.ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("SQLCompiler:type=QueryMemory"));
+            } catch (JMException e) {
+                System.err.println("Could not register query memory metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    synchronized MemoryTracker admit() {
+        long grant = Math.min(GRANT, Math.min(size, queryLimit));
+        long deadline = System.nanoTime() + queueMillis * 1_000_000L;
+        queued++;
+        try {
+            while (size - used < grant) {
+                long wait = (deadline - System.nanoTime()) / 1_000_000L;
+                if (wait <= 0) {
+                    rejected++;
+                    throw new RuntimeException("Query rejected: the query memory pool of " + size + " bytes stayed full for " + queueMillis + " ms.");
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for query memory.");
+        } finally {
+            queued--;
+        }
+        take(grant);
+        running++;
+        admitted++;
+        return new MemoryTracker(this, queryLimit, grant);
+    }
+
+    // More memory for a running query; false, taking nothing, if the pool has less than that left.
+    synchronized boolean grow(long bytes) {
+        if (size - used < bytes) return false;
+        take(bytes);
+        return true;
+    }
+
+    private void take(long bytes) {
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+
+    synchronized void finish(long granted) {
+        used -= granted;
+        running--;
+        notifyAll();
+    }
+
+    synchronized void aborted() {
+        aborted++;
+    }
+
+    public long getPoolBytes() {
+        return size;
+    }
+
+    public long getQueryLimitBytes() {
+        return queryLimit;
+    }
+
+    public synchronized long getUsedBytes() {
+        return used;
+    }
+
+    public synchronized long getPeakUsedBytes() {
+        return peak;
+    }
+
+    public synchronized int getRunningQueries() {
+        return running;
+    }
+
+    public synchronized int getQueuedQueries() {
+        return queued;
+    }
+
+    public synchronized long getAdmittedCount() {
+        return admitted;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    public synchronized long getAbortedCount() {
+        return aborted;
+    }
+}
+
+// The memory one query's operators hold: buffered rows (sort, the inner side of a join, partitions
+// read ahead, select() results), grouping maps and COUNT(DISTINCT) sets and sketches. Sizes are
+// estimates of the JVM objects (compressed references); rows a heap table scan returns are the
+// table's own, so holding them costs only the reference. Partitions are read on other threads,
+// hence the atomic counter.
+class MemoryTracker {
+    // For plans run outside Database's query entry points; only the plan's figures are kept.
+    static final MemoryTracker UNTRACKED = new MemoryTracker(null, Long.MAX_VALUE, 0);
+    // A map entry with its table slot, and a COUNT(*) counter.
+    static final long GROUP_BYTES = 56 + 24;
+    static final long SET_ENTRY_BYTES = 56;
+
+    private final QueryMemoryPool pool;
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+    private volatile long granted;
+
+    MemoryTracker(QueryMemoryPool pool, long limit, long granted) {
+        this.pool = pool;
+        this.limit = limit;
+        this.granted = granted;
+    }
+
+    void reserve(PlanNode node, long bytes) {
+        if (node != null) {
+            node.memoryBytes += bytes;
+            node.peakMemoryBytes = Math.max(node.peakMemoryBytes, node.memoryBytes);
+        }
+        if (pool == null) return;
+        long now = used.addAndGet(bytes);
+        String holder = node == null ? "the result" : node.operator;
+        if (now > limit) {
+            pool.aborted();
+            throw new RuntimeException("Query aborted: " + holder + " went over the query memory limit of " + limit + " bytes (-Dsqlcompiler.queryMemory).");
+        }
+        if (now > granted) grow(now, holder);
+    }
+
+    void release(PlanNode node, long bytes) {
+        if (node != null) node.memoryBytes -= bytes;
+        if (pool != null) used.addAndGet(-bytes);
+    }
+
+    private synchronized void grow(long needed, String holder) {
+        while (granted < needed) {
+            long more = Math.min(Math.max(QueryMemoryPool.GRANT, needed - granted), limit - granted);
+            if (!pool.grow(more)) {
+                pool.aborted();
+                throw new RuntimeException("Query aborted: " + holder + " needed more memory than is left in the query memory pool of " + pool.getPoolBytes() + " bytes (-Dsqlcompiler.memoryPool).");
+            }
+            granted += more;
+        }
+    }
+
+    // Returns the query's memory to the pool.
+    void close() {
+        if (pool != null) pool.finish(granted);
+    }
+
+    // A buffered row: its list slot, and unless it is `shared` with the table the array and its values.
+    static long rowBytes(Object[] row, boolean shared) {
+        if (shared) return 8;
+        long bytes = 8 + align(16 + 4L * row.length);
+        for (Object value : row) bytes += valueBytes(value);
+        return bytes;
+    }
+
+    static long valueBytes(Object value) {
+        if (value instanceof Double) return 16;
+        if (value instanceof String) return 24 + align(16 + ((String) value).length());
+        return 0;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
+
+// A ? in a prepared statement (see SQLCompiler.Prepared), numbered from 0 in the order they appear.
+// It stands for the value the statement is executed with, put in its place before each execution.
+class Parameter {
+    final int index;
+
+    Parameter(int index) {
+        this.index = index;
+    }
+}
+
+class ASTNode {
+    String type;
+    String tableName;
+    Map<String, String> columns;
+    List<List<Object>> rows;
+    String setColumn;
+    Object setValue;
+    Condition where;
+    String joinTable;
+    String joinColumn1;
+    String joinColumn2;
+    String groupByColumn;
+    String orderByColumn;
+    // SELECT APPROX_COUNT_DISTINCT(col) or COUNT(DISTINCT col) instead of *.
+    String aggregate;
+    String aggregateColumn;
+    TableSample sample;
+    ASTNode query;
+    boolean analyze;
+    String format;
+    String fileName;
+    String indexName;
+    String indexColumn;
+    Partitioning partitioning;
+    String partitionName;
+    // ADD PARTITION: the upper bound, null for MAXVALUE.
+    Object partitionBound;
+    // Column ordinals filled in by Database.bind before execution
+    int setOrdinal = -1;
+    int joinOrdinal1 = -1;
+    int joinOrdinal2 = -1;
+    int groupByOrdinal = -1;
+    int orderByOrdinal = -1;
+    int aggregateOrdinal = -1;
+    int firstToken;
+    int lastToken;
+
+    ASTNode(String type) {
+        this.type = type;
+    }
+}
+
+// WHERE expression tree. Leaves test one column against literals (=, <>, <, <=, >, >=, IN,
+// BETWEEN, LIKE, IS [NOT] NULL); AND and OR nodes combine them. NOT is folded into the leaves as
+// the tree is built (NOT a = 1 is a <> 1, De Morgan for AND and OR), so a leaf on a NULL column
+// is simply false and "unknown is not true" holds without three-valued evaluation.
+class Condition {
+    String op;
+    List<Condition> children = new ArrayList<>();
+    String column;
+    // The column's position in the statement's rows (base columns, then join columns); set by Database.bind.
+    int ordinal = -1;
+    // One literal for comparisons, two for BETWEEN, the list for IN.
+    List<Object> values = new ArrayList<>();
+    // NOT IN, NOT BETWEEN, NOT LIKE.
+    boolean negated;
+
+    static Condition leaf(String op, String column, Object... values) {
+        Condition leaf = new Condition();
+        leaf.op = op;
+        leaf.column = column;
+        leaf.values.addAll(Arrays.asList(values));
+        return leaf;
+    }
+
+    // AND / OR; nested nodes of the same kind are flattened.
+    static Condition combine(String op, List<Condition> terms) {
+        Condition node = new Condition();
+        node.op = op;
+        for (Condition term : terms) {
+            if (op.equals(term.op)) node.children.addAll(term.children);
+            else node.children.add(term);
+        }
+        return node;
+    }
+
+    boolean isLeaf() {
+        return !"AND".equals(op) && !"OR".equals(op);
+    }
+
+    Condition not() {
+        if (!isLeaf()) {
+            List<Condition> terms = new ArrayList<>();
+            for (Condition child : children) terms.add(child.not());
+            return combine("AND".equals(op) ? "OR" : "AND", terms);
+        }
+        Condition leaf = leaf(op, column, values.toArray());
+        leaf.ordinal = ordinal;
+        switch (op) {
+            case "=": leaf.op = "<>"; break;
+            case "<>": leaf.op = "="; break;
+            case "<": leaf.op = ">="; break;
+            case ">=": leaf.op = "<"; break;
+            case ">": leaf.op = "<="; break;
+            case "<=": leaf.op = ">"; break;
+            case "IS NULL": leaf.op = "IS NOT NULL"; break;
+            case "IS NOT NULL": leaf.op = "IS NULL"; break;
+            default: leaf.negated = !negated;
+        }
+        return leaf;
+    }
+
+    // The top-level AND terms.
+    List<Condition> conjuncts() {
+        return "AND".equals(op) ? new ArrayList<>(children) : new ArrayList<>(Collections.singletonList(this));
+    }
+
+    // True when every column referenced has an ordinal in [from, to).
+    boolean within(int from, int to) {
+        if (isLeaf()) return ordinal >= from && ordinal < to;
+        for (Condition child : children) if (!child.within(from, to)) return false;
+        return true;
+    }
+
+    // Rough share of rows that pass, for ordering terms; there are no column statistics to do better.
+    double selectivity() {
+        double s;
+        switch (op) {
+            case "AND":
+                s = 1;
+                for (Condition child : children) s *= child.selectivity();
+                return s;
+            case "OR":
+                s = 1;
+                for (Condition child : children) s *= 1 - child.selectivity();
+                return 1 - s;
+            case "=": case "IS NULL": return 0.1;
+            case "<>": case "IS NOT NULL": return 0.9;
+            case "IN": s = Math.min(1, 0.1 * values.size()); break;
+            case "BETWEEN": s = 0.25; break;
+            case "LIKE": s = 0.25; break;
+            default: s = 1 / 3.0;
+        }
+        return negated ? 1 - s : s;
+    }
+
+    // Relative cost of evaluating against one row.
+    double cost() {
+        switch (op) {
+            case "AND":
+            case "OR":
+                double c = 0;
+                for (Condition child : children) c += child.cost();
+                return c;
+            case "IS NULL": case "IS NOT NULL": return 1;
+            case "=": case "<>": case "IN": return 2;
+            case "LIKE": return 20;
+            default: return 3;
+        }
+    }
+
+    // AND terms run cheapest-per-row-rejected first (cost / (1 - selectivity)); OR terms
+    // cheapest-per-row-accepted first (cost / selectivity).
+    static void order(List<Condition> terms, boolean conjunction) {
+        terms.sort(Comparator.comparingDouble(t -> t.cost() / Math.max(1e-9, conjunction ? 1 - t.selectivity() : t.selectivity())));
+    }
+
+    // Row predicate for rows in which this table's columns start at `offset`.
+    Predicate<Object[]> compile(int offset) {
+        if (!isLeaf()) {
+            List<Condition> terms = new ArrayList<>(children);
+            order(terms, "AND".equals(op));
+            List<Predicate<Object[]>> tests = new ArrayList<>();
+            for (Condition term : terms) tests.add(term.compile(offset));
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Predicate<Object[]>[] all = tests.toArray(new Predicate[0]);
+            if ("AND".equals(op)) {
+                return row -> {
+                    for (Predicate<Object[]> test : all) if (!test.test(row)) return false;
+                    return true;
+                };
+            }
+            return row -> {
+                for (Predicate<Object[]> test : all) if (test.test(row)) return true;
+                return false;
+            };
+        }
+        int i = ordinal - offset;
+        Predicate<Object> test = valueTest();
+        return row -> test.test(row[i]);
+    }
+
+    // compile() for rows still encoded in an OffHeapRowList: only the column tested is read, and
+    // numbers and text equality are compared without decoding it.
+    OffHeapRowList.RowTest encodedTest(int offset) {
+        if (!isLeaf()) {
+            List<Condition> terms = new ArrayList<>(children);
+            order(terms, "AND".equals(op));
+            OffHeapRowList.RowTest[] all = new OffHeapRowList.RowTest[terms.size()];
+            for (int t = 0; t < all.length; t++) all[t] = terms.get(t).encodedTest(offset);
+            if ("AND".equals(op)) {
+                return (segment, row) -> {
+                    for (OffHeapRowList.RowTest test : all) if (!test.test(segment, row)) return false;
+                    return true;
+                };
+            }
+            return (segment, row) -> {
+                for (OffHeapRowList.RowTest test : all) if (test.test(segment, row)) return true;
+                return false;
+            };
+        }
+        int i = ordinal - offset;
+        Object v = values.isEmpty() ? null : values.get(0);
+        switch (op) {
+            case "IS NULL": return (segment, row) -> OffHeapRowList.field(segment, row, i) < 0;
+            case "IS NOT NULL": return (segment, row) -> OffHeapRowList.field(segment, row, i) >= 0;
+            case "=":
+            case "<>": {
+                boolean equal = "=".equals(op);
+                if (v instanceof Double) {
+                    double d = (Double) v;
+                    return (segment, row) -> {
+                        int field = OffHeapRowList.field(segment, row, i);
+                        return field >= 0 && (OffHeapRowList.isNumber(segment, field) && Double.compare(OffHeapRowList.number(segment, field), d) == 0) == equal;
+                    };
+                }
+                if (v instanceof String) {
+                    byte[] text = ((String) v).getBytes(StandardCharsets.UTF_8);
+                    return (segment, row) -> {
+                        int field = OffHeapRowList.field(segment, row, i);
+                        return field >= 0 && OffHeapRowList.textEquals(segment, field, text) == equal;
+                    };
+                }
+                break;
+            }
+            case "<":
+            case "<=":
+            case ">":
+            case ">=": {
+                if (!(v instanceof Double)) break;
+                double d = (Double) v;
+                IntPredicate sign = "<".equals(op) ? c -> c < 0 : "<=".equals(op) ? c -> c <= 0 : ">".equals(op) ? c -> c > 0 : c -> c >= 0;
+                return (segment, row) -> {
+                    int field = OffHeapRowList.field(segment, row, i);
+                    return field >= 0 && OffHeapRowList.isNumber(segment, field) && sign.test(Double.compare(OffHeapRowList.number(segment, field), d));
+                };
+            }
+            case "BETWEEN": {
+                if (!(v instanceof Double) || !(values.get(1) instanceof Double)) break;
+                double low = (Double) v;
+                double high = (Double) values.get(1);
+                return (segment, row) -> {
+                    int field = OffHeapRowList.field(segment, row, i);
+                    if (field < 0 || !OffHeapRowList.isNumber(segment, field)) return false;
+                    double x = OffHeapRowList.number(segment, field);
+                    return (Double.compare(x, low) >= 0 && Double.compare(x, high) <= 0) != negated;
+                };
+            }
+        }
+        // Anything else decodes just this value.
+        Predicate<Object> test = valueTest();
+        return (segment, row) -> {
+            int field = OffHeapRowList.field(segment, row, i);
+            return test.test(field < 0 ? null : OffHeapRowList.value(segment, field));
+        };
+    }
+
+    // The leaf's test on a single column value.
+    Predicate<Object> valueTest() {
+        Object v = values.isEmpty() ? null : values.get(0);
+        switch (op) {
+            case "IS NULL": return x -> x == null;
+            case "IS NOT NULL": return x -> x != null;
+            case "=": return v::equals;
+            case "<>": return x -> x != null && !v.equals(x);
+            case "<": return x -> comparable(x, v) && Database.compareValues(x, v) < 0;
+            case "<=": return x -> comparable(x, v) && Database.compareValues(x, v) <= 0;
+            case ">": return x -> comparable(x, v) && Database.compareValues(x, v) > 0;
+            case ">=": return x -> comparable(x, v) && Database.compareValues(x, v) >= 0;
+            case "IN": {
+                Set<Object> set = new HashSet<>(values);
+                return x -> x != null && set.contains(x) != negated;
+            }
+            case "BETWEEN": {
+                Object high = values.get(1);
+                return x -> comparable(x, v) && comparable(x, high) && (Database.compareValues(x, v) >= 0 && Database.compareValues(x, high) <= 0) != negated;
+            }
+            case "LIKE": {
+                Pattern like = Database.likeToRegex((String) v);
+                return x -> x != null && like.matcher(x.toString()).matches() != negated;
+            }
+            default: throw new RuntimeException("Unknown condition '" + op + "'.");
+        }
+    }
+
+    // Numbers only compare with numbers and strings with strings; anything else is not true.
+    private static boolean comparable(Object x, Object v) {
+        return x != null && x.getClass() == v.getClass();
+    }
+
+    // False when the zone map shows no row of the block can match.
+    boolean mayMatch(ZoneMap zones, int block, int offset) {
+        switch (op) {
+            case "AND":
+                for (Condition child : children) if (!child.mayMatch(zones, block, offset)) return false;
+                return true;
+            case "OR":
+                for (Condition child : children) if (child.mayMatch(zones, block, offset)) return true;
+                return false;
+        }
+        int i = ordinal - offset;
+        int nulls = zones.nulls(block, i);
+        if ("IS NULL".equals(op)) return nulls > 0;
+        // Every other leaf is false on NULL.
+        if (nulls == zones.rows(block)) return false;
+        if (negated) return true;
+        Object v = values.isEmpty() ? null : values.get(0);
+        switch (op) {
+            case "=": return zones.mayEqual(block, i, v);
+            case "IN":
+                for (Object value : values) if (zones.mayEqual(block, i, value)) return true;
+                return false;
+            case "<": return zones.mayOverlap(block, i, null, false, v, false);
+            case "<=": return zones.mayOverlap(block, i, null, false, v, true);
+            case ">": return zones.mayOverlap(block, i, v, false, null, false);
+            case ">=": return zones.mayOverlap(block, i, v, true, null, false);
+            case "BETWEEN": return zones.mayOverlap(block, i, v, true, values.get(1), true);
+            default: return true;
+        }
+    }
+
+    // Positions (deleted rows included) of the rows that match, combined from bitmap indexes with
+    // bitwise AND / OR / AND NOT; null unless every column referenced has one. Names of the indexes
+    // used are added to `used`.
+    RoaringBitmap bitmap(TableSchema schema, int offset, List<String> used) {
+        if (!isLeaf()) {
+            RoaringBitmap result = null;
+            for (Condition child : children) {
+                RoaringBitmap positions = child.bitmap(schema, offset, used);
+                if (positions == null) return null;
+                if (result == null) result = positions;
+                else result = "AND".equals(op) ? RoaringBitmap.and(result, positions) : RoaringBitmap.or(result, positions);
+            }
+            return result;
+        }
+        BitmapIndex index = schema.get(ordinal - offset).index;
+        if (index == null) return null;
+        if (!used.contains(index.name)) used.add(index.name);
+        switch (op) {
+            case "IS NULL": return index.nulls();
+            case "IS NOT NULL": return index.notNulls();
+            case "=": return index.equal(values.get(0));
+            case "<>": return RoaringBitmap.andNot(index.notNulls(), index.equal(values.get(0)));
+            default: return index.matching(valueTest());
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!isLeaf()) {
+            StringBuilder sb = new StringBuilder();
+            for (Condition child : children) {
+                if (sb.length() > 0) sb.append(' ').append(op).append(' ');
+                sb.append(child.isLeaf() ? child.toString() : "(" + child + ")");
+            }
+            return sb.toString();
+        }
+        String not = negated ? "NOT " : "";
+        switch (op) {
+            case "IS NULL": case "IS NOT NULL": return column + " " + op;
+            case "LIKE": return column + " " + not + "LIKE '" + values.get(0) + "'";
+            case "BETWEEN": return column + " " + not + "BETWEEN " + values.get(0) + " AND " + values.get(1);
+            case "IN": {
+                StringBuilder sb = new StringBuilder(column).append(' ').append(not).append("IN (");
+                for (int i = 0; i < values.size(); i++) sb.append(i > 0 ? ", " : "").append(values.get(i));
+                return sb.append(')').toString();
+            }
+            default: return column + " " + op + " " + values.get(0);
+        }
+    }
+}
+
+class StatementReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final Reader reader;
+    private final StringBuilder statement = new StringBuilder();
+    private int line = 1;
+    private int startLine = -1;
+    private int lookahead = -1;
+
+    StatementReader(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    // Returns the next ';'-terminated statement with comments blanked out, or null at end of input.
+    // Line breaks inside the statement are kept so token positions map back to the source file.
+    String next() throws IOException {
+        statement.setLength(0);
+        startLine = -1;
+        boolean inString = false;
+        int ch;
+        while ((ch = read()) != -1) {
+            if (ch == '\n') line++;
+            if (inString) {
+                statement.append((char) ch);
+                if (ch == '\'') inString = false;
+                continue;
+            }
+            if (ch == '-' && peek() == '-') {
+                while ((ch = peek()) != -1 && ch != '\n') read();
+                continue;
+            }
+            if (ch == '/' && peek() == '*') {
+                read();
+                int prev = 0;
+                while ((ch = read()) != -1 && !(prev == '*' && ch == '/')) {
+                    if (ch == '\n') {
+                        line++;
+                        if (startLine != -1) statement.append('\n');
+                    }
+                    prev = ch;
+                }
+                statement.append(' ');
+                continue;
+            }
+            if (ch == ';') {
+                if (startLine != -1) return statement.toString();
+                continue;
+            }
+            if (startLine == -1) {
+                if (Character.isWhitespace(ch)) continue;
+                startLine = line;
+            }
+            if (ch == '\'') inString = true;
+            statement.append((char) ch);
+        }
+        return startLine != -1 ? statement.toString() : null;
+    }
+
+    int startLine() {
+        return startLine;
+    }
+
+    private int read() throws IOException {
+        if (lookahead != -1) {
+            int ch = lookahead;
+            lookahead = -1;
+            return ch;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == -1) lookahead = reader.read();
+        return lookahead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        channel.close();
+    }
+}
+
+public class SQLCompiler {
+    private static final String[] KEYWORDS = {"CREATE", "TABLE", "INSERT", "INTO", "VALUES", "SELECT", "FROM", "DELETE", "UPDATE", "SET", "WHERE", "ALTER", "ADD", "DROP", "GROUP", "BY", "ORDER", "JOIN", "ON", "LIKE", "IS", "NULL", "NOT", "EXPLAIN", "ANALYZE", "COPY", "CHECKPOINT", "AND", "OR", "IN", "BETWEEN"};
+    private static final String OPERATORS = "(),*=;.?";
+    private static final List<String> COMPARISONS = Arrays.asList("=", "<>", "!=", "<", "<=", ">", ">=");
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+    private static final Pattern STRING_PATTERN = Pattern.compile("'[^']*'");
+    // -Dsqlcompiler.checkpointSeconds=N starts a background checkpoint every N seconds; 0 (default) disables.
+    private static final long CHECKPOINT_NANOS = Long.getLong("sqlcompiler.checkpointSeconds", 0) * 1_000_000_000L;
+    // -Dsqlcompiler.pipelineDepth: how many parsed statements the --pipeline parser may run ahead of execution.
+    private static final int PIPELINE_DEPTH = Integer.getInteger("sqlcompiler.pipelineDepth", 1024);
+    // Statements are handed over in batches, so the threads synchronise once per batch.
+    private static final int PIPELINE_BATCH = 64;
+    private static final Parsed END_OF_SCRIPT = new Parsed(-1, null, null, null);
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // -Dsqlcompiler.workers: how many statements --parallel runs at once (default: one per core).
+    private static final int WORKERS = Integer.getInteger("sqlcompiler.workers", Runtime.getRuntime().availableProcessors());
+
+    private String input;
+    private List<Token> tokens = new ArrayList<>();
+    private int pos = 0;
+    private int firstLine = 1;
+    private Database db;
+    private String databaseFile;
+    private ResultSink sink;
+    private long lastCheckpoint = System.nanoTime();
+    // Whether ? is accepted as a value, for prepared statements; the number seen so far.
+    private boolean allowParameters;
+    private int parameters;
+
+    public SQLCompiler(String input) {
+        this(input, new Database(), "database.txt");
+    }
+
+    SQLCompiler(String input, Database db, String databaseFile) {
+        this(input, db, databaseFile, new TextResultSink(System.out));
+    }
+
+    SQLCompiler(String input, Database db, String databaseFile, ResultSink sink) {
+        this.input = input;
+        this.db = db;
+        this.databaseFile = databaseFile;
+        this.sink = sink;
+    }
+
+    // Parses a single SELECT, such as a saved materialized view definition.
+    static ASTNode parseQuery(String sql) {
+        List<ASTNode> statements = new SQLCompiler(preprocessInput(sql), null, null, null).parse();
+        if (statements.size() != 1 || !"Select".equals(statements.get(0).type)) throw new RuntimeException("Expected a single SELECT: " + sql);
+        return statements.get(0);
+    }
+
+    // The engine as the JDBC driver (SQLCompilerDriver.java and the Jdbc*.java files) uses it.
+    // Those files only name SQLCompiler, its nested classes and QueryCursor: the engine's other
+    // classes are auxiliary classes of this file.
+
+    // The database of one file, shared by the driver's connections to it.
+    static final class Engine {
+        private final Database db = new Database();
+        private final String file;
+
+        Engine(String file) {
+            this.file = file;
+            db.setQuiet(true);
+        }
+
+        void load() throws IOException {
+            db.loadFromFile(file);
+        }
+
+        void save() throws IOException {
+            db.saveToFile(file);
+        }
+
+        // Parses the one statement in `sql`, whose values may be ? parameters if `parameters` is set.
+        Prepared prepare(String sql, boolean parameters) {
+            SQLCompiler compiler = new SQLCompiler(preprocessInput(sql), db, file, new TextResultSink(OutputStream.nullOutputStream()));
+            compiler.allowParameters = parameters;
+            List<ASTNode> statements = compiler.parse();
+            if (statements.size() != 1) throw new RuntimeException("Expected one statement, got " + statements.size() + ": " + sql);
+            return new Prepared(compiler, statements.get(0), sql);
+        }
+    }
+
+    // A statement parsed once and run any number of times. ? stands for a value in VALUES, SET and
+    // WHERE; bind() puts the values in the parameters' places in the tree before each run.
+    static final class Prepared {
+        private final SQLCompiler compiler;
+        private final ASTNode node;
+        // INSERT: the rows as parsed, with Parameters in them.
+        private List<List<Object>> template;
+        // Elsewhere: where each parameter goes.
+        private final List<Slot> slots = new ArrayList<>();
+        private int setValueParameter = -1;
+
+        // A parameter in a WHERE literal list.
+        private static final class Slot {
+            final Condition condition;
+            final int position;
+            final int parameter;
+
+            Slot(Condition condition, int position, int parameter) {
+                this.condition = condition;
+                this.position = position;
+                this.parameter = parameter;
+            }
+        }
+
+        private Prepared(SQLCompiler compiler, ASTNode node, String sql) {
+            this.compiler = compiler;
+            this.node = node;
+            if (compiler.parameters == 0) return;
+            switch (node.type) {
+                case "Insert":
+                    template = node.rows;
+                    break;
+                case "Explain":
+                    collect(node.query.where);
+                    break;
+                case "Select":
+                case "Delete":
+                case "Update":
+                    collect(node.where);
+                    if (node.setValue instanceof Parameter) setValueParameter = ((Parameter) node.setValue).index;
+                    break;
+                default:
+                    throw new RuntimeException("Parameters (?) are only supported in INSERT, SELECT, UPDATE, DELETE and EXPLAIN: " + sql);
+            }
+        }
+
+        private void collect(Condition condition) {
+            if (condition == null) return;
+            for (int i = 0; i < condition.values.size(); i++) {
+                if (condition.values.get(i) instanceof Parameter) slots.add(new Slot(condition, i, ((Parameter) condition.values.get(i)).index));
             }
+            for (Condition child : condition.children) collect(child);
         }
-        System.out.println("Database loaded from " + filename);
-    }
-}
 
-class ASTNode {
-    String type;
-    String tableName;
-    Map<String, String> columns;
-    List<Object> values;
-    String setColumn;
-    Object setValue;
-    String whereColumn;
-    Object whereValue;
-    String likePattern;
-    boolean isNullCheck;
-    boolean isNotNullCheck;
-    String joinTable;
-    String joinColumn1;
-    String joinColumn2;
-    String groupByColumn;
-    String orderByColumn;
+        int parameterCount() {
+            return compiler.parameters;
+        }
 
-    ASTNode(String type) {
-        this.type = type;
-    }
-}
+        // SELECT or EXPLAIN: run with query(), everything else with execute().
+        boolean isQuery() {
+            return "Select".equals(node.type) || "Explain".equals(node.type);
+        }
 
-public class SQLCompiler {
-    private static final String[] KEYWORDS = {"CREATE", "TABLE", "INSERT", "INTO", "VALUES", "SELECT", "FROM", "DELETE", "UPDATE", "SET", "WHERE", "ALTER", "ADD", "DROP", "GROUP", "BY", "ORDER", "JOIN", "ON", "LIKE", "IS", "NULL", "NOT"};
-    private static final String OPERATORS = "(),*=;";
-    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
-    private static final Pattern STRING_PATTERN = Pattern.compile("'[^']*'");
+        boolean isExplain() {
+            return "Explain".equals(node.type);
+        }
 
-    private String input;
-    private List<Token> tokens = new ArrayList<>();
-    private int pos = 0;
-    private Database db = new Database();
+        // An INSERT with parameters, whose batches bindBatch() turns into one insert.
+        boolean insertsBatch() {
+            return template != null;
+        }
 
-    public SQLCompiler(String input) {
-        this.input = input;
+        // Puts one set of values in the parameters' places.
+        void bind(Object[] values) {
+            if (template != null) {
+                node.rows = bound(template, values, new ArrayList<>(template.size()));
+                return;
+            }
+            for (Slot slot : slots) {
+                Object value = values[slot.parameter];
+                if (value == null) throw new RuntimeException("Parameter " + (slot.parameter + 1) + " in WHERE is NULL, which compares with nothing; use IS NULL.");
+                if ("LIKE".equals(slot.condition.op) && !(value instanceof String)) throw new RuntimeException("LIKE needs a string pattern, parameter " + (slot.parameter + 1) + " is " + value + ".");
+                slot.condition.values.set(slot.position, value);
+            }
+            if (setValueParameter >= 0) node.setValue = values[setValueParameter];
+        }
+
+        // Puts the rows of every set of values in the INSERT; returns how many rows each set has.
+        int bindBatch(List<Object[]> batch) {
+            List<List<Object>> rows = new ArrayList<>(template.size() * batch.size());
+            for (Object[] values : batch) bound(template, values, rows);
+            node.rows = rows;
+            return template.size();
+        }
+
+        private static List<List<Object>> bound(List<List<Object>> template, Object[] values, List<List<Object>> rows) {
+            for (List<Object> row : template) {
+                List<Object> copy = new ArrayList<>(row.size());
+                for (Object value : row) copy.add(value instanceof Parameter ? values[((Parameter) value).index] : value);
+                rows.add(copy);
+            }
+            return rows;
+        }
+
+        // Runs a statement that isn't a query and returns its row count.
+        long execute() {
+            return compiler.execute(node);
+        }
+
+        // A SELECT's rows, read as the cursor is (see Database.openCursor); EXPLAIN's plan, one
+        // line per row, already complete.
+        QueryCursor query() {
+            Database db = compiler.db;
+            db.bind(node);
+            if (!isExplain()) return db.openCursor(node);
+            List<Object[]> lines = planLines(db.explain(node.query, node.analyze), node.format);
+            return new QueryCursor(List.of("QUERY PLAN"), List.of("TEXT"), false, lines.iterator(), () -> { });
+        }
+    }
+
+    // EXPLAIN's result: the plan as text or JSON, one line per row of a QUERY PLAN column.
+    static List<Object[]> planLines(PlanNode plan, String format) {
+        String text = "JSON".equals(format) ? plan.toJson() : plan.toText();
+        List<Object[]> lines = new ArrayList<>();
+        for (String line : text.split("\n")) lines.add(new Object[] {line});
+        return lines;
     }
 
-    private static String preprocessInput(String rawInput) {
+    static String preprocessInput(String rawInput) {
         StringBuilder result = new StringBuilder();
         String[] lines = rawInput.split("\n");
         for (String line : lines) {
@@ -258,12 +5127,15 @@ public class SQLCompiler {
         return result.toString();
     }
 
-    private void tokenize() {
-        int line = 1, column = 1;
+    List<Token> tokenize() {
+        int line = firstLine, column = 1;
         String[] lines = input.split("\n");
         for (String currentLine : lines) {
             int i = 0;
             column = 1;
+            Matcher idMatcher = IDENTIFIER_PATTERN.matcher(currentLine);
+            Matcher numMatcher = NUMBER_PATTERN.matcher(currentLine);
+            Matcher strMatcher = STRING_PATTERN.matcher(currentLine);
             while (i < currentLine.length()) {
                 char ch = currentLine.charAt(i);
                 if (Character.isWhitespace(ch)) {
@@ -277,8 +5149,15 @@ public class SQLCompiler {
                     column++;
                     continue;
                 }
-                String rest = currentLine.substring(i);
-                Matcher idMatcher = IDENTIFIER_PATTERN.matcher(rest);
+                if (ch == '<' || ch == '>' || ch == '!') {
+                    char next = i + 1 < currentLine.length() ? currentLine.charAt(i + 1) : ' ';
+                    String op = next == '=' || (ch == '<' && next == '>') ? "" + ch + next : String.valueOf(ch);
+                    tokens.add(new Token("OPERATOR", op, line, column));
+                    i += op.length();
+                    column += op.length();
+                    continue;
+                }
+                idMatcher.region(i, currentLine.length());
                 if (idMatcher.lookingAt()) {
                     String word = idMatcher.group();
                     String type = Arrays.asList(KEYWORDS).contains(word.toUpperCase()) ? "KEYWORD" : "IDENTIFIER";
@@ -287,7 +5166,7 @@ public class SQLCompiler {
                     column += word.length();
                     continue;
                 }
-                Matcher numMatcher = NUMBER_PATTERN.matcher(rest);
+                numMatcher.region(i, currentLine.length());
                 if (numMatcher.lookingAt()) {
                     String number = numMatcher.group();
                     tokens.add(new Token("NUMBER", number, line, column));
@@ -295,7 +5174,7 @@ public class SQLCompiler {
                     column += number.length();
                     continue;
                 }
-                Matcher strMatcher = STRING_PATTERN.matcher(rest);
+                strMatcher.region(i, currentLine.length());
                 if (strMatcher.lookingAt()) {
                     String str = strMatcher.group();
                     tokens.add(new Token("STRING", str.substring(1, str.length() - 1), line, column));
@@ -308,16 +5187,29 @@ public class SQLCompiler {
             }
             line++;
         }
+        return tokens;
     }
 
-    private List<ASTNode> parse() {
+    List<ASTNode> parse() {
+        ParseEvent event = new ParseEvent();
+        event.begin();
         tokenize();
         List<ASTNode> statements = new ArrayList<>();
         while (pos < tokens.size()) {
+            int first = pos;
             ASTNode stmt = parseStatement();
-            if (stmt != null) statements.add(stmt);
+            if (stmt != null) {
+                stmt.firstToken = first;
+                stmt.lastToken = pos;
+                statements.add(stmt);
+            }
             if (pos < tokens.size() && ";".equals(currentToken().value)) pos++;
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.statements = statements.size();
+            event.commit();
+        }
         return statements;
     }
 
@@ -326,25 +5218,66 @@ public class SQLCompiler {
         if (current == null) return null;
         if ("KEYWORD".equals(current.type)) {
             switch (current.value) {
-                case "CREATE": return parseCreateTable();
+                case "CREATE": return parseCreate();
                 case "INSERT": return parseInsert();
                 case "SELECT": return parseSelect();
                 case "DELETE": return parseDelete();
                 case "UPDATE": return parseUpdate();
                 case "ALTER": return parseAlterTable();
                 case "DROP": return parseDropTable();
+                case "EXPLAIN": return parseExplain();
+                case "COPY": return parseCopy();
+                case "CHECKPOINT": return parseCheckpoint();
             }
         }
         pos++;
         return null;
     }
 
+    private ASTNode parseCreate() {
+        Token next = pos + 1 < tokens.size() ? tokens.get(pos + 1) : null;
+        if (next != null && "BITMAP".equals(next.value)) return parseCreateIndex();
+        if (next != null && "MATERIALIZED".equals(next.value)) return parseCreateView();
+        return parseCreateTable();
+    }
+
+    // CREATE MATERIALIZED VIEW name AS SELECT ... GROUP BY ...
+    private ASTNode parseCreateView() {
+        consume("KEYWORD", "CREATE");
+        consume("IDENTIFIER", "MATERIALIZED");
+        consume("IDENTIFIER", "VIEW");
+        ASTNode node = new ASTNode("CreateView");
+        node.tableName = consume("IDENTIFIER").value;
+        consume("IDENTIFIER", "AS");
+        // The SELECT's own tokens are its definition (see sqlText).
+        int first = pos;
+        node.query = parseSelect();
+        node.query.firstToken = first;
+        node.query.lastToken = pos;
+        return node;
+    }
+
+    // CREATE BITMAP INDEX name ON table (column)
+    private ASTNode parseCreateIndex() {
+        consume("KEYWORD", "CREATE");
+        consume("IDENTIFIER", "BITMAP");
+        consume("IDENTIFIER", "INDEX");
+        ASTNode node = new ASTNode("CreateIndex");
+        node.indexName = consume("IDENTIFIER").value;
+        consume("KEYWORD", "ON");
+        node.tableName = consume("IDENTIFIER").value;
+        consume("OPERATOR", "(");
+        node.indexColumn = consume("IDENTIFIER").value;
+        consume("OPERATOR", ")");
+        return node;
+    }
+
     private ASTNode parseCreateTable() {
         consume("KEYWORD", "CREATE");
         consume("KEYWORD", "TABLE");
         Token tableName = consume("IDENTIFIER");
         consume("OPERATOR", "(");
-        Map<String, String> columns = new HashMap<>();
+        Map<String, String> columns = new LinkedHashMap<>();
         while (currentToken() != null && !")".equals(currentToken().value)) {
             Token colName = consume("IDENTIFIER");
             Token colType = consume("IDENTIFIER");
@@ -355,46 +5288,183 @@ public class SQLCompiler {
         ASTNode node = new ASTNode("CreateTable");
         node.tableName = tableName.value;
         node.columns = columns;
+        if (currentToken() != null && "PARTITION".equals(currentToken().value)) node.partitioning = parsePartitioning();
         return node;
     }
 
+    // PARTITION BY HASH (column) PARTITIONS n
+    // PARTITION BY RANGE (column) (PARTITION name VALUES LESS THAN (value | MAXVALUE), ...)
+    private Partitioning parsePartitioning() {
+        consume("IDENTIFIER", "PARTITION");
+        consume("KEYWORD", "BY");
+        Token kind = consume("IDENTIFIER");
+        consume("OPERATOR", "(");
+        String column = consume("IDENTIFIER").value;
+        consume("OPERATOR", ")");
+        if ("HASH".equals(kind.value)) {
+            consume("IDENTIFIER", "PARTITIONS");
+            return Partitioning.hash(column, (int) Double.parseDouble(consume("NUMBER").value));
+        }
+        if (!"RANGE".equals(kind.value)) throw new RuntimeException("Expected HASH or RANGE at " + kind.line + ":" + kind.column);
+        Partitioning partitioning = Partitioning.range(column);
+        consume("OPERATOR", "(");
+        while (true) {
+            consume("IDENTIFIER", "PARTITION");
+            String name = consume("IDENTIFIER").value;
+            partitioning.addRange(name, parseLessThan());
+            if (currentToken() == null || !",".equals(currentToken().value)) break;
+            consume("OPERATOR", ",");
+        }
+        consume("OPERATOR", ")");
+        return partitioning;
+    }
+
+    // VALUES LESS THAN (value) or (MAXVALUE); null for MAXVALUE.
+    private Object parseLessThan() {
+        consume("KEYWORD", "VALUES");
+        consume("IDENTIFIER", "LESS");
+        consume("IDENTIFIER", "THAN");
+        consume("OPERATOR", "(");
+        Object bound = null;
+        if (currentToken() != null && "MAXVALUE".equals(currentToken().value)) consume("IDENTIFIER", "MAXVALUE");
+        else bound = parseWhereValue();
+        consume("OPERATOR", ")");
+        return bound;
+    }
+
     private ASTNode parseInsert() {
         consume("KEYWORD", "INSERT");
         consume("KEYWORD", "INTO");
         Token tableName = consume("IDENTIFIER");
         consume("KEYWORD", "VALUES");
+        List<List<Object>> rows = new ArrayList<>();
+        rows.add(parseValueList());
+        while (currentToken() != null && ",".equals(currentToken().value)) {
+            consume("OPERATOR", ",");
+            rows.add(parseValueList());
+        }
+        ASTNode node = new ASTNode("Insert");
+        node.tableName = tableName.value;
+        node.rows = rows;
+        return node;
+    }
+
+    private List<Object> parseValueList() {
         consume("OPERATOR", "(");
         List<Object> values = new ArrayList<>();
         while (currentToken() != null && !")".equals(currentToken().value)) {
-            Token val = currentToken();
-            if ("NUMBER".equals(val.type)) values.add(Double.parseDouble(consume("NUMBER").value));
-            else if ("STRING".equals(val.type)) values.add(consume("STRING").value);
-            else throw new RuntimeException("Invalid value at " + val.line + ":" + val.column);
+            values.add(parseLiteral());
             if (currentToken() != null && ",".equals(currentToken().value)) consume("OPERATOR", ",");
         }
         consume("OPERATOR", ")");
-        ASTNode node = new ASTNode("Insert");
-        node.tableName = tableName.value;
-        node.values = values;
-        return node;
+        return values;
+    }
+
+    private Object parseLiteral() {
+        Token val = currentToken();
+        if (val == null) throw new RuntimeException("Expected value at EOF");
+        if ("?".equals(val.value)) return parseParameter();
+        if ("NUMBER".equals(val.type)) return Double.parseDouble(consume("NUMBER").value);
+        if ("STRING".equals(val.type)) return consume("STRING").value;
+        if ("NULL".equals(val.value)) {
+            consume("KEYWORD", "NULL");
+            return null;
+        }
+        throw new RuntimeException("Invalid value at " + val.line + ":" + val.column);
+    }
+
+    private Parameter parseParameter() {
+        Token token = consume("OPERATOR", "?");
+        if (!allowParameters) throw new RuntimeException("Parameter (?) outside a prepared statement at " + token.line + ":" + token.column);
+        return new Parameter(parameters++);
+    }
+
+    // TABLE.COLUMN or COLUMN, returned as {qualifier or null, column}.
+    private String[] parseQualifiedName() {
+        Token first = consume("IDENTIFIER");
+        if (currentToken() == null || !".".equals(currentToken().value)) return new String[] {null, first.value};
+        consume("OPERATOR", ".");
+        return new String[] {first.value, consume("IDENTIFIER").value};
+    }
+
+    // Column reference as it is keyed in result rows: columns of the joined table carry their table prefix.
+    private String parseColumnRef(ASTNode node) {
+        return columnRef(parseQualifiedName(), node);
+    }
+
+    private static String columnRef(String[] name, ASTNode node) {
+        if (name[0] != null && name[0].equals(node.joinTable)) return node.joinTable + "." + name[1];
+        return name[1];
+    }
+
+    // TABLESAMPLE [BERNOULLI | SYSTEM] (percent [PERCENT]) [REPEATABLE (seed)]; SYSTEM by default.
+    private TableSample parseTableSample() {
+        consume("IDENTIFIER", "TABLESAMPLE");
+        boolean system = true;
+        Token method = currentToken();
+        if (method != null && ("BERNOULLI".equals(method.value) || "SYSTEM".equals(method.value))) {
+            consume("IDENTIFIER");
+            system = "SYSTEM".equals(method.value);
+        }
+        consume("OPERATOR", "(");
+        double percent = Double.parseDouble(consume("NUMBER").value);
+        if (currentToken() != null && "PERCENT".equals(currentToken().value)) consume("IDENTIFIER", "PERCENT");
+        consume("OPERATOR", ")");
+        Long seed = null;
+        if (currentToken() != null && "REPEATABLE".equals(currentToken().value)) {
+            consume("IDENTIFIER", "REPEATABLE");
+            consume("OPERATOR", "(");
+            seed = (long) Double.parseDouble(consume("NUMBER").value);
+            consume("OPERATOR", ")");
+        }
+        return new TableSample(system, percent, seed);
     }
 
     private ASTNode parseSelect() {
         consume("KEYWORD", "SELECT");
-        consume("OPERATOR", "*");
+        ASTNode node = new ASTNode("Select");
+        String[] aggregateColumn = null;
+        Token first = currentToken();
+        if (first != null && "APPROX_COUNT_DISTINCT".equals(first.value)) {
+            consume("IDENTIFIER");
+            node.aggregate = "APPROX_COUNT_DISTINCT";
+            consume("OPERATOR", "(");
+            aggregateColumn = parseQualifiedName();
+            consume("OPERATOR", ")");
+        } else if (first != null && "COUNT".equals(first.value)) {
+            consume("IDENTIFIER");
+            node.aggregate = "COUNT_DISTINCT";
+            consume("OPERATOR", "(");
+            consume("IDENTIFIER", "DISTINCT");
+            aggregateColumn = parseQualifiedName();
+            consume("OPERATOR", ")");
+        } else {
+            consume("OPERATOR", "*");
+        }
         consume("KEYWORD", "FROM");
         Token tableName = consume("IDENTIFIER");
-        ASTNode node = new ASTNode("Select");
         node.tableName = tableName.value;
 
+        if (currentToken() != null && "TABLESAMPLE".equals(currentToken().value)) {
+            node.sample = parseTableSample();
+        }
+
         if (currentToken() != null && "JOIN".equals(currentToken().value)) {
             consume("KEYWORD", "JOIN");
             node.joinTable = consume("IDENTIFIER").value;
             consume("KEYWORD", "ON");
-            node.joinColumn1 = consume("IDENTIFIER").value;
+            String[] left = parseQualifiedName();
             consume("OPERATOR", "=");
-            node.joinColumn2 = consume("IDENTIFIER").value;
+            String[] right = parseQualifiedName();
+            if (node.joinTable.equals(left[0]) || node.tableName.equals(right[0])) {
+                String[] swap = left;
+                left = right;
+                right = swap;
+            }
+            node.joinColumn1 = left[1];
+            node.joinColumn2 = right[1];
         }
+        if (aggregateColumn != null) node.aggregateColumn = columnRef(aggregateColumn, node);
 
         if (currentToken() != null && "WHERE".equals(currentToken().value)) {
             parseWhereClause(node);
@@ -403,13 +5473,13 @@ public class SQLCompiler {
         if (currentToken() != null && "GROUP".equals(currentToken().value)) {
             consume("KEYWORD", "GROUP");
             consume("KEYWORD", "BY");
-            node.groupByColumn = consume("IDENTIFIER").value;
+            node.groupByColumn = parseColumnRef(node);
         }
 
         if (currentToken() != null && "ORDER".equals(currentToken().value)) {
             consume("KEYWORD", "ORDER");
             consume("KEYWORD", "BY");
-            node.orderByColumn = consume("IDENTIFIER").value;
+            node.orderByColumn = parseColumnRef(node);
         }
 
         return node;
@@ -433,11 +5503,7 @@ public class SQLCompiler {
         consume("KEYWORD", "SET");
         Token setColumn = consume("IDENTIFIER");
         consume("OPERATOR", "=");
-        Token setValueToken = currentToken();
-        Object setValue;
-        if ("NUMBER".equals(setValueToken.type)) setValue = Double.parseDouble(consume("NUMBER").value);
-        else if ("STRING".equals(setValueToken.type)) setValue = consume("STRING").value;
-        else throw new RuntimeException("Invalid value at " + setValueToken.line + ":" + setValueToken.column);
+        Object setValue = parseLiteral();
         ASTNode node = new ASTNode("Update");
         node.tableName = tableName.value;
         node.setColumn = setColumn.value;
@@ -448,10 +5514,22 @@ public class SQLCompiler {
         return node;
     }
 
+    // ALTER TABLE t ADD column type, ADD PARTITION name VALUES LESS THAN (...) or DROP PARTITION name
     private ASTNode parseAlterTable() {
         consume("KEYWORD", "ALTER");
         consume("KEYWORD", "TABLE");
         Token tableName = consume("IDENTIFIER");
+        Token next = pos + 1 < tokens.size() ? tokens.get(pos + 1) : null;
+        if (next != null && "PARTITION".equals(next.value)) {
+            boolean add = currentToken() != null && "ADD".equals(currentToken().value);
+            consume("KEYWORD", add ? "ADD" : "DROP");
+            consume("IDENTIFIER", "PARTITION");
+            ASTNode node = new ASTNode(add ? "AddPartition" : "DropPartition");
+            node.tableName = tableName.value;
+            node.partitionName = consume("IDENTIFIER").value;
+            if (add) node.partitionBound = parseLessThan();
+            return node;
+        }
         consume("KEYWORD", "ADD");
         Token columnName = consume("IDENTIFIER");
         Token columnType = consume("IDENTIFIER");
@@ -464,6 +5542,13 @@ public class SQLCompiler {
 
     private ASTNode parseDropTable() {
         consume("KEYWORD", "DROP");
+        if (currentToken() != null && "MATERIALIZED".equals(currentToken().value)) {
+            consume("IDENTIFIER", "MATERIALIZED");
+            consume("IDENTIFIER", "VIEW");
+            ASTNode node = new ASTNode("DropView");
+            node.tableName = consume("IDENTIFIER").value;
+            return node;
+        }
         consume("KEYWORD", "TABLE");
         Token tableName = consume("IDENTIFIER");
         ASTNode node = new ASTNode("DropTable");
@@ -471,51 +5556,212 @@ public class SQLCompiler {
         return node;
     }
 
+    private ASTNode parseExplain() {
+        consume("KEYWORD", "EXPLAIN");
+        ASTNode node = new ASTNode("Explain");
+        if (currentToken() != null && "ANALYZE".equals(currentToken().value)) {
+            consume("KEYWORD", "ANALYZE");
+            node.analyze = true;
+        }
+        node.format = "TEXT";
+        if (currentToken() != null && "FORMAT".equals(currentToken().value)) {
+            consume("IDENTIFIER", "FORMAT");
+            Token format = consume("IDENTIFIER");
+            if (!"TEXT".equals(format.value) && !"JSON".equals(format.value)) throw new RuntimeException("Unknown EXPLAIN format at " + format.line + ":" + format.column);
+            node.format = format.value;
+        }
+        node.query = parseSelect();
+        return node;
+    }
+
+    // COPY table FROM 'file.csv' | COPY table TO 'file.csv'
+    private ASTNode parseCopy() {
+        consume("KEYWORD", "COPY");
+        Token tableName = consume("IDENTIFIER");
+        Token direction = currentToken();
+        ASTNode node;
+        if (direction != null && "FROM".equals(direction.value)) {
+            consume("KEYWORD", "FROM");
+            node = new ASTNode("CopyFrom");
+        } else {
+            consume("IDENTIFIER", "TO");
+            node = new ASTNode("CopyTo");
+        }
+        node.tableName = tableName.value;
+        node.fileName = consume("STRING").value;
+        return node;
+    }
+
+    private ASTNode parseCheckpoint() {
+        consume("KEYWORD", "CHECKPOINT");
+        return new ASTNode("Checkpoint");
+    }
+
+    // condition := and { OR and }, and := not { AND not }, not := NOT not | ( condition ) | predicate
     private void parseWhereClause(ASTNode node) {
         consume("KEYWORD", "WHERE");
-        Token column = consume("IDENTIFIER");
-        node.whereColumn = column.value;
-        if ("LIKE".equals(currentToken().value)) {
-            consume("KEYWORD", "LIKE");
-            node.likePattern = consume("STRING").value;
-        } else if ("IS".equals(currentToken().value)) {
+        node.where = parseOr(node);
+    }
+
+    private Condition parseOr(ASTNode node) {
+        List<Condition> terms = new ArrayList<>();
+        terms.add(parseAnd(node));
+        while (currentToken() != null && "OR".equals(currentToken().value)) {
+            consume("KEYWORD", "OR");
+            terms.add(parseAnd(node));
+        }
+        return terms.size() == 1 ? terms.get(0) : Condition.combine("OR", terms);
+    }
+
+    private Condition parseAnd(ASTNode node) {
+        List<Condition> terms = new ArrayList<>();
+        terms.add(parseNot(node));
+        while (currentToken() != null && "AND".equals(currentToken().value)) {
+            consume("KEYWORD", "AND");
+            terms.add(parseNot(node));
+        }
+        return terms.size() == 1 ? terms.get(0) : Condition.combine("AND", terms);
+    }
+
+    private Condition parseNot(ASTNode node) {
+        Token current = currentToken();
+        if (current != null && "NOT".equals(current.value)) {
+            consume("KEYWORD", "NOT");
+            return parseNot(node).not();
+        }
+        if (current != null && "(".equals(current.value)) {
+            consume("OPERATOR", "(");
+            Condition condition = parseOr(node);
+            consume("OPERATOR", ")");
+            return condition;
+        }
+        return parsePredicate(node);
+    }
+
+    private Condition parsePredicate(ASTNode node) {
+        String column = parseColumnRef(node);
+        Token current = currentToken();
+        if (current == null) throw new RuntimeException("Expected condition at EOF");
+        if ("IS".equals(current.value)) {
             consume("KEYWORD", "IS");
-            if ("NULL".equals(currentToken().value)) {
-                consume("KEYWORD", "NULL");
-                node.isNullCheck = true;
-            } else if ("NOT".equals(currentToken().value)) {
-                consume("KEYWORD", "NOT");
-                consume("KEYWORD", "NULL");
-                node.isNotNullCheck = true;
+            boolean not = currentToken() != null && "NOT".equals(currentToken().value);
+            if (not) consume("KEYWORD", "NOT");
+            consume("KEYWORD", "NULL");
+            return Condition.leaf(not ? "IS NOT NULL" : "IS NULL", column);
+        }
+        boolean not = "NOT".equals(current.value);
+        if (not) {
+            consume("KEYWORD", "NOT");
+            current = currentToken();
+            if (current == null) throw new RuntimeException("Expected IN, BETWEEN or LIKE at EOF");
+        }
+        Condition leaf;
+        if ("LIKE".equals(current.value)) {
+            consume("KEYWORD", "LIKE");
+            leaf = Condition.leaf("LIKE", column, "?".equals(currentToken() == null ? null : currentToken().value) ? parseParameter() : consume("STRING").value);
+        } else if ("IN".equals(current.value)) {
+            consume("KEYWORD", "IN");
+            consume("OPERATOR", "(");
+            leaf = Condition.leaf("IN", column, parseWhereValue());
+            while (currentToken() != null && ",".equals(currentToken().value)) {
+                consume("OPERATOR", ",");
+                leaf.values.add(parseWhereValue());
             }
+            consume("OPERATOR", ")");
+        } else if ("BETWEEN".equals(current.value)) {
+            consume("KEYWORD", "BETWEEN");
+            Object low = parseWhereValue();
+            consume("KEYWORD", "AND");
+            leaf = Condition.leaf("BETWEEN", column, low, parseWhereValue());
+        } else if (!not && "OPERATOR".equals(current.type) && COMPARISONS.contains(current.value)) {
+            String op = consume("OPERATOR").value;
+            leaf = Condition.leaf("!=".equals(op) ? "<>" : op, column, parseWhereValue());
         } else {
-            consume("OPERATOR", "=");
-            Token valueToken = currentToken();
-            if ("NUMBER".equals(valueToken.type)) node.whereValue = Double.parseDouble(consume("NUMBER").value);
-            else if ("STRING".equals(valueToken.type)) node.whereValue = consume("STRING").value;
-            else throw new RuntimeException("Invalid value at " + valueToken.line + ":" + valueToken.column);
+            throw new RuntimeException("Expected condition at " + current.line + ":" + current.column);
+        }
+        return not ? leaf.not() : leaf;
+    }
+
+    private Object parseWhereValue() {
+        Token valueToken = currentToken();
+        if (valueToken == null) throw new RuntimeException("Expected value at EOF");
+        if ("?".equals(valueToken.value)) return parseParameter();
+        if ("NUMBER".equals(valueToken.type)) return Double.parseDouble(consume("NUMBER").value);
+        if ("STRING".equals(valueToken.type)) return consume("STRING").value;
+        throw new RuntimeException("Invalid value at " + valueToken.line + ":" + valueToken.column);
+    }
+
+    // Returns the number of rows the statement inserted, updated, deleted or copied in (0 for others).
+    long execute(ASTNode node) {
+        if (node == null) return 0;
+        long count = executeMeasured(node, sink);
+        db.compactPending();
+        if (CHECKPOINT_NANOS > 0 && System.nanoTime() - lastCheckpoint >= CHECKPOINT_NANOS) {
+            lastCheckpoint = System.nanoTime();
+            db.checkpoint(databaseFile);
+        }
+        return count;
+    }
+
+    // Runs one statement and records its metrics and JFR event; SELECT results go to `sink`.
+    private long executeMeasured(ASTNode node, ResultSink sink) {
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            long count = executeStatement(node, sink);
+            failed = false;
+            return count;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long scanned = db.takeRowsScanned();
+            long skipped = db.takeBlocksSkipped();
+            event.end();
+            if (event.shouldCommit()) {
+                event.statementType = node.type;
+                event.sql = sqlText(node);
+                event.rowsScanned = scanned;
+                event.blocksSkipped = skipped;
+                event.failed = failed;
+                event.commit();
+            }
+            EngineMetrics.record(node.type, elapsed, scanned, skipped, failed);
+            if (EngineMetrics.isSlow(elapsed)) EngineMetrics.logSlowQuery(sqlText(node), elapsed, scanned, skipped);
         }
     }
 
-    private void execute(ASTNode node) {
-        if (node == null) return;
+    // Rebuilds the statement text from its tokens; only needed for slow queries and JFR events.
+    private String sqlText(ASTNode node) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = node.firstToken; i < node.lastToken && i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (sql.length() > 0) sql.append(' ');
+            if ("STRING".equals(token.type)) sql.append('\'').append(token.value).append('\'');
+            else sql.append(token.value);
+        }
+        return sql.toString();
+    }
+
+    private long executeStatement(ASTNode node, ResultSink sink) {
+        db.bind(node);
         switch (node.type) {
             case "CreateTable":
-                db.createTable(node.tableName, node.columns);
+                db.createTable(node.tableName, node.columns, node.partitioning);
                 break;
             case "Insert":
-                db.insert(node.tableName, node.values);
-                break;
+                if (node.rows.size() == 1) db.insert(node.tableName, node.rows.get(0));
+                else db.insertRows(node.tableName, node.rows);
+                return node.rows.size();
             case "Select":
-                List<Map<String, Object>> rows = db.select(node.tableName, node.joinTable, node.joinColumn1, node.joinColumn2, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck, node.groupByColumn, node.orderByColumn);
-                System.out.println("Results from '" + node.tableName + "':");
-                for (Map<String, Object> row : rows) System.out.println(row);
+                db.selectInto(node, sink);
                 break;
             case "Delete":
-                db.delete(node.tableName, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck);
-                break;
+                return db.delete(node);
             case "Update":
-                db.update(node.tableName, node.setColumn, node.setValue, node.whereColumn, node.whereValue, node.likePattern, node.isNullCheck, node.isNotNullCheck);
+                return db.update(node);
+            case "CreateIndex":
+                db.createIndex(node.indexName, node.tableName, node.indexColumn);
                 break;
             case "AlterTable":
                 db.alterTable(node.tableName, node.columns.keySet().iterator().next(), node.columns.values().iterator().next());
@@ -523,7 +5769,42 @@ public class SQLCompiler {
             case "DropTable":
                 db.dropTable(node.tableName);
                 break;
+            case "CreateView":
+                db.createView(node.tableName, node.query, sqlText(node.query));
+                break;
+            case "DropView":
+                db.dropView(node.tableName);
+                break;
+            case "AddPartition":
+                db.addPartition(node.tableName, node.partitionName, node.partitionBound);
+                break;
+            case "DropPartition":
+                db.dropPartition(node.tableName, node.partitionName);
+                break;
+            case "Explain":
+                // Through the sink like a query's rows, so --output csv|binary keeps it with the results.
+                try {
+                    sink.begin(node.query.tableName, List.of("QUERY PLAN"));
+                    for (Object[] line : planLines(db.explain(node.query, node.analyze), node.format)) sink.row(line);
+                    sink.end();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                break;
+            case "CopyFrom":
+            case "CopyTo":
+                try {
+                    if ("CopyFrom".equals(node.type)) return db.copyFrom(node.tableName, node.fileName);
+                    db.copyTo(node.tableName, node.fileName);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                break;
+            case "Checkpoint":
+                db.checkpoint(databaseFile);
+                break;
         }
+        return 0;
     }
 
     private Token currentToken() {
@@ -550,7 +5831,7 @@ public class SQLCompiler {
 
     public void run() {
         try {
-            db.loadFromFile("database.txt");
+            db.loadFromFile(databaseFile);
         } catch (IOException e) {
             System.out.println("Starting fresh (no existing database found).");
         }
@@ -559,12 +5840,339 @@ public class SQLCompiler {
             execute(stmt);
         }
         try {
-            db.saveToFile("database.txt");
+            db.saveToFile(databaseFile);
+        } catch (IOException e) {
+            System.err.println("Error saving database: " + e.getMessage());
+        }
+    }
+
+    // What --parallel needs to know about a statement: the tables (and COPY files) it reads and
+    // writes. DDL and CHECKPOINT change or save the whole catalog, so they run with nothing else.
+    private static final class Access {
+        final Set<String> reads = new HashSet<>();
+        final Set<String> writes = new HashSet<>();
+        boolean exclusive;
+    }
+
+    // A materialized view changes with its table, so reading it counts as reading the table;
+    // `viewTables` maps the views defined at this point of the script to their tables.
+    private static Access access(ASTNode node, Map<String, String> viewTables) {
+        if ("Explain".equals(node.type)) return access(node.query, viewTables);
+        Access access = new Access();
+        switch (node.type) {
+            case "Select":
+                access.reads.add(viewTables.getOrDefault(node.tableName, node.tableName));
+                if (node.joinTable != null) access.reads.add(node.joinTable);
+                break;
+            case "Insert":
+            case "Update":
+            case "Delete":
+                access.writes.add(node.tableName);
+                break;
+            case "CopyFrom":
+                access.reads.add(copyFile(node));
+                access.writes.add(node.tableName);
+                break;
+            case "CopyTo":
+                access.reads.add(node.tableName);
+                access.writes.add(copyFile(node));
+                break;
+            case "CreateView":
+                viewTables.put(node.tableName, node.query.tableName);
+                access.exclusive = true;
+                break;
+            case "DropView":
+                viewTables.remove(node.tableName);
+                access.exclusive = true;
+                break;
+            default:
+                access.exclusive = true;
+        }
+        return access;
+    }
+
+    // Files are told apart from tables by the space, which no identifier contains.
+    private static String copyFile(ASTNode node) {
+        return "FILE " + new File(node.fileName).getAbsolutePath();
+    }
+
+    // What a statement run by --parallel printed and returned, held until its turn comes.
+    private static final class StatementOutput {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final RecordingSink results = new RecordingSink();
+        RuntimeException error;
+    }
+
+    // Like run(), but statements run on WORKERS threads as soon as every earlier statement they
+    // conflict with has finished: one that writes a table (or file) they read or write, or reads
+    // one they write. Statements that only read the same tables, or touch different ones, run at
+    // the same time; exclusive ones (see Access) wait for everything before them and hold up
+    // everything after. Output is buffered per statement and printed in script order, so it and the
+    // saved database come out as in run(). As there, the first failing statement stops the script,
+    // after the output of the statements before it.
+    public void runParallel() {
+        try {
+            db.loadFromFile(databaseFile);
+        } catch (IOException e) {
+            System.out.println("Starting fresh (no existing database found).");
+        }
+        List<ASTNode> statements = parse();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        RoutedOutputStream routedOut = new RoutedOutputStream(stdout);
+        RoutedOutputStream routedErr = new RoutedOutputStream(stderr);
+        System.setOut(new PrintStream(routedOut, true));
+        System.setErr(new PrintStream(routedErr, true));
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, WORKERS), runnable -> {
+            Thread thread = new Thread(runnable, "statement-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Statements after a failed one are not started; the ones before it still have to finish.
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        try {
+            List<CompletableFuture<StatementOutput>> done = new ArrayList<>();
+            Map<String, Integer> lastWriter = new HashMap<>();
+            Map<String, List<Integer>> readersSinceWrite = new HashMap<>();
+            List<Integer> sinceExclusive = new ArrayList<>();
+            Map<String, String> viewTables = db.viewTables();
+            int exclusive = -1;
+            for (ASTNode node : statements) {
+                if (node == null) continue;
+                int index = done.size();
+                Access access = access(node, viewTables);
+                Set<Integer> after = new HashSet<>();
+                if (exclusive >= 0) after.add(exclusive);
+                if (access.exclusive) {
+                    after.addAll(sinceExclusive);
+                    lastWriter.clear();
+                    readersSinceWrite.clear();
+                    sinceExclusive.clear();
+                    exclusive = index;
+                } else {
+                    for (String name : access.reads) {
+                        if (lastWriter.containsKey(name)) after.add(lastWriter.get(name));
+                    }
+                    for (String name : access.writes) {
+                        if (lastWriter.containsKey(name)) after.add(lastWriter.get(name));
+                        after.addAll(readersSinceWrite.getOrDefault(name, Collections.emptyList()));
+                    }
+                    for (String name : access.reads) {
+                        if (!access.writes.contains(name)) readersSinceWrite.computeIfAbsent(name, k -> new ArrayList<>()).add(index);
+                    }
+                    for (String name : access.writes) {
+                        lastWriter.put(name, index);
+                        readersSinceWrite.remove(name);
+                    }
+                    sinceExclusive.add(index);
+                }
+                CompletableFuture<?>[] dependencies = new CompletableFuture<?>[after.size()];
+                int i = 0;
+                for (int dependency : after) dependencies[i++] = done.get(dependency);
+                done.add(CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+                    StatementOutput output = new StatementOutput();
+                    if (index > firstFailure.get()) return output;
+                    routedOut.buffer.set(output.out);
+                    routedErr.buffer.set(output.err);
+                    try {
+                        executeMeasured(node, output.results);
+                        // Only this statement uses the tables it writes, so it can compact them.
+                        db.compactPending(access.writes);
+                    } catch (RuntimeException e) {
+                        output.error = e;
+                        firstFailure.accumulateAndGet(index, Math::min);
+                    } finally {
+                        routedOut.buffer.remove();
+                        routedErr.buffer.remove();
+                    }
+                    return output;
+                }, workers));
+            }
+            for (CompletableFuture<StatementOutput> statement : done) {
+                StatementOutput output;
+                try {
+                    output = statement.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw e;
+                }
+                stdout.write(output.out.toByteArray(), 0, output.out.size());
+                stdout.flush();
+                try {
+                    output.results.replay(sink);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                stderr.write(output.err.toByteArray(), 0, output.err.size());
+                stderr.flush();
+                if (output.error != null) throw output.error;
+            }
+        } finally {
+            workers.shutdownNow();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        try {
+            db.saveToFile(databaseFile);
+        } catch (IOException e) {
+            System.err.println("Error saving database: " + e.getMessage());
+        }
+    }
+
+    // Executes the script one statement at a time so memory stays bounded by the largest statement,
+    // not the script. A failing statement is reported with its line number and the rest still run.
+    public void runStreaming(String filename) throws IOException {
+        try {
+            db.loadFromFile(databaseFile);
+        } catch (IOException e) {
+            System.out.println("Starting fresh (no existing database found).");
+        }
+        int failed = 0;
+        try (StatementReader reader = new StatementReader(filename)) {
+            String sql;
+            while ((sql = reader.next()) != null) {
+                input = sql;
+                firstLine = reader.startLine();
+                tokens.clear();
+                pos = 0;
+                try {
+                    for (ASTNode stmt : parse()) execute(stmt);
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.err.println("Error in statement at line " + reader.startLine() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (failed > 0) System.err.println(failed + " statement(s) failed.");
+        try {
+            db.saveToFile(databaseFile);
+        } catch (IOException e) {
+            System.err.println("Error saving database: " + e.getMessage());
+        }
+    }
+
+    // A statement as handed from the --pipeline parser thread to the executor: its tokens (for
+    // sqlText) and parse, or the error that stopped it. An IOException ends the script.
+    private static final class Parsed {
+        final int line;
+        final List<Token> tokens;
+        final List<ASTNode> statements;
+        final Exception error;
+
+        Parsed(int line, List<Token> tokens, List<ASTNode> statements, Exception error) {
+            this.line = line;
+            this.tokens = tokens;
+            this.statements = statements;
+            this.error = error;
+        }
+    }
+
+    // Like runStreaming, but a second thread reads, lexes and parses the statements into a bounded
+    // queue while this one executes them, so parsing overlaps execution. The parser blocks once it is
+    // about PIPELINE_DEPTH statements ahead. Parsing needs no schema, so running ahead is safe; errors are
+    // still reported in statement order and the rest still run.
+    public void runPipelined(String filename) throws IOException {
+        try {
+            db.loadFromFile(databaseFile);
+        } catch (IOException e) {
+            System.out.println("Starting fresh (no existing database found).");
+        }
+        BlockingQueue<List<Parsed>> queue = new ArrayBlockingQueue<>(Math.max(1, PIPELINE_DEPTH / PIPELINE_BATCH));
+        AtomicLong parseNanos = new AtomicLong();
+        Thread parser = new Thread(() -> parseAhead(filename, queue, parseNanos), "statement-parser");
+        parser.setDaemon(true);
+        long start = System.nanoTime();
+        long executeNanos = 0;
+        int statements = 0;
+        int failed = 0;
+        parser.start();
+        try {
+            for (Iterator<Parsed> batch = queue.take().iterator(); ; ) {
+                if (!batch.hasNext()) batch = queue.take().iterator();
+                Parsed parsed = batch.next();
+                if (parsed == END_OF_SCRIPT) break;
+                if (parsed.error instanceof IOException) throw (IOException) parsed.error;
+                statements++;
+                if (parsed.error != null) {
+                    failed++;
+                    System.err.println("Error in statement at line " + parsed.line + ": " + parsed.error.getMessage());
+                    continue;
+                }
+                long started = cpuNanos();
+                tokens = parsed.tokens;
+                try {
+                    for (ASTNode stmt : parsed.statements) execute(stmt);
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.err.println("Error in statement at line " + parsed.line + ": " + e.getMessage());
+                }
+                executeNanos += cpuNanos() - started;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the parser.");
+        } finally {
+            parser.interrupt();
+        }
+        long wall = System.nanoTime() - start;
+        if (failed > 0) System.err.println(failed + " statement(s) failed.");
+        // CPU times, so threads taking turns on one core do not count as overlap. The two ran
+        // side by side for at least parse + execute - wall; serially that would have been added on.
+        long overlap = Math.max(0, parseNanos.get() + executeNanos - wall);
+        System.out.println(String.format("Pipelined %d statement(s): parse %.1f ms and execute %.1f ms of CPU in %.1f ms, overlapping at least %.1f ms (%.2fx).",
+                statements, parseNanos.get() / 1e6, executeNanos / 1e6, wall / 1e6, overlap / 1e6, (double) (wall + overlap) / wall));
+        try {
+            db.saveToFile(databaseFile);
         } catch (IOException e) {
             System.err.println("Error saving database: " + e.getMessage());
         }
     }
 
+    // The --pipeline parser thread: one compiler per run, with a fresh token list per statement
+    // because the executor keeps the list of the statement it is running.
+    private static void parseAhead(String filename, BlockingQueue<List<Parsed>> queue, AtomicLong parseNanos) {
+        SQLCompiler compiler = new SQLCompiler(null, null, null, null);
+        List<Parsed> batch = new ArrayList<>(PIPELINE_BATCH);
+        try {
+            Parsed last = END_OF_SCRIPT;
+            try (StatementReader reader = new StatementReader(filename)) {
+                while (true) {
+                    long start = cpuNanos();
+                    String sql = reader.next();
+                    if (sql == null) break;
+                    compiler.input = sql;
+                    compiler.firstLine = reader.startLine();
+                    compiler.tokens = new ArrayList<>();
+                    compiler.pos = 0;
+                    Parsed parsed;
+                    try {
+                        parsed = new Parsed(reader.startLine(), compiler.tokens, compiler.parse(), null);
+                    } catch (RuntimeException e) {
+                        parsed = new Parsed(reader.startLine(), null, null, e);
+                    }
+                    parseNanos.addAndGet(cpuNanos() - start);
+                    batch.add(parsed);
+                    if (batch.size() == PIPELINE_BATCH) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(PIPELINE_BATCH);
+                    }
+                }
+            } catch (IOException e) {
+                last = new Parsed(-1, null, null, e);
+            }
+            batch.add(last);
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            // The executor has stopped taking statements.
+        }
+    }
+
+    // CPU time of the calling thread, or wall time where the JVM cannot measure it.
+    private static long cpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
     private static String readInputFromFile(String filename) throws IOException {
         StringBuilder input = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
@@ -576,13 +6184,53 @@ public class SQLCompiler {
         return input.toString();
     }
 
+    // Usage: SQLCompiler [--stream | --pipeline | --parallel] [--output text|csv|binary] [--output-file FILE] [script]
     public static void main(String[] args) {
+        boolean streaming = false;
+        boolean pipelined = false;
+        boolean parallel = false;
+        String filename = "input.sql";
+        String format = "text";
+        String outputFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--stream".equals(args[i])) streaming = true;
+            else if ("--pipeline".equals(args[i])) pipelined = true;
+            else if ("--parallel".equals(args[i])) parallel = true;
+            else if ("--output".equals(args[i]) && i + 1 < args.length) format = args[++i];
+            else if ("--output-file".equals(args[i]) && i + 1 < args.length) outputFile = args[++i];
+            else filename = args[i];
+        }
         try {
-            String rawInput = readInputFromFile("input.sql");
-            SQLCompiler compiler = new SQLCompiler(SQLCompiler.preprocessInput(rawInput));
-            compiler.run();
+            OutputStream out = System.out;
+            if (outputFile != null) {
+                out = new FileOutputStream(outputFile);
+            } else if (!"text".equals(format)) {
+                // Keep status messages out of machine-readable output.
+                System.setOut(System.err);
+            }
+            ResultSink sink;
+            switch (format) {
+                case "text": sink = new TextResultSink(out); break;
+                case "csv": sink = new CsvResultSink(out); break;
+                case "binary": sink = new BinaryResultSink(out); break;
+                default:
+                    System.err.println("Unknown output format '" + format + "', expected text, csv or binary.");
+                    System.exit(1);
+                    return;
+            }
+            if (pipelined) {
+                new SQLCompiler(null, new Database(), "database.txt", sink).runPipelined(filename);
+            } else if (streaming) {
+                new SQLCompiler(null, new Database(), "database.txt", sink).runStreaming(filename);
+            } else {
+                String rawInput = readInputFromFile(filename);
+                SQLCompiler compiler = new SQLCompiler(SQLCompiler.preprocessInput(rawInput), new Database(), "database.txt", sink);
+                if (parallel) compiler.runParallel();
+                else compiler.run();
+            }
+            if (outputFile != null) out.close();
         } catch (IOException e) {
-            System.err.println("Error reading input.sql: " + e.getMessage());
+            System.err.println("Error reading " + filename + ": " + e.getMessage());
             System.exit(1);
         }
     }
@@ -0,0 +1,63 @@
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+// JDBC driver running the engine in-process, for jdbc:sqlcompiler:file:<database file> URLs. It is
+// registered with DriverManager through META-INF/services, and by loading the class. DriverManager
+// requires drivers to be public, so this one lives in its own file, as do the classes behind it
+// (SharedDatabase and the Jdbc* classes). They reach the engine through SQLCompiler.Engine.
+public class SQLCompilerDriver implements Driver {
+    static final String PREFIX = "jdbc:sqlcompiler:file:";
+
+    static {
+        try {
+            DriverManager.registerDriver(new SQLCompilerDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) return null;
+        String file = url.substring(PREFIX.length());
+        if (file.isEmpty()) throw new SQLException("No database file in '" + url + "'.");
+        return new JdbcConnection(url, SharedDatabase.open(file));
+    }
+
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    static SQLException error(RuntimeException e) {
+        return new SQLException(e.getMessage(), e);
+    }
+
+    static SQLFeatureNotSupportedException unsupported(String feature) {
+        return new SQLFeatureNotSupportedException(feature + " is not supported by the SQLCompiler driver.");
+    }
+}
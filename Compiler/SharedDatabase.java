@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+// One Database per file, shared by every connection to it: loaded when the first one opens and
+// saved when the last one closes. Queries hold the read lock until their ResultSet is done with;
+// anything else takes the write lock. The lock is counted rather than owned by a thread, since a
+// ResultSet may be read and closed on another thread than the one that opened it.
+class SharedDatabase {
+    private static final Map<String, SharedDatabase> OPEN = new HashMap<>();
+
+    final SQLCompiler.Engine engine;
+    final String file;
+    private int connections;
+    private int readers;
+    private boolean writing;
+    // Changed since it was last saved.
+    private volatile boolean dirty;
+
+    private SharedDatabase(String file) {
+        this.file = file;
+        this.engine = new SQLCompiler.Engine(file);
+    }
+
+    static SharedDatabase open(String file) throws SQLException {
+        String key = new File(file).getAbsolutePath();
+        synchronized (OPEN) {
+            SharedDatabase shared = OPEN.get(key);
+            if (shared == null) {
+                shared = new SharedDatabase(file);
+                try {
+                    if (new File(file).exists()) shared.engine.load();
+                } catch (IOException | RuntimeException e) {
+                    throw new SQLException("Could not load '" + file + "': " + e.getMessage(), e);
+                }
+                OPEN.put(key, shared);
+            }
+            shared.connections++;
+            return shared;
+        }
+    }
+
+    // Saved before it leaves OPEN, so that a connection opened meanwhile waits and loads the saved file.
+    void close() throws SQLException {
+        synchronized (OPEN) {
+            if (--connections > 0) return;
+            try {
+                if (dirty) save();
+            } finally {
+                OPEN.remove(new File(file).getAbsolutePath());
+            }
+        }
+    }
+
+    void changed() {
+        dirty = true;
+    }
+
+    void save() throws SQLException {
+        try {
+            engine.save();
+            dirty = false;
+        } catch (IOException | RuntimeException e) {
+            throw new SQLException("Could not save '" + file + "': " + e.getMessage(), e);
+        }
+    }
+
+    synchronized void beginRead() throws SQLException {
+        while (writing) await();
+        readers++;
+    }
+
+    synchronized void endRead() {
+        if (--readers == 0) notifyAll();
+    }
+
+    synchronized void beginWrite() throws SQLException {
+        while (writing || readers > 0) await();
+        writing = true;
+    }
+
+    synchronized void endWrite() {
+        writing = false;
+        notifyAll();
+    }
+
+    private void await() throws SQLException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database.", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+// JMX requires MXBean interfaces to be public, so this one lives in its own file.
+public interface StatementMetricsMXBean {
+    String getStatementType();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getRowsScanned();
+
+    long getBlocksSkipped();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    void reset();
+}
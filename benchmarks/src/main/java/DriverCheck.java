@@ -0,0 +1,204 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+// Checks the JDBC driver's behaviour where connections share a database: a commit while another
+// connection streams a ResultSet, rows a ResultSet still holds when its own connection updates the
+// table, a connection opened while the last one closes, and NULL parameters in WHERE. Prints each
+// failure and exits with status 1 if there were any.
+//
+//   java -cp benchmarks/target/benchmarks.jar DriverCheck
+public class DriverCheck {
+    private static final List<String> failures = new ArrayList<>();
+    private static Path dir;
+
+    public static void main(String[] args) throws Exception {
+        dir = Files.createTempDirectory("sqlcompiler-check");
+        commitWhileStreaming();
+        concurrentCommits();
+        updateUnderOpenResultSet();
+        openWhileClosing();
+        nullParameters();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        for (String failure : failures) System.out.println("FAILED: " + failure);
+        System.out.println(failures.isEmpty() ? "All checks passed." : failures.size() + " check(s) failed.");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) failures.add(what);
+    }
+
+    private static Connection connect(String name) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlcompiler:file:" + dir.resolve(name));
+    }
+
+    private static void createItems(Connection connection, int rows) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO ITEMS VALUES (?, ?)")) {
+            statement.executeUpdate("CREATE TABLE ITEMS (ID INT, NAME TEXT)");
+            for (int i = 0; i < rows; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "item" + i);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static int count(ResultSet results) throws SQLException {
+        int rows = 0;
+        while (results.next()) rows++;
+        return rows;
+    }
+
+    // A deletes 500 of 5000 rows and commits while B is part way through reading the table: saving
+    // compacts the table, which must wait until B's rows are read.
+    private static void commitWhileStreaming() throws Exception {
+        try (Connection a = connect("stream.txt"); Connection b = connect("stream.txt")) {
+            createItems(a, 5000);
+            a.setAutoCommit(false);
+            try (Statement statement = a.createStatement()) {
+                statement.executeUpdate("DELETE FROM ITEMS WHERE ID < 500");
+            }
+            try (Statement statement = b.createStatement()) {
+                statement.setFetchSize(10);
+                ResultSet results = statement.executeQuery("SELECT * FROM ITEMS");
+                int read = 0;
+                while (read < 100 && results.next()) read++;
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                Thread commit = new Thread(() -> {
+                    try {
+                        a.commit();
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                });
+                commit.start();
+                commit.join(200);
+                read += count(results);
+                commit.join();
+                check(read == 4500, "commit while streaming: read " + read + " rows, expected 4500");
+                check(error.get() == null, "commit while streaming: " + error.get());
+            }
+        }
+        try (Connection c = connect("stream.txt"); Statement statement = c.createStatement()) {
+            int saved = count(statement.executeQuery("SELECT * FROM ITEMS"));
+            check(saved == 4500, "commit while streaming: " + saved + " rows saved, expected 4500");
+        }
+    }
+
+    // Two connections committing at the same time write the same file.
+    private static void concurrentCommits() throws Exception {
+        try (Connection a = connect("commits.txt"); Connection b = connect("commits.txt")) {
+            createItems(a, 1000);
+            a.setAutoCommit(false);
+            b.setAutoCommit(false);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            List<Thread> threads = new ArrayList<>();
+            for (Connection connection : List.of(a, b)) {
+                Thread thread = new Thread(() -> {
+                    try (Statement statement = connection.createStatement()) {
+                        for (int i = 0; i < 20; i++) {
+                            statement.executeUpdate("UPDATE ITEMS SET NAME = 'x" + i + "' WHERE ID = " + i);
+                            connection.commit();
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+            check(error.get() == null, "concurrent commits: " + error.get());
+        }
+        try (Connection c = connect("commits.txt"); Statement statement = c.createStatement()) {
+            int saved = count(statement.executeQuery("SELECT * FROM ITEMS"));
+            check(saved == 1000, "concurrent commits: " + saved + " rows saved, expected 1000");
+        }
+    }
+
+    // An UPDATE on the connection reads its open ResultSets to the end first; the rows they still
+    // hold keep the values they had when the query ran.
+    private static void updateUnderOpenResultSet() throws SQLException {
+        for (int fetchSize : new int[] {2, 1000}) {
+            try (Connection connection = connect("update" + fetchSize + ".txt"); Statement query = connection.createStatement();
+                 Statement update = connection.createStatement()) {
+                createItems(connection, 10);
+                query.setFetchSize(fetchSize);
+                ResultSet results = query.executeQuery("SELECT * FROM ITEMS");
+                results.next();
+                update.executeUpdate("UPDATE ITEMS SET NAME = 'changed'");
+                boolean unchanged = "item0".equals(results.getString(2));
+                while (results.next()) unchanged &= results.getString(2).startsWith("item");
+                check(unchanged, "update under an open ResultSet (fetch size " + fetchSize + "): buffered rows changed");
+            }
+        }
+    }
+
+    // Connections opened while the last one closes see what it saved. The table is large enough
+    // for the save to take a while, and the second connection opens at a different point of it
+    // each round.
+    private static void openWhileClosing() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            String name = "reopen" + round + ".txt";
+            Connection first = connect(name);
+            createItems(first, 20000);
+            first.setAutoCommit(false);
+            try (Statement statement = first.createStatement()) {
+                statement.executeUpdate("INSERT INTO ITEMS VALUES (-1, 'first')");
+            }
+            Thread close = new Thread(() -> {
+                try {
+                    first.close();
+                } catch (SQLException e) {
+                    failures.add("open while closing: " + e);
+                }
+            });
+            close.start();
+            Thread.sleep(round);
+            try (Connection second = connect(name); Statement statement = second.createStatement()) {
+                statement.executeUpdate("INSERT INTO ITEMS VALUES (-2, 'second')");
+            } catch (SQLException e) {
+                failures.add("open while closing (round " + round + "): " + e);
+            }
+            close.join();
+            try (Connection last = connect(name); Statement statement = last.createStatement()) {
+                ResultSet results = statement.executeQuery("SELECT * FROM ITEMS WHERE ID = -1");
+                check(results.next(), "open while closing (round " + round + "): the first connection's row was lost");
+            }
+        }
+    }
+
+    // WHERE column = ? (and the other comparisons) with a NULL parameter fails with a message.
+    private static void nullParameters() throws SQLException {
+        try (Connection connection = connect("nulls.txt")) {
+            createItems(connection, 10);
+            for (String op : new String[] {"=", "<>", "<", "BETWEEN ? AND"}) {
+                String sql = "SELECT * FROM ITEMS WHERE NAME " + op + " ?";
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setNull(1, Types.VARCHAR);
+                    if (op.startsWith("BETWEEN")) statement.setNull(2, Types.VARCHAR);
+                    count(statement.executeQuery());
+                    failures.add("NULL parameter: " + sql + " ran");
+                } catch (SQLException e) {
+                    check(e.getMessage() != null && e.getMessage().contains("IS NULL"), "NULL parameter: " + sql + " failed with " + e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import sqlcompiler.bench.Engine;
+
+// Lives in the unnamed package so it can reach the package-private engine classes.
+public class EngineAccess implements Engine {
+    @Override
+    public Object newDatabase() {
+        return new Database();
+    }
+
+    @Override
+    public void createTable(Object db, String table, String[] columns, String[] types) {
+        Map<String, String> schema = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) schema.put(columns[i], types[i]);
+        ((Database) db).createTable(table, schema);
+    }
+
+    @Override
+    public void insert(Object db, String table, List<Object> values) {
+        ((Database) db).insert(table, values);
+    }
+
+    @Override
+    public List<?> select(Object db, String table, String joinTable, String joinColumn1, String joinColumn2, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck, String groupByColumn, String orderByColumn) {
+        ASTNode query = new ASTNode("Select");
+        query.tableName = table;
+        query.joinTable = joinTable;
+        query.joinColumn1 = joinColumn1;
+        query.joinColumn2 = joinColumn2;
+        if (likePattern != null) query.where = Condition.leaf("LIKE", whereColumn, likePattern);
+        else if (isNullCheck) query.where = Condition.leaf("IS NULL", whereColumn);
+        else if (isNotNullCheck) query.where = Condition.leaf("IS NOT NULL", whereColumn);
+        else if (whereColumn != null) query.where = Condition.leaf("=", whereColumn, whereValue);
+        query.groupByColumn = groupByColumn;
+        query.orderByColumn = orderByColumn;
+        ((Database) db).bind(query);
+        return ((Database) db).select(query);
+    }
+
+    @Override
+    public void saveToFile(Object db, String filename) throws IOException {
+        ((Database) db).saveToFile(filename);
+    }
+
+    @Override
+    public void loadFromFile(Object db, String filename) throws IOException {
+        ((Database) db).loadFromFile(filename);
+    }
+
+    @Override
+    public List<?> tokenize(String script) {
+        return new SQLCompiler(script).tokenize();
+    }
+
+    @Override
+    public List<?> parse(String script) {
+        return new SQLCompiler(script).parse();
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// End-to-end benchmark: generates a TPC-H-lite workload, loads it through SQLCompiler.run()
+// (or runStreaming with --stream), then times each query through parse and execute.
+// Reports load time, per-query latency, peak heap and database file size, as text and JSON.
+//
+//   java -cp benchmarks/target/benchmarks.jar MacroBenchmark --sf 0.01 [--runs 5] [--stream] [--dir work] [--out macro-result.json]
+public class MacroBenchmark {
+    public static void main(String[] args) throws IOException {
+        double scaleFactor = 0.01;
+        int runs = 3;
+        boolean streaming = false;
+        Path dir = null;
+        Path resultFile = Paths.get("macro-result.json");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sf": scaleFactor = Double.parseDouble(args[++i]); break;
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--stream": streaming = true; break;
+                case "--dir": dir = Paths.get(args[++i]); break;
+                case "--out": resultFile = Paths.get(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        if (dir == null) dir = Files.createTempDirectory("sqlcompiler-macro");
+        Files.createDirectories(dir);
+
+        WorkloadGenerator generator = new WorkloadGenerator(scaleFactor, WorkloadGenerator.DEFAULT_SEED);
+        Path loadScript = dir.resolve("load.sql");
+        try (BufferedWriter out = Files.newBufferedWriter(loadScript, StandardCharsets.UTF_8)) {
+            generator.writeLoadScript(out);
+        }
+        String databaseFile = dir.resolve("database.txt").toString();
+        Files.deleteIfExists(Paths.get(databaseFile));
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Database db = new Database();
+
+        settle();
+        long start = System.nanoTime();
+        if (streaming) {
+            new SQLCompiler(null, db, databaseFile).runStreaming(loadScript.toString());
+        } else {
+            String script = SQLCompiler.preprocessInput(new String(Files.readAllBytes(loadScript), StandardCharsets.UTF_8));
+            new SQLCompiler(script, db, databaseFile).run();
+        }
+        long loadNanos = System.nanoTime() - start;
+        long loadPeakHeap = peakHeap();
+        long fileSize = Files.size(Paths.get(databaseFile));
+
+        List<String[]> queries = generator.queries();
+        long[][] latencies = new long[queries.size()][runs];
+        settle();
+        for (int q = 0; q < queries.size(); q++) {
+            for (int r = 0; r < runs; r++) {
+                SQLCompiler compiler = new SQLCompiler(queries.get(q)[1], db, databaseFile);
+                List<ASTNode> statements = compiler.parse();
+                long queryStart = System.nanoTime();
+                for (ASTNode statement : statements) compiler.execute(statement);
+                latencies[q][r] = System.nanoTime() - queryStart;
+            }
+        }
+        long queryPeakHeap = peakHeap();
+        System.setOut(console);
+
+        long rows = generator.customers() + generator.orders() + generator.lineItems();
+        System.out.printf("scale factor %.2f: %d customers, %d orders, %d line items%n", scaleFactor, generator.customers(), generator.orders(), generator.lineItems());
+        System.out.printf("load (%s): %.1f ms, %.0f rows/s, peak heap %.1f MB, database file %.1f MB%n", streaming ? "runStreaming" : "run", loadNanos / 1e6, rows / (loadNanos / 1e9), loadPeakHeap / 1048576.0, fileSize / 1048576.0);
+        System.out.printf("%-28s %12s %12s %12s%n", "query", "median ms", "min ms", "max ms");
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"scaleFactor\": ").append(scaleFactor).append(",\n  \"mode\": \"").append(streaming ? "stream" : "batch").append("\"");
+        json.append(",\n  \"rows\": {\"customer\": ").append(generator.customers()).append(", \"orders\": ").append(generator.orders()).append(", \"lineitem\": ").append(generator.lineItems()).append("}");
+        json.append(",\n  \"loadMillis\": ").append(loadNanos / 1e6).append(",\n  \"loadPeakHeapBytes\": ").append(loadPeakHeap);
+        json.append(",\n  \"queryPeakHeapBytes\": ").append(queryPeakHeap).append(",\n  \"databaseFileBytes\": ").append(fileSize);
+        json.append(",\n  \"queries\": [");
+        for (int q = 0; q < queries.size(); q++) {
+            long[] runTimes = latencies[q].clone();
+            Arrays.sort(runTimes);
+            double median = runTimes[runs / 2] / 1e6;
+            System.out.printf("%-28s %12.2f %12.2f %12.2f%n", queries.get(q)[0], median, runTimes[0] / 1e6, runTimes[runs - 1] / 1e6);
+            List<String> millis = new ArrayList<>();
+            for (long t : latencies[q]) millis.add(String.valueOf(t / 1e6));
+            json.append(q == 0 ? "\n" : ",\n").append("    {\"name\": \"").append(queries.get(q)[0]).append("\", \"medianMillis\": ").append(median).append(", \"runMillis\": ").append(millis).append("}");
+        }
+        json.append("\n  ]\n}\n");
+        System.out.printf("query phase peak heap %.1f MB%n", queryPeakHeap / 1048576.0);
+        Files.write(resultFile, json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + resultFile);
+    }
+
+    // Collects garbage and restarts peak tracking so each phase reports its own peak.
+    private static void settle() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
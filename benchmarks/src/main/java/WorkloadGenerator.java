@@ -0,0 +1,148 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Deterministic TPC-H-lite workload: CUSTOMER, ORDERS and LINEITEM sized by a scale factor
+// (SF 1 = 150k customers, 1.5M orders, ~6M line items), written as scripts in the grammar
+// the engine accepts. The same scale factor and seed always produce byte-identical scripts.
+public class WorkloadGenerator {
+    static final long DEFAULT_SEED = 19920101L;
+    private static final int ROWS_PER_INSERT = 500;
+    private static final String[] NATIONS = {"ALGERIA", "ARGENTINA", "BRAZIL", "CANADA", "EGYPT", "ETHIOPIA", "FRANCE", "GERMANY", "INDIA", "INDONESIA", "IRAN", "IRAQ", "JAPAN", "JORDAN", "KENYA", "MOROCCO", "MOZAMBIQUE", "PERU", "CHINA", "ROMANIA", "SAUDI ARABIA", "VIETNAM", "RUSSIA", "UNITED KINGDOM", "UNITED STATES"};
+    private static final String[] SEGMENTS = {"AUTOMOBILE", "BUILDING", "FURNITURE", "HOUSEHOLD", "MACHINERY"};
+    private static final String[] STATUSES = {"F", "O", "P"};
+    private static final String[] PRIORITIES = {"1-URGENT", "2-HIGH", "3-MEDIUM", "4-NOT SPECIFIED", "5-LOW"};
+    private static final String[] SHIP_MODES = {"AIR", "FOB", "MAIL", "RAIL", "REG AIR", "SHIP", "TRUCK"};
+    private static final String[] RETURN_FLAGS = {"A", "N", "R"};
+    private static final String[] WORDS = {"carefully", "quickly", "final", "pending", "express", "regular", "ironic", "bold", "deposits", "requests", "packages", "accounts"};
+    private static final long START_DAY = LocalDate.of(1992, 1, 1).toEpochDay();
+    private static final int DATE_RANGE_DAYS = 7 * 365;
+
+    private final double scaleFactor;
+    private final long seed;
+    private long lineItems;
+
+    WorkloadGenerator(double scaleFactor, long seed) {
+        if (scaleFactor < 0.01 || scaleFactor > 10) throw new IllegalArgumentException("Scale factor must be between 0.01 and 10, got " + scaleFactor);
+        this.scaleFactor = scaleFactor;
+        this.seed = seed;
+    }
+
+    int customers() {
+        return (int) Math.round(150_000 * scaleFactor);
+    }
+
+    int orders() {
+        return (int) Math.round(1_500_000 * scaleFactor);
+    }
+
+    // Known once writeLoadScript has run.
+    long lineItems() {
+        return lineItems;
+    }
+
+    void writeLoadScript(Writer out) throws IOException {
+        out.write("CREATE TABLE customer (c_custkey INT, c_name TEXT, c_nation TEXT, c_mktsegment TEXT, c_acctbal INT);\n");
+        out.write("CREATE TABLE orders (o_orderkey INT, o_custkey INT, o_orderstatus TEXT, o_totalprice INT, o_orderdate TEXT, o_orderpriority TEXT, o_comment TEXT);\n");
+        out.write("CREATE TABLE lineitem (l_orderkey INT, l_linenumber INT, l_quantity INT, l_extendedprice INT, l_returnflag TEXT, l_shipmode TEXT, l_shipdate TEXT);\n");
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Batch batch = new Batch(out, "customer");
+        for (int key = 1; key <= customers(); key++) {
+            batch.add(key + ", 'Customer#" + String.format("%09d", key) + "', '" + pick(random, NATIONS) + "', '" + pick(random, SEGMENTS) + "', " + (random.nextInt(10_999) - 999));
+        }
+        batch.flush();
+
+        SplittableRandom orderRandom = random.split();
+        SplittableRandom lineRandom = random.split();
+        Batch orderBatch = new Batch(out, "orders");
+        Batch lineBatch = new Batch(out, "lineitem");
+        lineItems = 0;
+        for (int key = 1; key <= orders(); key++) {
+            long orderDay = START_DAY + orderRandom.nextInt(DATE_RANGE_DAYS);
+            int lines = 1 + lineRandom.nextInt(7);
+            long total = 0;
+            for (int line = 1; line <= lines; line++) {
+                int quantity = 1 + lineRandom.nextInt(50);
+                int price = quantity * (900 + lineRandom.nextInt(1100));
+                total += price;
+                lineBatch.add(key + ", " + line + ", " + quantity + ", " + price + ", '" + pick(lineRandom, RETURN_FLAGS) + "', '" + pick(lineRandom, SHIP_MODES) + "', '" + LocalDate.ofEpochDay(orderDay + 1 + lineRandom.nextInt(120)) + "'");
+            }
+            lineItems += lines;
+            String comment = orderRandom.nextInt(10) == 0 ? "NULL" : "'" + pick(orderRandom, WORDS) + " " + pick(orderRandom, WORDS) + " " + pick(orderRandom, WORDS) + "'";
+            orderBatch.add(key + ", " + (1 + orderRandom.nextInt(customers())) + ", '" + pick(orderRandom, STATUSES) + "', " + total + ", '" + LocalDate.ofEpochDay(orderDay) + "', '" + pick(orderRandom, PRIORITIES) + "', " + comment);
+        }
+        orderBatch.flush();
+        lineBatch.flush();
+    }
+
+    // Named queries covering WHERE (=, LIKE, IS NULL, IS NOT NULL), JOIN, GROUP BY and ORDER BY.
+    List<String[]> queries() {
+        List<String[]> queries = new ArrayList<>();
+        queries.add(new String[] {"Q1_returnflag_by_shipmode", "SELECT * FROM lineitem WHERE l_returnflag = 'R' GROUP BY l_shipmode ORDER BY l_shipmode;"});
+        queries.add(new String[] {"Q2_segment_by_balance", "SELECT * FROM customer WHERE c_mktsegment = 'BUILDING' ORDER BY c_acctbal;"});
+        queries.add(new String[] {"Q3_priority_by_segment", "SELECT * FROM customer JOIN orders ON customer.c_custkey = orders.o_custkey WHERE c_mktsegment = 'AUTOMOBILE' GROUP BY orders.o_orderpriority ORDER BY orders.o_orderpriority;"});
+        queries.add(new String[] {"Q4_uncommented_by_status", "SELECT * FROM orders WHERE o_comment IS NULL GROUP BY o_orderstatus ORDER BY o_orderstatus;"});
+        queries.add(new String[] {"Q5_commented_by_price", "SELECT * FROM orders WHERE o_comment IS NOT NULL ORDER BY o_totalprice;"});
+        queries.add(new String[] {"Q6_customer_name_like", "SELECT * FROM customer WHERE c_name LIKE '%7';"});
+        queries.add(new String[] {"Q7_air_shipments", "SELECT * FROM lineitem WHERE l_shipmode LIKE '%AIR' GROUP BY l_returnflag;"});
+        queries.add(new String[] {"Q8_fulfilled_orders", "SELECT * FROM customer JOIN orders ON customer.c_custkey = orders.o_custkey WHERE orders.o_orderstatus = 'F' ORDER BY c_acctbal;"});
+        return queries;
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    // Groups rows into multi-row INSERT statements. Each batch buffers its own statement so
+    // batches for different tables can be filled in an interleaved order.
+    private static class Batch {
+        private final Writer out;
+        private final String table;
+        private final StringBuilder statement = new StringBuilder();
+        private int rows;
+
+        Batch(Writer out, String table) {
+            this.out = out;
+            this.table = table;
+        }
+
+        void add(String values) throws IOException {
+            statement.append(rows == 0 ? "INSERT INTO " + table + " VALUES (" : ",\n  (").append(values).append(")");
+            if (++rows == ROWS_PER_INSERT) flush();
+        }
+
+        void flush() throws IOException {
+            if (rows > 0) out.append(statement).append(";\n");
+            statement.setLength(0);
+            rows = 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkloadGenerator <scale factor 0.01-10> [output dir] [seed]");
+            System.exit(1);
+        }
+        double scaleFactor = Double.parseDouble(args[0]);
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        WorkloadGenerator generator = new WorkloadGenerator(scaleFactor, seed);
+        Files.createDirectories(dir);
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("load.sql"), StandardCharsets.UTF_8)) {
+            generator.writeLoadScript(out);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("queries.sql"), StandardCharsets.UTF_8)) {
+            for (String[] query : generator.queries()) out.write("-- " + query[0] + "\n" + query[1] + "\n");
+        }
+        System.out.println("Wrote " + generator.customers() + " customers, " + generator.orders() + " orders and " + generator.lineItems() + " line items to " + dir.resolve("load.sql"));
+    }
+}
@@ -0,0 +1,18 @@
+package sqlcompiler.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Runs JMH, writing results to jmh-result.json unless another result format is requested. */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> argv = new ArrayList<>(Arrays.asList(args));
+        if (!argv.contains("-rf")) argv.addAll(Arrays.asList("-rf", "json"));
+        if (!argv.contains("-rff")) argv.addAll(Arrays.asList("-rff", "jmh-result.json"));
+        org.openjdk.jmh.Main.main(argv.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,41 @@
+package sqlcompiler.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * The engine entry points exercised by the benchmarks.
+ *
+ * <p>The engine classes live in the unnamed package, which code in a named package cannot
+ * reference, and JMH refuses benchmarks in the unnamed package. {@code EngineAccess} bridges
+ * the two; database handles are passed around as opaque objects.
+ */
+public interface Engine {
+    Object newDatabase();
+
+    void createTable(Object db, String table, String[] columns, String[] types);
+
+    void insert(Object db, String table, List<Object> values);
+
+    List<?> select(Object db, String table, String joinTable, String joinColumn1, String joinColumn2, String whereColumn, Object whereValue, String likePattern, boolean isNullCheck, boolean isNotNullCheck, String groupByColumn, String orderByColumn);
+
+    void saveToFile(Object db, String filename) throws IOException;
+
+    void loadFromFile(Object db, String filename) throws IOException;
+
+    List<?> tokenize(String script);
+
+    List<?> parse(String script);
+
+    static Engine load() {
+        // Every engine operation reports progress on System.out; keep that out of the measurements.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return (Engine) Class.forName("EngineAccess").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("EngineAccess not on the classpath", e);
+        }
+    }
+}
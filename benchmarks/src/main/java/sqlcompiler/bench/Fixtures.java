@@ -0,0 +1,67 @@
+package sqlcompiler.bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/** Deterministic data sets shared by the benchmarks. */
+final class Fixtures {
+    static final String ITEMS = "ITEMS";
+    static final String[] ITEM_COLUMNS = {"ID", "NAME", "CATEGORY", "PRICE", "NOTE"};
+    static final String[] ITEM_TYPES = {"INT", "TEXT", "TEXT", "INT", "TEXT"};
+    static final String ORDERS = "ORDERS";
+    static final String[] ORDER_COLUMNS = {"ORDER_ID", "ITEM_ID", "QTY"};
+    static final String[] ORDER_TYPES = {"INT", "INT", "INT"};
+    static final String[] CATEGORIES = {"TOOLS", "BOOKS", "GAMES", "MUSIC", "FOOD", "TOYS", "GARDEN", "SPORTS"};
+
+    private Fixtures() {
+    }
+
+    static Object items(Engine engine, int rows) {
+        Object db = engine.newDatabase();
+        engine.createTable(db, ITEMS, ITEM_COLUMNS, ITEM_TYPES);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) engine.insert(db, ITEMS, Arrays.asList(itemRow(i, random)));
+        return db;
+    }
+
+    static Object[] itemRow(int id, SplittableRandom random) {
+        return new Object[] {
+            (double) id,
+            "item" + id,
+            CATEGORIES[random.nextInt(CATEGORIES.length)],
+            (double) random.nextInt(1000),
+            random.nextInt(4) == 0 ? null : "note" + random.nextInt(100)
+        };
+    }
+
+    static void addOrders(Engine engine, Object db, int items, int orders) {
+        engine.createTable(db, ORDERS, ORDER_COLUMNS, ORDER_TYPES);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < orders; i++) {
+            engine.insert(db, ORDERS, Arrays.asList((double) i, (double) random.nextInt(items), (double) (1 + random.nextInt(10))));
+        }
+    }
+
+    // A script of CREATE/INSERT/SELECT/UPDATE/DELETE statements in the proportions of input.sql.
+    static String script(int statements) {
+        StringBuilder sb = new StringBuilder("CREATE TABLE items (id INT, name TEXT, category TEXT, price INT, note TEXT);\n");
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 1; i < statements; i++) {
+            switch (i % 8) {
+                case 5:
+                    sb.append("SELECT * FROM items WHERE category = '").append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append("' ORDER BY price;\n");
+                    break;
+                case 6:
+                    sb.append("UPDATE items SET price = ").append(random.nextInt(1000)).append(" WHERE id = ").append(random.nextInt(i)).append(";\n");
+                    break;
+                case 7:
+                    sb.append("DELETE FROM items WHERE name LIKE 'item").append(random.nextInt(i)).append("%';\n");
+                    break;
+                default:
+                    sb.append("INSERT INTO items VALUES (").append(i).append(", 'item").append(i).append("', '")
+                        .append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append("', ").append(random.nextInt(1000)).append(", 'note").append(i).append("');\n");
+            }
+        }
+        return sb.toString();
+    }
+}
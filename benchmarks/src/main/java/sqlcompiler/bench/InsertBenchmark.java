@@ -0,0 +1,50 @@
+package sqlcompiler.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time to load {@code rows} rows into an empty table through {@code Database.insert}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+    @Param({"1000", "100000"})
+    int rows;
+
+    private Engine engine;
+    private List<List<Object>> values;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.load();
+        values = new ArrayList<>(rows);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) values.add(Arrays.asList(Fixtures.itemRow(i, random)));
+    }
+
+    @Benchmark
+    public Object insert() {
+        Object db = engine.newDatabase();
+        engine.createTable(db, Fixtures.ITEMS, Fixtures.ITEM_COLUMNS, Fixtures.ITEM_TYPES);
+        for (List<Object> row : values) engine.insert(db, Fixtures.ITEMS, row);
+        return db;
+    }
+}
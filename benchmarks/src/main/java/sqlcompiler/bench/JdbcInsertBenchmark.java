@@ -0,0 +1,116 @@
+package sqlcompiler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load {@code rows} rows into an empty table through the JDBC driver: an INSERT statement
+ * per row, a PreparedStatement executed per row, and one PreparedStatement batch. Auto-commit is
+ * off, so no run includes saving the database file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcInsertBenchmark {
+    private static final String CREATE = "CREATE TABLE ITEMS (ID INT, NAME TEXT, CATEGORY TEXT, PRICE INT, NOTE TEXT)";
+    private static final String INSERT = "INSERT INTO ITEMS VALUES (?, ?, ?, ?, ?)";
+
+    @Param({"1000", "100000"})
+    int rows;
+
+    private File file;
+    private Connection connection;
+    private List<Object[]> values;
+    private List<String> literals;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("sqlcompiler-bench", ".txt");
+        file.delete();
+        connection = DriverManager.getConnection("jdbc:sqlcompiler:file:" + file.getPath());
+        connection.setAutoCommit(false);
+        values = new ArrayList<>(rows);
+        literals = new ArrayList<>(rows);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) {
+            Object[] row = Fixtures.itemRow(i, random);
+            values.add(row);
+            literals.add("INSERT INTO ITEMS VALUES (" + i + ", '" + row[1] + "', '" + row[2] + "', " + ((Double) row[3]).intValue() + ", "
+                + (row[4] == null ? "NULL" : "'" + row[4] + "'") + ")");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int statementPerRow() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE);
+            int inserted = 0;
+            for (String sql : literals) inserted += statement.executeUpdate(sql);
+            statement.executeUpdate("DROP TABLE ITEMS");
+            return inserted;
+        }
+    }
+
+    @Benchmark
+    public int preparedPerRow() throws SQLException {
+        try (Statement statement = connection.createStatement(); PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            statement.executeUpdate(CREATE);
+            int inserted = 0;
+            for (Object[] row : values) {
+                bind(insert, row);
+                inserted += insert.executeUpdate();
+            }
+            statement.executeUpdate("DROP TABLE ITEMS");
+            return inserted;
+        }
+    }
+
+    @Benchmark
+    public int preparedBatch() throws SQLException {
+        try (Statement statement = connection.createStatement(); PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            statement.executeUpdate(CREATE);
+            for (Object[] row : values) {
+                bind(insert, row);
+                insert.addBatch();
+            }
+            int inserted = insert.executeBatch().length;
+            statement.executeUpdate("DROP TABLE ITEMS");
+            return inserted;
+        }
+    }
+
+    private static void bind(PreparedStatement insert, Object[] row) throws SQLException {
+        for (int i = 0; i < row.length; i++) insert.setObject(i + 1, row[i]);
+    }
+}
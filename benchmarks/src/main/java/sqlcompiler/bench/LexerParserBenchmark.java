@@ -0,0 +1,46 @@
+package sqlcompiler.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerParserBenchmark {
+    @Param({"100", "10000"})
+    int statements;
+
+    private Engine engine;
+    private String script;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.load();
+        script = Fixtures.script(statements);
+    }
+
+    @Benchmark
+    public List<?> tokenize() {
+        return engine.tokenize(script);
+    }
+
+    @Benchmark
+    public List<?> parse() {
+        return engine.parse(script);
+    }
+}
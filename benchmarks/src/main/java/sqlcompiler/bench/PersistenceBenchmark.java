@@ -0,0 +1,61 @@
+package sqlcompiler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** {@code saveToFile}/{@code loadFromFile} round trips through a temporary file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"1000", "100000"})
+    int rows;
+
+    private Engine engine;
+    private Object db;
+    private Object loaded;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        engine = Engine.load();
+        db = Fixtures.items(engine, rows);
+        loaded = engine.newDatabase();
+        file = File.createTempFile("sqlcompiler-bench", ".txt");
+        engine.saveToFile(db, file.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Object save() throws IOException {
+        engine.saveToFile(db, file.getPath());
+        return db;
+    }
+
+    @Benchmark
+    public Object load() throws IOException {
+        engine.loadFromFile(loaded, file.getPath());
+        return loaded;
+    }
+}
@@ -0,0 +1,53 @@
+package sqlcompiler.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JOIN, GROUP BY and ORDER BY. Each item has on average one order, so the join output is ~rows. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+    @Param({"1000", "10000"})
+    int rows;
+
+    private Engine engine;
+    private Object db;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.load();
+        db = Fixtures.items(engine, rows);
+        Fixtures.addOrders(engine, db, rows, rows);
+    }
+
+    @Benchmark
+    public List<?> join() {
+        return engine.select(db, Fixtures.ITEMS, Fixtures.ORDERS, "ID", "ITEM_ID", null, null, null, false, false, null, null);
+    }
+
+    @Benchmark
+    public List<?> groupBy() {
+        return engine.select(db, Fixtures.ITEMS, null, null, null, null, null, null, false, false, "CATEGORY", null);
+    }
+
+    @Benchmark
+    public List<?> orderBy() {
+        return engine.select(db, Fixtures.ITEMS, null, null, null, null, null, null, false, false, null, "PRICE");
+    }
+}
@@ -0,0 +1,56 @@
+package sqlcompiler.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Single-table SELECT with each WHERE form the parser accepts. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectBenchmark {
+    @Param({"1000", "100000"})
+    int rows;
+
+    @Param({"NONE", "EQUALS", "LIKE", "IS_NULL", "IS_NOT_NULL"})
+    String where;
+
+    private Engine engine;
+    private Object db;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.load();
+        db = Fixtures.items(engine, rows);
+    }
+
+    @Benchmark
+    public List<?> select() {
+        switch (where) {
+            case "EQUALS":
+                return engine.select(db, Fixtures.ITEMS, null, null, null, "CATEGORY", "BOOKS", null, false, false, null, null);
+            case "LIKE":
+                return engine.select(db, Fixtures.ITEMS, null, null, null, "NAME", null, "item1%", false, false, null, null);
+            case "IS_NULL":
+                return engine.select(db, Fixtures.ITEMS, null, null, null, "NOTE", null, null, true, false, null, null);
+            case "IS_NOT_NULL":
+                return engine.select(db, Fixtures.ITEMS, null, null, null, "NOTE", null, null, false, true, null, null);
+            default:
+                return engine.select(db, Fixtures.ITEMS, null, null, null, null, null, null, false, false, null, null);
+        }
+    }
+}